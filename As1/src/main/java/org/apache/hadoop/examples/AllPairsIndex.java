@@ -0,0 +1,192 @@
+package org.apache.hadoop.examples;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+// AllPairs 风格的候选对生成：只把一对歌曲交给调用方精确计算，如果它们可能达到阈值 t
+//
+// 全向量余弦 (vector_cosine) 等于单位化向量的点积。对每首歌 x，只把一部分用户放入倒排索引 (前缀)，
+// 没有放入索引的部分 U(x) 满足 ||x_U|| < t。如果 y 与 x 的索引部分没有共同用户，
+// 则 cos(x, y) = x_U · y <= ||x_U|| < t，这对歌曲不可能达到阈值。
+// 通过倒排索引找到的候选对再用 Hölder 上界 cos(x, y) <= maxW(x) * L1(y) 过滤一次。
+//
+// 评分向量含负数时上面的上界仍然成立。
+// 只在共同评分用户上归一化的度量 (pearson/cosine/adjusted_cosine) 没有这样的上界，不能用它剪枝。
+// binary = true 时按评分用户集合计算 (Jaccard)：Jaccard <= 二值向量的余弦，上界同样适用，
+// 另外 Jaccard <= min(|A|, |B|) / max(|A|, |B|)。
+public class AllPairsIndex {
+
+    public interface PairConsumer {
+        void accept(SparseRatingVector a, SparseRatingVector b) throws IOException, InterruptedException;
+    }
+
+    // 浮点误差的余量，避免把恰好等于阈值的歌曲对剪掉
+    private static final double SLACK = 1e-9;
+
+    private final double threshold;
+    private final boolean binary;
+
+    public AllPairsIndex(double threshold, boolean binary) {
+        this.threshold = threshold - SLACK;
+        this.binary = binary;
+    }
+
+    // 列表内两两之间的候选对，返回交给 consumer 的歌曲对数
+    public long selfJoin(List<SparseRatingVector> songs, PairConsumer consumer) throws IOException, InterruptedException {
+        return join(songs, songs, true, consumer);
+    }
+
+    // left 与 right 之间的候选对，返回交给 consumer 的歌曲对数
+    public long join(List<SparseRatingVector> left, List<SparseRatingVector> right, PairConsumer consumer)
+            throws IOException, InterruptedException {
+        return join(left, right, false, consumer);
+    }
+
+    private long join(List<SparseRatingVector> left, List<SparseRatingVector> right, boolean self, PairConsumer consumer)
+            throws IOException, InterruptedException {
+        if (left.isEmpty() || right.isEmpty()) {
+            return 0;
+        }
+        double[] leftMaxWeight = new double[left.size()];
+        double[] leftL1 = new double[left.size()];
+        weightBounds(left, leftMaxWeight, leftL1);
+        double[] rightMaxWeight = leftMaxWeight;
+        double[] rightL1 = leftL1;
+        if (!self) {
+            rightMaxWeight = new double[right.size()];
+            rightL1 = new double[right.size()];
+            weightBounds(right, rightMaxWeight, rightL1);
+        }
+
+        // 倒排索引 (CSR)：indexUsers[k] 的歌曲为 postings[offsets[k] .. offsets[k+1])，按歌曲下标升序
+        long[] entries = indexEntries(left);
+        int distinct = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (i == 0 || (int) (entries[i] >> 32) != (int) (entries[i - 1] >> 32)) {
+                distinct++;
+            }
+        }
+        int[] indexUsers = new int[distinct];
+        int[] offsets = new int[distinct + 1];
+        int[] postings = new int[entries.length];
+        int u = -1;
+        for (int i = 0; i < entries.length; i++) {
+            int user = (int) (entries[i] >> 32);
+            if (u < 0 || indexUsers[u] != user) {
+                indexUsers[++u] = user;
+                offsets[u] = i;
+            }
+            postings[i] = (int) entries[i];
+        }
+        offsets[distinct] = entries.length;
+
+        // 用 y 的全部用户查询索引，stamp 用于候选去重
+        int[] stamp = new int[left.size()];
+        long candidates = 0;
+        for (int y = 0; y < right.size(); y++) {
+            SparseRatingVector songY = right.get(y);
+            if (rightMaxWeight[y] == 0) continue;  // 零向量与任何歌曲的相似度都是 0
+            for (int user : songY.getUserIds()) {
+                int k = Arrays.binarySearch(indexUsers, user);
+                if (k < 0) continue;
+                for (int p = offsets[k]; p < offsets[k + 1]; p++) {
+                    int x = postings[p];
+                    if (self && x >= y) break;  // 列表内只看下标较小的歌曲，每对只出现一次
+                    if (stamp[x] == y + 1) continue;
+                    stamp[x] = y + 1;
+
+                    SparseRatingVector songX = left.get(x);
+                    if (Math.min(leftMaxWeight[x] * rightL1[y], rightMaxWeight[y] * leftL1[x]) < threshold) continue;
+                    if (binary && (double) Math.min(songX.size(), songY.size())
+                            / Math.max(songX.size(), songY.size()) < threshold) continue;
+
+                    consumer.accept(songX, songY);
+                    candidates++;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    // 单位化后每个用户的权重
+    private double weight(SparseRatingVector song, double norm, int k) {
+        return binary ? 1.0 / norm : song.getScores()[k] / norm;
+    }
+
+    private double norm(SparseRatingVector song) {
+        return binary ? Math.sqrt(song.size()) : song.norm();
+    }
+
+    // 单位化向量的最大绝对权重与 L1 范数，零向量两者都为 0
+    private void weightBounds(List<SparseRatingVector> songs, double[] maxWeight, double[] l1) {
+        for (int i = 0; i < songs.size(); i++) {
+            SparseRatingVector song = songs.get(i);
+            double norm = norm(song);
+            if (norm == 0) continue;
+            for (int k = 0; k < song.size(); k++) {
+                double w = Math.abs(weight(song, norm, k));
+                maxWeight[i] = Math.max(maxWeight[i], w);
+                l1[i] += w;
+            }
+        }
+    }
+
+    // 每首歌放入索引的 (UserID, 歌曲下标)，按用户、下标排序
+    // 优先不索引评分人数最多的用户，只要未索引部分的范数仍小于阈值
+    private long[] indexEntries(List<SparseRatingVector> songs) {
+        int total = 0;
+        for (SparseRatingVector song : songs) {
+            total += song.size();
+        }
+        int[] allUsers = new int[total];
+        int pos = 0;
+        for (SparseRatingVector song : songs) {
+            System.arraycopy(song.getUserIds(), 0, allUsers, pos, song.size());
+            pos += song.size();
+        }
+        Arrays.sort(allUsers);
+
+        // 去重后的用户及其评分人数
+        int distinct = 0;
+        int[] counts = new int[total];
+        for (int k = 0; k < total; k++) {
+            if (distinct == 0 || allUsers[distinct - 1] != allUsers[k]) {
+                allUsers[distinct++] = allUsers[k];
+            }
+            counts[distinct - 1]++;
+        }
+
+        long[] entries = new long[total];
+        int size = 0;
+        double thresholdSquared = threshold > 0 ? threshold * threshold : 0.0;
+        for (int i = 0; i < songs.size(); i++) {
+            SparseRatingVector song = songs.get(i);
+            double norm = norm(song);
+            if (norm == 0) continue;
+            int[] users = song.getUserIds();
+
+            // 高 32 位为用户的评分人数，低 32 位为向量内下标，降序遍历
+            long[] byFrequency = new long[users.length];
+            for (int k = 0; k < users.length; k++) {
+                int frequency = counts[Arrays.binarySearch(allUsers, 0, distinct, users[k])];
+                byFrequency[k] = ((long) frequency << 32) | k;
+            }
+            Arrays.sort(byFrequency);
+
+            double unindexed = 0.0;
+            for (int f = byFrequency.length - 1; f >= 0; f--) {
+                int k = (int) byFrequency[f];
+                double w = weight(song, norm, k);
+                if (unindexed + w * w < thresholdSquared) {
+                    unindexed += w * w;
+                } else {
+                    entries[size++] = ((long) users[k] << 32) | i;
+                }
+            }
+        }
+        entries = Arrays.copyOf(entries, size);
+        Arrays.sort(entries);
+        return entries;
+    }
+}
@@ -0,0 +1,134 @@
+package org.apache.hadoop.examples;
+
+import java.nio.charset.StandardCharsets;
+
+// 在字节数组上直接解析文本行的解析器基类：维护当前行的扫描位置，提供不创建 String 的整数和浮点数解析
+// 子类在 parse 中设置 bytes/pos/end 后调用这些方法，数字格式错误时抛出 NumberFormatException
+public abstract class ByteLineParser {
+
+    // 10^0 .. 10^22 都能被 double 精确表示
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // 当前行和扫描位置
+    protected byte[] bytes;
+    protected int pos;
+    protected int end;
+
+    // [from, to) 中第一个 c 的位置，没有时返回 -1
+    protected int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected void skipWhitespace() {
+        while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\r' || bytes[pos] == '\n')) {
+            pos++;
+        }
+    }
+
+    protected boolean expect(char c) {
+        if (pos < end && bytes[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    protected int parseInt() {
+        boolean negative = expect('-');
+        int start = pos;
+        long value = 0;
+        while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+            value = value * 10 + (bytes[pos++] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("int overflow");
+            }
+        }
+        if (pos == start) {
+            throw new NumberFormatException("missing digits");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("int overflow");
+        }
+        return (int) value;
+    }
+
+    // 十进制数 [-]digits[.digits][(e|E)[+-]digits]
+    // 有效数字不超过 2^53 且十进制指数不超过 22 时，一次乘法或除法就是正确舍入的结果（与 Double.parseDouble 相同）；
+    // 其它情况（例如 17 位有效数字）回退到 Double.parseDouble
+    protected double parseDouble() {
+        int start = pos;
+        boolean negative = expect('-');
+        if (!negative) {
+            expect('+');
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean overflow = false;
+        int intStart = pos;
+        while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+            if (mantissa < 100000000000000000L) {
+                mantissa = mantissa * 10 + (bytes[pos] - '0');
+            } else {
+                overflow = true;
+                exponent++;
+            }
+            pos++;
+        }
+        digits += pos - intStart;
+        if (expect('.')) {
+            int fractionStart = pos;
+            while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                if (mantissa < 100000000000000000L) {
+                    mantissa = mantissa * 10 + (bytes[pos] - '0');
+                    exponent--;
+                } else {
+                    overflow = true;
+                }
+                pos++;
+            }
+            digits += pos - fractionStart;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("missing digits");
+        }
+        if (pos < end && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = expect('-');
+            if (!negativeExponent) {
+                expect('+');
+            }
+            int expStart = pos;
+            int value = 0;
+            while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                if (value < 10000) {
+                    value = value * 10 + (bytes[pos] - '0');
+                }
+                pos++;
+            }
+            if (pos == expStart) {
+                throw new NumberFormatException("missing exponent");
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!overflow && mantissa <= (1L << 53) && Math.abs(exponent) <= 22) {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(bytes, start, pos - start, StandardCharsets.US_ASCII));
+    }
+}
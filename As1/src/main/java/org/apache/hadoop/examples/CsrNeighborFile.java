@@ -0,0 +1,146 @@
+package org.apache.hadoop.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 以只读内存映射方式打开 CsrNeighborOutputFormat 写出的文件
+// 打开时只读取 32 字节的尾部，不解析、不复制任何数据；查询时在映射的歌曲表上二分查找，再直接读取该行的边
+// 可以在多个线程间共享（只使用绝对位置读取）；不依赖 Hadoop，服务进程只需要这一个类
+public class CsrNeighborFile implements AutoCloseable {
+
+    static final int MAGIC = 0x4B4E4E43;  // "KNNC"
+    static final int VERSION = 1;
+    static final int FLAG_QUANTIZED = 1;
+    static final int TRAILER_BYTES = 32;
+
+    // 16 位量化：[-1, 1] 线性映射到 0..65535
+    static int quantize(double score) {
+        double clamped = Math.max(-1.0, Math.min(1.0, score));
+        return (int) Math.round((clamped + 1.0) / 2.0 * 65535);
+    }
+
+    static float dequantize(int quantized) {
+        return (float) (quantized / 65535.0 * 2.0 - 1.0);
+    }
+
+    private final RandomAccessFile file;
+    private final ByteBuffer buffer;
+    private final boolean quantized;
+    private final int itemCount;
+    private final long edgeCount;
+    private final int itemsStart;
+    private final int offsetsStart;
+    private final int countsStart;
+
+    private CsrNeighborFile(RandomAccessFile file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        int trailer = buffer.capacity() - TRAILER_BYTES;
+        if (trailer < 0 || buffer.getInt(trailer + 28) != MAGIC) {
+            throw new IOException("not a CSR neighbor file");
+        }
+        if (buffer.getInt(trailer + 24) != VERSION) {
+            throw new IOException("unsupported CSR neighbor file version: " + buffer.getInt(trailer + 24));
+        }
+        long tableStart = buffer.getLong(trailer);
+        itemCount = buffer.getInt(trailer + 8);
+        edgeCount = buffer.getLong(trailer + 12);
+        quantized = (buffer.getInt(trailer + 20) & FLAG_QUANTIZED) != 0;
+        itemsStart = (int) tableStart;
+        offsetsStart = itemsStart + 4 * itemCount;
+        countsStart = offsetsStart + 8 * itemCount;
+    }
+
+    public static CsrNeighborFile open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                // 单个 MappedByteBuffer 最大 2GB，增加 Reducer 数量即可让每个 part 文件更小
+                throw new IOException(path + " is larger than 2GB, use more reducers");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CsrNeighborFile(file, buffer);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int itemCount() {
+        return itemCount;
+    }
+
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    // 第 i 首歌的 ItemID（升序）
+    public int itemAt(int i) {
+        return buffer.getInt(itemsStart + 4 * i);
+    }
+
+    // 歌曲在表中的下标，不存在时返回负数
+    public int indexOf(int item) {
+        int low = 0;
+        int high = itemCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = itemAt(mid);
+            if (value < item) {
+                low = mid + 1;
+            } else if (value > item) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    public int neighborCount(int item) {
+        int i = indexOf(item);
+        return i < 0 ? 0 : neighborCountAt(i);
+    }
+
+    // 第 i 首歌的邻居数
+    public int neighborCountAt(int i) {
+        return buffer.getInt(countsStart + 4 * i);
+    }
+
+    // 把歌曲的邻居（相似度降序）写入 ids/scores，最多写数组长度个，返回写入的个数
+    public int neighbors(int item, int[] ids, float[] scores) {
+        int i = indexOf(item);
+        return i < 0 ? 0 : neighborsAt(i, ids, scores);
+    }
+
+    // 同 neighbors，按歌曲表下标读取，调用方已有下标时不需要二分查找
+    public int neighborsAt(int i, int[] ids, float[] scores) {
+        int count = buffer.getInt(countsStart + 4 * i);
+        int rowStart = (int) buffer.getLong(offsetsStart + 8 * i);
+        int scoresStart = rowStart + 4 * count;
+        int n = Math.min(count, Math.min(ids.length, scores.length));
+        for (int j = 0; j < n; j++) {
+            ids[j] = buffer.getInt(rowStart + 4 * j);
+            scores[j] = quantized
+                    ? dequantize(buffer.getShort(scoresStart + 2 * j) & 0xFFFF)
+                    : buffer.getFloat(scoresStart + 4 * j);
+        }
+        return n;
+    }
+
+    // 相似度写入本文件再读回的值；量化是单调的，按阈值过滤时应与 stored(阈值) 比较，而不是与阈值本身比较
+    // 否则阈值附近的相似度量化后可能略低于阈值（误差最多 1.6e-5），被误判为不满足阈值
+    public float stored(double score) {
+        return quantized ? dequantize(quantize(score)) : (float) score;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,107 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// 把 DynamicThresholdKNN 的邻居列表写成可以直接内存映射的 CSR 文件（每个 Reducer 一个 part-r-xxxxx.csr）
+//
+// 文件布局（大端序）：
+//   边区：每首歌一行，count 个 int 邻居 ID，然后 count 个相似度（float，或量化时的 16 位无符号整数）
+//   歌曲表：itemCount 个 int ItemID（升序），itemCount 个 long 行起始字节偏移，itemCount 个 int 邻居数
+//   尾部 32 字节：long 歌曲表偏移, int itemCount, long 边数, int 标志位, int 版本, int MAGIC
+// 写入时只需顺序输出，歌曲表在 close() 时追加；读取方从尾部定位歌曲表，见 CsrNeighborFile（格式常量也定义在那里）
+public class CsrNeighborOutputFormat extends FileOutputFormat<IntWritable, NeighborListWritable> {
+
+    // 相似度量化为 16 位：[-1, 1] 线性映射到 0..65535，误差不超过 1.6e-5，边区缩小 1/4
+    // 读回的值可能略低于原相似度，按阈值过滤时要与 CsrNeighborFile.stored(阈值) 比较（UserRecommendations 即如此）
+    public static final String QUANTIZE = "knn.csr.quantize";
+
+    // part 文件的扩展名，例如 part-r-00000.csr
+    public static final String EXTENSION = ".csr";
+
+    @Override
+    public RecordWriter<IntWritable, NeighborListWritable> getRecordWriter(TaskAttemptContext context) throws IOException {
+        Configuration conf = context.getConfiguration();
+        Path file = getDefaultWorkFile(context, EXTENSION);
+        FileSystem fs = file.getFileSystem(conf);
+        return new CsrRecordWriter(fs.create(file, false), conf.getBoolean(QUANTIZE, false));
+    }
+
+    static class CsrRecordWriter extends RecordWriter<IntWritable, NeighborListWritable> {
+        private final FSDataOutputStream out;
+        private final boolean quantized;
+        private long position;
+        private long edges;
+
+        private int size;
+        private int[] items = new int[1024];
+        private long[] offsets = new long[1024];
+        private int[] counts = new int[1024];
+
+        CsrRecordWriter(FSDataOutputStream out, boolean quantized) {
+            this.out = out;
+            this.quantized = quantized;
+        }
+
+        @Override
+        public void write(IntWritable key, NeighborListWritable value) throws IOException {
+            if (size > 0 && key.get() <= items[size - 1]) {
+                // Reducer 的键按数值升序到达，读取方依赖歌曲表有序做二分查找
+                throw new IOException("items must be written in increasing order: " + key.get() + " after " + items[size - 1]);
+            }
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            int count = value.size();
+            items[size] = key.get();
+            offsets[size] = position;
+            counts[size] = count;
+            size++;
+
+            for (int i = 0; i < count; i++) {
+                out.writeInt(value.getId(i));
+            }
+            for (int i = 0; i < count; i++) {
+                if (quantized) {
+                    out.writeShort(CsrNeighborFile.quantize(value.getScore(i)));
+                } else {
+                    out.writeFloat((float) value.getScore(i));
+                }
+            }
+            position += (long) count * (quantized ? 6 : 8);
+            edges += count;
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+            long tableStart = position;
+            for (int i = 0; i < size; i++) {
+                out.writeInt(items[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeLong(offsets[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(counts[i]);
+            }
+            out.writeLong(tableStart);
+            out.writeInt(size);
+            out.writeLong(edges);
+            out.writeInt(quantized ? CsrNeighborFile.FLAG_QUANTIZED : 0);
+            out.writeInt(CsrNeighborFile.VERSION);
+            out.writeInt(CsrNeighborFile.MAGIC);
+            out.close();
+        }
+    }
+}
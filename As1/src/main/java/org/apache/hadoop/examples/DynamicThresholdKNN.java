@@ -1,89 +1,423 @@
 package org.apache.hadoop.examples;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
 import java.util.*;
 
 public class DynamicThresholdKNN {
 
-    // Mapper 将输入的项目对相似度转换为 (ItemA, ItemB:Similarity) 和 (ItemB, ItemA:Similarity) 格式
-    public static class KNNMapper extends Mapper<Object, Text, Text, Text> {
-        private Text itemKey = new Text();
-        private Text similarityValue = new Text();
+    // 固定相似度阈值，默认 0.75
+    public static final String THRESHOLD = "knn.threshold";
+    public static final double DEFAULT_THRESHOLD = 0.75;
+
+    // 动态阈值：每首歌的阈值为它自己的相似度分布的 p 分位数，例如 0.9 表示只保留相似度最高的 10% 邻居
+    // 设置后先运行一个作业用 QuantileSketch 估计每首歌的分位数，固定阈值此时只作为额外下限（默认不限制）
+    public static final String QUANTILE = "knn.quantile";
+    // QuantileSketch 的精度参数 k
+    public static final String SKETCH_K = "knn.sketch.k";
+    // 第一个作业输出的每首歌阈值的目录，由 main 设置
+    static final String THRESHOLDS_PATH = "knn.thresholds.path";
+
+    // 每首歌最多输出 K 个相似度最高的邻居（默认不限制）
+    public static final String K = "knn.k";
+
+    // 二次排序：Map 输出键为 (ItemID, 相似度)，Reducer 按相似度降序收到邻居，取到 K 个或低于阈值时停止
+    public static final String SECONDARY_SORT = "knn.secondary.sort";
+
+    // knn.k 模式下 Map 端为每首歌保留部分 top-K，最多缓存的邻居数，超过时输出并清空
+    public static final String MAP_BUFFER = "knn.map.buffer";
+    public static final int DEFAULT_MAP_BUFFER = 1000000;
+
+    // 输出格式：text（默认，"Item\tn1:s1,n2:s2,..."）或 csr（CsrNeighborOutputFormat，可由服务进程用 CsrNeighborFile 内存映射）
+    public static final String OUTPUT_FORMAT = "knn.output.format";
+    public static final String OUTPUT_TEXT = "text";
+    public static final String OUTPUT_CSR = "csr";
+
+    // NEIGHBORS_TRUNCATED 只统计 Reducer 端超出 K 的邻居，Map 端丢弃的计入 NEIGHBORS_DROPPED_MAP_SIDE
+    public enum KNNCounters { NEIGHBORS_BELOW_ITEM_THRESHOLD, NEIGHBORS_TRUNCATED, NEIGHBORS_DROPPED_MAP_SIDE, MALFORMED_LINES }
+
+    // 固定阈值：动态阈值模式下默认不限制
+    static double fixedThreshold(Configuration conf) {
+        return conf.getDouble(THRESHOLD, conf.get(QUANTILE) != null ? Double.NEGATIVE_INFINITY : DEFAULT_THRESHOLD);
+    }
+
+    // 读取 ItemSimilarity 输出的 Mapper 基类
+    // 输入为文本 (ItemA, ItemB)\tSimilarity，或二进制模式下的 SequenceFile<ItemPairWritable, DoubleWritable>
+    public abstract static class PairMapper<KEYOUT, VALUEOUT> extends Mapper<Object, Writable, KEYOUT, VALUEOUT> {
+        private SimilarityLineParser parser = new SimilarityLineParser();
 
         @Override
-        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            String[] line = value.toString().split("\t"); // 拆分项目对和相似度
-            if (line.length < 2) return; // 检查格式
-            String items = line[0].replaceAll("[()]", ""); // 移除括号
-            String[] itemPair = items.split(",");
-            if (itemPair.length < 2) return;
+        public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+            if (key instanceof ItemPairWritable) {
+                ItemPairWritable pair = (ItemPairWritable) key;
+                pair(pair.getFirst(), pair.getSecond(), ((DoubleWritable) value).get(), context);
+                return;
+            }
+
+            // 直接在 Text 的字节上解析项目对和相似度，跳过格式错误的行
+            if (!parser.parse((Text) value)) {
+                context.getCounter(KNNCounters.MALFORMED_LINES).increment(1);
+                return;
+            }
+            pair(parser.getItemA(), parser.getItemB(), parser.getSimilarity(), context);
+        }
+
+        protected abstract void pair(int itemA, int itemB, double similarity, Context context)
+                throws IOException, InterruptedException;
+    }
 
-            String itemA = itemPair[0].trim();
-            String itemB = itemPair[1].trim();
-            String similarity = line[1].trim();
+    // KNN 作业的 Mapper 基类：每个歌曲对发出 (ItemA -> ItemB) 和 (ItemB -> ItemA) 两个方向
+    // 在 Map 端先过滤掉低于阈值（固定阈值或动态阈值模式下每首歌自己的阈值）的邻居；
+    // knn.k 模式下再为每首歌保留部分 top-K，全局 top-K 一定在各 Mapper 的部分 top-K 之中，
+    // 热门歌曲的大量邻居不会进入 shuffle。缓存的邻居数超过 knn.map.buffer 时提前输出
+    public abstract static class NeighborMapper<KEYOUT, VALUEOUT> extends PairMapper<KEYOUT, VALUEOUT> {
+        private double threshold;
+        private ItemThresholds thresholds;
+        private Counter belowThreshold;
 
-            // 发出两对键值：(ItemA, ItemB:Similarity) 和 (ItemB, ItemA:Similarity)
-            itemKey.set(itemA);
-            similarityValue.set(itemB + ":" + similarity);
-            context.write(itemKey, similarityValue);
+        private int k;
+        private int bufferLimit;
+        private int buffered;
+        private Map<Integer, TopKHeap> partialTopK;
+        private int[] neighborIds;
+        private double[] neighborScores;
+        private Counter dropped;
 
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            threshold = fixedThreshold(conf);
+            if (conf.get(THRESHOLDS_PATH) != null) {
+                thresholds = ItemThresholds.read(conf, new Path(conf.get(THRESHOLDS_PATH)));
+            }
+            belowThreshold = context.getCounter(KNNCounters.NEIGHBORS_BELOW_ITEM_THRESHOLD);
+
+            k = conf.getInt(K, 0);
+            if (k > 0) {
+                bufferLimit = Math.max(k, conf.getInt(MAP_BUFFER, DEFAULT_MAP_BUFFER));
+                partialTopK = new HashMap<>();
+                neighborIds = new int[k];
+                neighborScores = new double[k];
+            }
+            dropped = context.getCounter(KNNCounters.NEIGHBORS_DROPPED_MAP_SIDE);
+        }
+
+        @Override
+        protected void pair(int itemA, int itemB, double similarity, Context context) throws IOException, InterruptedException {
+            offer(itemA, itemB, similarity, context);
+            offer(itemB, itemA, similarity, context);
+        }
+
+        private void offer(int item, int neighbor, double similarity, Context context) throws IOException, InterruptedException {
+            if (similarity < threshold || (thresholds != null && similarity < thresholds.get(item))) {
+                belowThreshold.increment(1);
+                return;
+            }
+            if (partialTopK == null) {
+                write(item, neighbor, similarity, context);
+                return;
+            }
+
+            TopKHeap heap = partialTopK.get(item);
+            if (heap == null) {
+                heap = new TopKHeap(k);
+                partialTopK.put(item, heap);
+            }
+            if (heap.isFull()) {
+                // 堆满时新邻居要么被丢弃，要么替换掉堆顶，缓存的邻居数不变
+                heap.offer(neighbor, similarity);
+                dropped.increment(1);
+                return;
+            }
+            heap.offer(neighbor, similarity);
+            if (++buffered >= bufferLimit) {
+                flush(context);
+            }
+        }
+
+        private void flush(Context context) throws IOException, InterruptedException {
+            for (Map.Entry<Integer, TopKHeap> entry : partialTopK.entrySet()) {
+                int count = entry.getValue().drainDescending(neighborIds, neighborScores);
+                for (int i = 0; i < count; i++) {
+                    write(entry.getKey(), neighborIds[i], neighborScores[i], context);
+                }
+            }
+            partialTopK.clear();
+            buffered = 0;
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (partialTopK != null) {
+                flush(context);
+            }
+        }
+
+        protected abstract void write(int item, int neighbor, double similarity, Context context)
+                throws IOException, InterruptedException;
+    }
+
+    // Mapper 将输入的项目对相似度转换为 (ItemA, (ItemB, Similarity)) 和 (ItemB, (ItemA, Similarity))
+    // ItemID 为 IntWritable，shuffle 时按数值直接比较序列化后的字节；邻居为二进制的 NeighborWritable
+    public static class KNNMapper extends NeighborMapper<IntWritable, NeighborWritable> {
+        private IntWritable itemKey = new IntWritable();
+        private NeighborWritable neighborValue = new NeighborWritable();
+
+        @Override
+        protected void write(int item, int neighbor, double similarity, Context context) throws IOException, InterruptedException {
+            itemKey.set(item);
+            neighborValue.set(neighbor, similarity);
+            context.write(itemKey, neighborValue);
+        }
+    }
+
+    // 动态阈值第一步的 Mapper：每个相似度作为只含一个值的草图发送给两首歌
+    public static class SketchMapper extends PairMapper<IntWritable, QuantileSketch> {
+        private IntWritable itemKey = new IntWritable();
+        private QuantileSketch sketch;
+
+        @Override
+        protected void setup(Context context) {
+            sketch = new QuantileSketch(context.getConfiguration().getInt(SKETCH_K, QuantileSketch.DEFAULT_K));
+        }
+
+        @Override
+        protected void pair(int itemA, int itemB, double similarity, Context context) throws IOException, InterruptedException {
+            sketch.clear();
+            sketch.add(similarity);
+            itemKey.set(itemA);
+            context.write(itemKey, sketch);
             itemKey.set(itemB);
-            similarityValue.set(itemA + ":" + similarity);
-            context.write(itemKey, similarityValue);
+            context.write(itemKey, sketch);
         }
     }
 
-    // Reducer 收集每个项目的相似项目并保留相似度高于阈值的项目
-    public static class KNNReducer extends Reducer<Text, Text, Text, Text> {
-        private static final double THRESHOLD = 0.75; // 设置相似度阈值
-        private Text result = new Text();
+    // Combiner 在 Map 端合并同一首歌的草图，shuffle 数据量与邻居数无关
+    public static class SketchCombiner extends Reducer<IntWritable, QuantileSketch, IntWritable, QuantileSketch> {
+        private QuantileSketch merged;
+
+        @Override
+        protected void setup(Context context) {
+            merged = new QuantileSketch(context.getConfiguration().getInt(SKETCH_K, QuantileSketch.DEFAULT_K));
+        }
+
+        @Override
+        public void reduce(IntWritable key, Iterable<QuantileSketch> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            for (QuantileSketch val : values) {
+                merged.merge(val);
+            }
+            context.write(key, merged);
+        }
+    }
+
+    // Reducer 合并同一首歌的草图，输出 (Item, p 分位数)，内存只有一个草图
+    public static class ThresholdReducer extends Reducer<IntWritable, QuantileSketch, IntWritable, DoubleWritable> {
+        private QuantileSketch merged;
+        private DoubleWritable threshold = new DoubleWritable();
+        private double quantile;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            merged = new QuantileSketch(conf.getInt(SKETCH_K, QuantileSketch.DEFAULT_K));
+            quantile = conf.getDouble(QUANTILE, 0.0);
+        }
 
         @Override
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-            List<Pair<Double, String>> neighbors = new ArrayList<>();
+        public void reduce(IntWritable key, Iterable<QuantileSketch> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            for (QuantileSketch val : values) {
+                merged.merge(val);
+            }
+            threshold.set(merged.quantile(quantile));
+            context.write(key, threshold);
+        }
+    }
+
+    // 每首歌的阈值表：按 ItemID 排序的 int[] 和 double[]，二分查找
+    static class ItemThresholds {
+        private final int[] items;
+        private final double[] thresholds;
 
-            // 遍历相似度数据，过滤出大于或等于阈值的邻居
-            for (Text value : values) {
-                String[] itemSimilarity = value.toString().split(":");
-                if (itemSimilarity.length < 2) continue;
+        private ItemThresholds(int[] items, double[] thresholds) {
+            this.items = items;
+            this.thresholds = thresholds;
+        }
 
-                String item = itemSimilarity[0];
-                double similarity = Double.parseDouble(itemSimilarity[1]);
+        // 没有阈值的歌曲不过滤
+        double get(int item) {
+            int k = Arrays.binarySearch(items, item);
+            return k < 0 ? Double.NEGATIVE_INFINITY : thresholds[k];
+        }
 
-                // 只保留相似度大于或等于阈值的邻居
-                if (similarity >= THRESHOLD) {
-                    neighbors.add(Pair.of(similarity, item));
+        // 读取 ThresholdReducer 输出的 SequenceFile<IntWritable, DoubleWritable>
+        static ItemThresholds read(Configuration conf, Path dir) throws IOException {
+            FileSystem fs = dir.getFileSystem(conf);
+            int size = 0;
+            int[] items = new int[1024];
+            double[] values = new double[1024];
+            IntWritable item = new IntWritable();
+            DoubleWritable threshold = new DoubleWritable();
+            for (FileStatus status : fs.listStatus(dir)) {
+                if (!status.getPath().getName().startsWith("part-")) continue;
+                try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(status.getPath()))) {
+                    while (reader.next(item, threshold)) {
+                        if (size == items.length) {
+                            items = Arrays.copyOf(items, size * 2);
+                            values = Arrays.copyOf(values, size * 2);
+                        }
+                        items[size] = item.get();
+                        values[size] = threshold.get();
+                        size++;
+                    }
                 }
             }
 
-            // 将符合阈值的邻居排序
-            neighbors.sort((a, b) -> Double.compare(b.getLeft(), a.getLeft()));
+            // 多个 part 文件各自有序，按 ItemID 重新排序：高 32 位为 ItemID，低 32 位为原下标
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) items[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] sortedItems = new int[size];
+            double[] sortedValues = new double[size];
+            for (int i = 0; i < size; i++) {
+                int index = (int) order[i];
+                sortedItems[i] = (int) (order[i] >> 32);
+                sortedValues[i] = values[index];
+            }
+            return new ItemThresholds(sortedItems, sortedValues);
+        }
+    }
 
-            // 格式化输出邻居列表
-            StringBuilder knnResult = new StringBuilder();
-            for (Pair<Double, String> neighbor : neighbors) {
-                knnResult.append(neighbor.getRight()).append(":").append(neighbor.getLeft()).append(",");
+    // 两种 Reducer 的公共部分：把邻居列表收集到 NeighborListWritable，
+    // 文本模式输出 "n1:s1,n2:s2,..."，knn.output.format=csr 时直接交给 CsrNeighborOutputFormat
+    public abstract static class NeighborListReducer<KEYIN, VALUEIN> extends Reducer<KEYIN, VALUEIN, IntWritable, Writable> {
+        protected double threshold; // 相似度阈值
+        protected int k;
+        protected NeighborListWritable neighborList = new NeighborListWritable();
+        private boolean csr;
+        private Text result = new Text();
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            threshold = fixedThreshold(conf);
+            k = conf.getInt(K, 0);
+            csr = OUTPUT_CSR.equals(conf.get(OUTPUT_FORMAT, OUTPUT_TEXT));
+        }
+
+        protected void writeNeighbors(IntWritable item, Context context) throws IOException, InterruptedException {
+            if (csr) {
+                context.write(item, neighborList);
+            } else {
+                result.set(neighborList.toString());
+                context.write(item, result);
             }
+        }
+    }
+
+    // Reducer 收集每个项目的相似项目并保留相似度高于阈值的项目，按相似度降序输出
+    // 邻居放在 TopKHeap 中：knn.k 模式下容量为 K，O(n log K) 时间、O(K) 内存；否则不限容量，相当于堆排序
+    public static class KNNReducer extends NeighborListReducer<IntWritable, NeighborWritable> {
+        private TopKHeap heap;
+        private int[] neighborIds = new int[16];
+        private double[] neighborScores = new double[16];
+        private Counter truncated;
 
-            // 去掉最后一个逗号
-            if (knnResult.length() > 0) {
-                knnResult.setLength(knnResult.length() - 1);
+        @Override
+        protected void setup(Context context) {
+            // 阈值已在 Map 端应用，这里保留检查以兼容直接使用 KNNReducer 的作业
+            super.setup(context);
+            heap = new TopKHeap(k > 0 ? k : Integer.MAX_VALUE);
+            truncated = context.getCounter(KNNCounters.NEIGHBORS_TRUNCATED);
+        }
+
+        @Override
+        public void reduce(IntWritable key, Iterable<NeighborWritable> values, Context context) throws IOException, InterruptedException {
+            heap.clear();
+            long aboveThreshold = 0;
+            for (NeighborWritable value : values) {
+                double similarity = value.getSimilarity();
+                if (similarity >= threshold) {
+                    aboveThreshold++;
+                    heap.offer(value.getId(), similarity);
+                }
             }
+            truncated.increment(aboveThreshold - heap.size());
 
-            result.set(knnResult.toString());
-            context.write(key, result); // 输出 (Item, Neighbor List with Threshold Filtering)
+            if (neighborIds.length < heap.size()) {
+                neighborIds = new int[heap.size()];
+                neighborScores = new double[heap.size()];
+            }
+            int count = heap.drainDescending(neighborIds, neighborScores);
+            neighborList.clear();
+            for (int i = 0; i < count; i++) {
+                neighborList.add(neighborIds[i], neighborScores[i]);
+            }
+            writeNeighbors(key, context); // 输出 (Item, Neighbor List with Threshold Filtering)
+        }
+    }
+
+    // 二次排序的 Mapper：输出 ((ItemA, Similarity), ItemB) 和 ((ItemB, Similarity), ItemA)
+    public static class SortedKNNMapper extends NeighborMapper<NeighborKey, IntWritable> {
+        private NeighborKey neighborKey = new NeighborKey();
+        private IntWritable neighborId = new IntWritable();
+
+        @Override
+        protected void write(int item, int neighbor, double similarity, Context context) throws IOException, InterruptedException {
+            neighborKey.set(item, similarity);
+            neighborId.set(neighbor);
+            context.write(neighborKey, neighborId);
+        }
+    }
+
+    // 只按 ItemID 分区，同一首歌的全部邻居进入同一个 Reducer
+    public static class ItemPartitioner extends Partitioner<NeighborKey, IntWritable> {
+        @Override
+        public int getPartition(NeighborKey key, IntWritable value, int numPartitions) {
+            return (key.getItem() & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+
+    // 二次排序的 Reducer：按 ItemID 分组，邻居已按相似度降序排列
+    // 遇到低于阈值的邻居或已输出 K 个时停止迭代，内存只有当前输出的一行
+    public static class SortedKNNReducer extends NeighborListReducer<NeighborKey, IntWritable> {
+        private IntWritable item = new IntWritable();
+
+        @Override
+        public void reduce(NeighborKey key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+            item.set(key.getItem());
+            neighborList.clear();
+            for (IntWritable neighbor : values) {
+                // 迭代时 key 随当前记录更新，getSimilarity() 为当前邻居的相似度
+                double similarity = key.getSimilarity();
+                if (similarity < threshold || (k > 0 && neighborList.size() == k)) {
+                    break;
+                }
+                neighborList.add(neighbor.get(), similarity);
+            }
+            writeNeighbors(item, context);
         }
     }
 
@@ -91,29 +425,102 @@ public class DynamicThresholdKNN {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: DynamicThresholdKNN <in> <out>");
+            System.err.println("Usage: DynamicThresholdKNN [-D " + THRESHOLD + "=<t>] [-D " + QUANTILE + "=<p>] [-D " + SKETCH_K + "=<k>] [-D " + K + "=<K>] [-D " + MAP_BUFFER + "=<n>]"
+                    + " [-D " + SECONDARY_SORT + "=true] [-D " + OUTPUT_FORMAT + "=" + OUTPUT_TEXT + "|" + OUTPUT_CSR + "] [-D " + CsrNeighborOutputFormat.QUANTIZE + "=true]"
+                    + " [-D " + UserItemMatrix.BINARY + "=true] <in> <out>");
+            System.exit(2);
+        }
+        boolean dynamic = conf.get(QUANTILE) != null;
+        if (dynamic) {
+            double quantile = conf.getDouble(QUANTILE, 0.0);
+            if (quantile < 0 || quantile > 1) {
+                System.err.println(QUANTILE + " must be between 0 and 1");
+                System.exit(2);
+            }
+            if (conf.getInt(SKETCH_K, QuantileSketch.DEFAULT_K) < 2) {
+                System.err.println(SKETCH_K + " must be at least 2");
+                System.exit(2);
+            }
+        }
+        String outputFormat = conf.get(OUTPUT_FORMAT, OUTPUT_TEXT);
+        if (!OUTPUT_TEXT.equals(outputFormat) && !OUTPUT_CSR.equals(outputFormat)) {
+            System.err.println(OUTPUT_FORMAT + " must be " + OUTPUT_TEXT + " or " + OUTPUT_CSR);
             System.exit(2);
         }
+        boolean binary = conf.getBoolean(UserItemMatrix.BINARY, false);
 
         // 检查输出路径是否存在，若存在则删除
         Path outputPath = new Path(otherArgs[1]);
+        Path thresholdsPath = new Path(otherArgs[1] + "_thresholds");
         FileSystem fs = FileSystem.get(conf);
         if (fs.exists(outputPath)) {
             fs.delete(outputPath, true);
         }
+        if (fs.exists(thresholdsPath)) {
+            fs.delete(thresholdsPath, true);
+        }
+
+        if (dynamic) {
+            // 第一步：估计每首歌相似度分布的分位数，作为它的阈值
+            Job thresholdJob = Job.getInstance(conf, "Per-Item Similarity Thresholds");
+            thresholdJob.setJarByClass(DynamicThresholdKNN.class);
+            thresholdJob.setMapperClass(SketchMapper.class);
+            thresholdJob.setCombinerClass(SketchCombiner.class);
+            thresholdJob.setReducerClass(ThresholdReducer.class);
+            thresholdJob.setMapOutputKeyClass(IntWritable.class);
+            thresholdJob.setMapOutputValueClass(QuantileSketch.class);
+            thresholdJob.setOutputKeyClass(IntWritable.class);
+            thresholdJob.setOutputValueClass(DoubleWritable.class);
+            thresholdJob.setOutputFormatClass(SequenceFileOutputFormat.class);
+            if (binary) {
+                thresholdJob.setInputFormatClass(SequenceFileInputFormat.class);
+            }
+            FileInputFormat.addInputPath(thresholdJob, new Path(otherArgs[0]));
+            FileOutputFormat.setOutputPath(thresholdJob, thresholdsPath);
+            if (!thresholdJob.waitForCompletion(true)) {
+                System.exit(1);
+            }
+            conf.set(THRESHOLDS_PATH, thresholdsPath.toString());
+        }
 
         Job job = Job.getInstance(conf, "Dynamic Threshold KNN Calculation");
         job.setJarByClass(DynamicThresholdKNN.class);
-        job.setMapperClass(KNNMapper.class);
-        job.setReducerClass(KNNReducer.class);
-        job.setMapOutputKeyClass(Text.class);
-        job.setMapOutputValueClass(Text.class);
-        job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(Text.class);
+        if (conf.getBoolean(SECONDARY_SORT, false)) {
+            // 排序和合并阶段完成按相似度的排序，Reducer 只需顺序读取
+            job.setMapperClass(SortedKNNMapper.class);
+            job.setPartitionerClass(ItemPartitioner.class);
+            job.setGroupingComparatorClass(NeighborKey.ItemComparator.class);
+            job.setReducerClass(SortedKNNReducer.class);
+            job.setMapOutputKeyClass(NeighborKey.class);
+            job.setMapOutputValueClass(IntWritable.class);
+        } else {
+            job.setMapperClass(KNNMapper.class);
+            job.setReducerClass(KNNReducer.class);
+            job.setMapOutputKeyClass(IntWritable.class);
+            job.setMapOutputValueClass(NeighborWritable.class);
+        }
+        job.setOutputKeyClass(IntWritable.class);
+        if (OUTPUT_CSR.equals(outputFormat)) {
+            job.setOutputValueClass(NeighborListWritable.class);
+            job.setOutputFormatClass(CsrNeighborOutputFormat.class);
+        } else {
+            job.setOutputValueClass(Text.class);
+        }
+        if (binary) {
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+        }
 
         FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
         FileOutputFormat.setOutputPath(job, outputPath);
 
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        boolean ok = job.waitForCompletion(true);
+        if (ok && conf.getInt(K, 0) > 0) {
+            // knn.k 模式下大部分截断发生在 Map 端的部分 top-K 中，NEIGHBORS_TRUNCATED 只统计 Reducer 端，两者之和才是总数
+            long mapSide = job.getCounters().findCounter(KNNCounters.NEIGHBORS_DROPPED_MAP_SIDE).getValue();
+            long reduceSide = job.getCounters().findCounter(KNNCounters.NEIGHBORS_TRUNCATED).getValue();
+            System.out.println("Neighbors truncated by " + K + ": " + (mapSide + reduceSide)
+                    + " (map side " + mapSide + ", reduce side " + reduceSide + ")");
+        }
+        System.exit(ok ? 0 : 1);
     }
 }
@@ -0,0 +1,95 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// 歌曲对 (ItemA, ItemB)，替代 "(a, b)" 文本键；ItemSimilarity 的 block 模式也用它作为 (块对编号, ItemID) 键
+// 定长 8 字节，注册的 Comparator 直接比较序列化后的字节，排序时不需要反序列化
+public class ItemPairWritable implements WritableComparable<ItemPairWritable> {
+
+    private int first;
+    private int second;
+
+    public ItemPairWritable() {
+    }
+
+    public ItemPairWritable(int first, int second) {
+        set(first, second);
+    }
+
+    public void set(int first, int second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    // ID 较小的歌曲在前，同一对歌曲总是得到相同的键
+    public void setOrdered(int a, int b) {
+        set(Math.min(a, b), Math.max(a, b));
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(first);
+        out.writeInt(second);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        first = in.readInt();
+        second = in.readInt();
+    }
+
+    @Override
+    public int compareTo(ItemPairWritable o) {
+        int cmp = Integer.compare(first, o.first);
+        return cmp != 0 ? cmp : Integer.compare(second, o.second);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ItemPairWritable)) {
+            return false;
+        }
+        ItemPairWritable other = (ItemPairWritable) o;
+        return first == other.first && second == other.second;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * first + second;
+    }
+
+    // 与原来的文本键格式相同，TextOutputFormat 输出 (ItemA, ItemB)\t相似度
+    @Override
+    public String toString() {
+        return "(" + first + ", " + second + ")";
+    }
+
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(ItemPairWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int cmp = Integer.compare(readInt(b1, s1), readInt(b2, s2));
+            return cmp != 0 ? cmp : Integer.compare(readInt(b1, s1 + 4), readInt(b2, s2 + 4));
+        }
+    }
+
+    static {
+        WritableComparator.define(ItemPairWritable.class, new Comparator());
+    }
+}
@@ -4,180 +4,497 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
 import java.util.*;
 
 public class ItemSimilarity {
 
-    // Mapper 将每个用户的评分数据转换为 (ItemID, UserID:Score) 格式
-    public static class RatingMapper extends Mapper<Object, Text, Text, Text> {
+    // 相似度计算模式: allpairs (单个 Reducer 计算所有歌曲对) 或 cooccurrence (按用户生成歌曲对，分布式求和)
+    public static final String MODE = "itemsimilarity.mode";
+    public static final String MODE_ALL_PAIRS = "allpairs";
+    public static final String MODE_COOCCURRENCE = "cooccurrence";
+    // block: 歌曲按哈希分成 B 块，每个 (blockI, blockJ) 块对由一个 Reducer 计算
+    public static final String MODE_BLOCK = "block";
+    public static final String BLOCKS = "itemsimilarity.blocks";
+    public static final int DEFAULT_BLOCKS = 4;
 
-        private Text itemId = new Text();
-        private Text userRating = new Text();
+    // 相似度度量: pearson (默认), cosine, adjusted_cosine, jaccard, vector_cosine，见 SimilarityAccumulator.Metric
+    public static final String METRIC = "itemsimilarity.metric";
+
+    // 只输出相似度不低于该阈值的歌曲对（默认输出所有大于 0 的歌曲对）
+    public static final String THRESHOLD = "itemsimilarity.threshold";
+    // allpairs/block 模式下跳过不可能达到阈值的歌曲对，只适用于 vector_cosine/jaccard，见 AllPairsIndex
+    public static final String PRUNE = "itemsimilarity.prune";
+
+    // allpairs 模式下每首歌只保留相似度最高的 K 个邻居，直接输出 DynamicThresholdKNN 格式的邻居列表
+    public static final String TOP_K = "itemsimilarity.topk";
+
+    public enum SimilarityCounters { PAIRS_EVALUATED, PAIRS_PRUNED }
+
+    static SimilarityAccumulator.Metric getMetric(Configuration conf) {
+        return SimilarityAccumulator.Metric.fromString(conf.get(METRIC, "pearson"));
+    }
+
+    // 读取 UserItemMatrix 输出的 Mapper 基类，文本行 (UserID\tItemId1:Score1, ItemId2:Score2, ...)
+    // 和二进制 (IntWritable, UserVectorWritable) 两种输入都解析为 UserVectorWritable
+    public abstract static class UserRowMapper<KEYOUT, VALUEOUT> extends Mapper<Object, Writable, KEYOUT, VALUEOUT> {
+
+        private UserVectorWritable textRow = new UserVectorWritable();
 
         @Override
-        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-            String[] userRatings = value.toString().split("\\s+");
-            String userId = userRatings[0];  // 提取用户ID
+        public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+            if (value instanceof UserVectorWritable) {
+                map(((IntWritable) key).get(), (UserVectorWritable) value, context);
+                return;
+            }
+            int userId = parseRow(value.toString(), textRow);
+            if (userId < 0) return;
+            map(userId, textRow, context);
+        }
 
-            // 过滤掉 UserID >= 10000 的数据
-            try {
-                int userIdInt = Integer.parseInt(userId);
+        protected abstract void map(int userId, UserVectorWritable row, Context context) throws IOException, InterruptedException;
+    }
+
+    // 解析 UserItemMatrix 的一行文本到 row 中，返回 UserID，格式错误时返回 -1
+    static int parseRow(String line, UserVectorWritable row) {
+        String[] userRatings = line.split("\\s+");
+        String userId = userRatings[0];  // 提取用户ID
+
+        // 过滤掉 UserID >= 10000 的数据
+        int userIdInt;
+        try {
+            userIdInt = Integer.parseInt(userId);
 //                if (userIdInt >= 1000) {
-//                    return;  // 跳过 UserID >= 10000 的行
+//                    return -1;  // 跳过 UserID >= 10000 的行
 //                }
-            } catch (NumberFormatException e) {
-                System.out.println("Invalid user id: " + userId);
-                // 跳过格式错误的行
-                return;
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid user id: " + userId);
+            // 跳过格式错误的行
+            return -1;
+        }
+
+        row.clear();
+        for (int i = 1; i < userRatings.length; i++) {
+            String[] itemScore = userRatings[i].replaceAll(",", "").split(":");  // 去除尾标逗号
+            if (itemScore.length < 2) continue;  // 跳过格式错误的行
+            try {
+                row.add(Integer.parseInt(itemScore[0]), Integer.parseInt(itemScore[1]));
+            } catch (IllegalArgumentException e) {
+                // 跳过格式错误或超出 0-255 的评分
             }
+        }
+        return userIdInt;
+    }
+
+    // Mapper 将每个用户的评分数据转换为 (ItemID, (UserID, Score)) 格式
+    // ItemID 为 IntWritable，shuffle 时按数值直接比较序列化后的字节；BlockMapper 改用块对键，所以输出键声明为 Writable
+    public static class RatingMapper extends UserRowMapper<Writable, RatingWritable> {
 
-            for (int i = 1; i < userRatings.length; i++) {
-                String[] itemScore = userRatings[i].replaceAll(",", "").split(":");  // 去除尾标逗号
-                if (itemScore.length < 2) continue;  // 跳过格式错误的行
-                itemId.set(itemScore[0]);  // 设置项目ID
-                userRating.set(userId + ":" + itemScore[1]);  // 设置UserID:Score
-                context.write(itemId, userRating);  // 输出 (ItemID, UserID:Score)
+        private IntWritable itemId = new IntWritable();
+        private RatingWritable userRating = new RatingWritable();
+        private boolean centerByUserMean;
+
+        @Override
+        protected void setup(Context context) {
+            // 调整余弦 = 减去用户平均评分后的余弦，在 Mapper 中就能看到用户的全部评分
+            centerByUserMean = getMetric(context.getConfiguration()) == SimilarityAccumulator.Metric.ADJUSTED_COSINE;
+        }
+
+        @Override
+        protected void map(int userId, UserVectorWritable row, Context context) throws IOException, InterruptedException {
+            double userMean = centerByUserMean ? row.mean() : 0.0;
+            for (int i = 0; i < row.size(); i++) {
+                userRating.set(userId, (float) (row.getScore(i) - userMean));  // 设置 (UserID, Score)
+                emit(row.getItemId(i), userRating, context);  // 输出 (ItemID, (UserID, Score))
             }
         }
+
+        protected void emit(int item, RatingWritable rating, Context context) throws IOException, InterruptedException {
+            itemId.set(item);  // 设置项目ID
+            context.write(itemId, rating);
+        }
     }
 
-    // Reducer 接收同一项目的所有用户评分数据，计算项目对的皮尔逊相关系数
-    public static class SimilarityReducer extends Reducer<Text, Text, Text, DoubleWritable> {
+    // 两两计算歌曲相似度的 Reducer 公共部分：度量、输出阈值、剪枝以及计数器
+    public abstract static class PairwiseSimilarityReducer<KEYIN> extends Reducer<KEYIN, RatingWritable, Writable, Writable> {
         private DoubleWritable similarityScore = new DoubleWritable();
-        private List<Song> songList = new ArrayList<Song>();
-
-        class Song {
-            private String id;
-            private HashMap<String, Double> usersRating;
+        private ItemPairWritable pair = new ItemPairWritable();
+        private SimilarityAccumulator acc = new SimilarityAccumulator();
+        private SimilarityAccumulator.Metric metric;
+        private double threshold;
+        private AllPairsIndex index;
+        private Counter evaluated;
+        private Counter pruned;
 
-            public String getId() {
-                return id;
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            metric = getMetric(conf);
+            threshold = conf.getDouble(THRESHOLD, 0.0);
+            if (conf.getBoolean(PRUNE, false)) {
+                index = new AllPairsIndex(threshold, metric == SimilarityAccumulator.Metric.JACCARD);
             }
+            evaluated = context.getCounter(SimilarityCounters.PAIRS_EVALUATED);
+            pruned = context.getCounter(SimilarityCounters.PAIRS_PRUNED);
+        }
 
-            public void setId(String id) {
-                this.id = id;
+        // 列表内的所有歌曲对
+        protected void selfJoin(List<SparseRatingVector> songs, Context context) throws IOException, InterruptedException {
+            long total = (long) songs.size() * (songs.size() - 1) / 2;
+            if (index != null) {
+                long candidates = index.selfJoin(songs, (a, b) -> writePair(a, b, context));
+                pruned.increment(total - candidates);
+                return;
+            }
+            for (int i = 0; i < songs.size(); i++) {
+                for (int j = i + 1; j < songs.size(); j++) {
+                    writePair(songs.get(i), songs.get(j), context);
+                }
             }
+        }
 
-            public Song(String id) {
-                this.id = id;
-                this.usersRating = new HashMap<>();
+        // left 与 right 之间的所有歌曲对
+        protected void join(List<SparseRatingVector> left, List<SparseRatingVector> right, Context context)
+                throws IOException, InterruptedException {
+            long total = (long) left.size() * right.size();
+            if (index != null) {
+                long candidates = index.join(left, right, (a, b) -> writePair(a, b, context));
+                pruned.increment(total - candidates);
+                return;
+            }
+            for (SparseRatingVector songA : left) {
+                for (SparseRatingVector songB : right) {
+                    writePair(songA, songB, context);
+                }
             }
+        }
 
+        private void writePair(SparseRatingVector songA, SparseRatingVector songB, Context context) throws IOException, InterruptedException {
+            // 一次归并收集 songA 和 songB 的统计量，再计算相似度
+            acc.clear();
+            songA.accumulate(songB, acc);
+            double similarity = acc.score(metric, songA.size(), songA.norm(), songB.size(), songB.norm());
+            evaluated.increment(1);
 
-            public HashMap<String, Double> getUsersRating() {
-                return usersRating;
+            // 只输出相似度大于 0（且不低于阈值）的歌曲对
+            if (similarity > 0 && similarity >= threshold) {
+                emitPair(songA, songB, similarity, context);
             }
+        }
 
-            public void setUsersRating(HashMap<String, Double> usersRating) {
-                this.usersRating = usersRating;
-            }
+        // 输出 ((ItemA, ItemB), 相似度)，ID 较小的歌曲在前
+        protected void emitPair(SparseRatingVector songA, SparseRatingVector songB, double similarity, Context context)
+                throws IOException, InterruptedException {
+            pair.setOrdered(songA.getId(), songB.getId());
+            similarityScore.set(similarity);
+            context.write(pair, similarityScore);
+        }
+    }
 
-            public double getRelated(Song b) {
-                List<Pair<Double, Double>> aRatingAndbRating = new LinkedList<>();
+    // Reducer 接收同一项目的所有用户评分数据，计算项目对的相似度（默认为皮尔逊相关系数）
+    public static class SimilarityReducer extends PairwiseSimilarityReducer<IntWritable> {
+        private List<SparseRatingVector> songList = new ArrayList<>();
 
-                // 获取共同评分的用户
-                for (String user : usersRating.keySet()) {
-                    if (b.getUsersRating().containsKey(user)) {
-                        aRatingAndbRating.add(Pair.of(this.getUsersRating().get(user), b.getUsersRating().get(user)));
-                    }
-                }
+        // topk 模式：每首歌一个有界最小堆，堆中存放邻居在 songList 中的下标
+        private int topK;
+        private Map<SparseRatingVector, TopKHeap> heaps;
+        private Map<SparseRatingVector, Integer> positions;
 
-                int n = aRatingAndbRating.size();  // 共同评分用户的数量
-                if (n == 0) {
-                    return 0.0; // 如果没有共同评分用户，返回 null 或者处理无交集的情况
-                }
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            super.setup(context);
+            topK = context.getConfiguration().getInt(TOP_K, 0);
+        }
 
-                // 计算歌曲 A 和歌曲 B 的平均评分
-                double sumA = 0.0;
-                double sumB = 0.0;
-                for (Pair<Double, Double> pair : aRatingAndbRating) {
-                    sumA += pair.getLeft(); // 歌曲 A 的评分
-                    sumB += pair.getRight(); // 歌曲 B 的评分
+        @Override
+        public void reduce(IntWritable key, Iterable<RatingWritable> values, Context context) throws IOException, InterruptedException {
+            // 收集当前歌曲（key）对应的所有用户评分，存为按 UserID 排序的紧凑向量
+            SparseRatingVector currentSong = SparseRatingVector.fromRatings(key.get(), values);
+
+            // 将当前歌曲存入 songList，用于与其他歌曲计算相似度
+            songList.add(currentSong);
+        }
+
+        // 在 cleanup() 中计算所有歌曲对之间的相似度
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            if (topK <= 0) {
+                selfJoin(songList, context);
+                return;
+            }
+
+            heaps = new IdentityHashMap<>(songList.size());
+            positions = new IdentityHashMap<>(songList.size());
+            for (int i = 0; i < songList.size(); i++) {
+                positions.put(songList.get(i), i);
+            }
+            selfJoin(songList, context);
+
+            // 输出 (Item, Neighbor1:Similarity1,Neighbor2:Similarity2,...)，按相似度降序
+            IntWritable item = new IntWritable();
+            Text neighbors = new Text();
+            int[] ids = new int[topK];
+            double[] scores = new double[topK];
+            StringBuilder knnResult = new StringBuilder();
+            for (SparseRatingVector song : songList) {
+                TopKHeap heap = heaps.get(song);
+                if (heap == null) continue;
+                int count = heap.drainDescending(ids, scores);
+                knnResult.setLength(0);
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        knnResult.append(",");
+                    }
+                    knnResult.append(songList.get(ids[i]).getId()).append(":").append(scores[i]);
                 }
+                item.set(song.getId());
+                neighbors.set(knnResult.toString());
+                context.write(item, neighbors);
+            }
+        }
+
+        @Override
+        protected void emitPair(SparseRatingVector songA, SparseRatingVector songB, double similarity, Context context)
+                throws IOException, InterruptedException {
+            if (topK <= 0) {
+                super.emitPair(songA, songB, similarity, context);
+                return;
+            }
+            // 两首歌互为邻居，分别放入对方的堆中
+            offer(songA, positions.get(songB), similarity);
+            offer(songB, positions.get(songA), similarity);
+        }
 
-                double meanA = sumA / n;
-                double meanB = sumB / n;
+        private void offer(SparseRatingVector song, int neighbor, double similarity) {
+            TopKHeap heap = heaps.get(song);
+            if (heap == null) {
+                heap = new TopKHeap(topK);
+                heaps.put(song, heap);
+            }
+            heap.offer(neighbor, similarity);
+        }
+    }
 
-                // 计算皮尔逊相关系数
-                double numerator = 0.0; // 分子
-                double denominatorA = 0.0; // 歌曲 A 的平方差
-                double denominatorB = 0.0; // 歌曲 B 的平方差
+    // 歌曲所在的块编号
+    static int blockOf(int item, int blocks) {
+        return (item & Integer.MAX_VALUE) % blocks;
+    }
 
-                for (Pair<Double, Double> pair : aRatingAndbRating) {
-                    double diffA = pair.getLeft() - meanA; // 歌曲 A 的评分偏差
-                    double diffB = pair.getRight() - meanB; // 歌曲 B 的评分偏差
+    // 块对 (i, j), i <= j 的三角编号: 0 .. B(B+1)/2 - 1
+    static int tileIndex(int blockI, int blockJ) {
+        return blockJ * (blockJ + 1) / 2 + blockI;
+    }
 
-                    numerator += diffA * diffB; // 分子
-                    denominatorA += diffA * diffA; // 歌曲 A 的平方差
-                    denominatorB += diffB * diffB; // 歌曲 B 的平方差
-                }
+    // tileIndex 的逆运算，返回块对中较大的块编号 j，较小的块编号为 tile - j(j+1)/2
+    static int tileBlockJ(int tile) {
+        int blockJ = (int) ((Math.sqrt(8.0 * tile + 1) - 1) / 2);
+        // 修正浮点误差
+        while (blockJ * (blockJ + 1) / 2 > tile) {
+            blockJ--;
+        }
+        while ((blockJ + 1) * (blockJ + 2) / 2 <= tile) {
+            blockJ++;
+        }
+        return blockJ;
+    }
 
-                double denominator = Math.sqrt(denominatorA) * Math.sqrt(denominatorB); // 分母
+    // Mapper 把每个评分发送到歌曲所在块参与的全部 B 个块对，键为 (块对编号, ItemID)
+    public static class BlockMapper extends RatingMapper {
+        private ItemPairWritable tileItem = new ItemPairWritable();
+        private int blocks;
 
-                if (denominator == 0) {
-                    return 0.0; // 避免除零错误，如果分母为 0，返回 null 或者其他值
-                }
+        @Override
+        protected void setup(Context context) {
+            super.setup(context);
+            blocks = context.getConfiguration().getInt(BLOCKS, DEFAULT_BLOCKS);
+        }
 
-                return numerator / denominator; // 计算并返回皮尔逊相关系数
+        @Override
+        protected void emit(int item, RatingWritable rating, Context context) throws IOException, InterruptedException {
+            int block = blockOf(item, blocks);
+            for (int other = 0; other < blocks; other++) {
+                tileItem.set(tileIndex(Math.min(block, other), Math.max(block, other)), item);
+                context.write(tileItem, rating);
             }
         }
+    }
 
+    // 按块对分区，每个块对对应一个 Reducer
+    // 键先按块对编号排序，同一块对的歌曲在 Reducer 中连续出现
+    public static class TilePartitioner extends Partitioner<ItemPairWritable, RatingWritable> {
         @Override
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-            // 收集当前歌曲（key）对应的所有用户评分
-            Map<String, Double> userRatingsMap = new HashMap<>();
-            Song currentSong = new Song(key.toString());
+        public int getPartition(ItemPairWritable key, RatingWritable value, int numPartitions) {
+            return key.getFirst() % numPartitions;
+        }
+    }
+
+    // Reducer 每次只保存当前块对的两个块，块对结束时计算其中的歌曲对
+    public static class BlockSimilarityReducer extends PairwiseSimilarityReducer<ItemPairWritable> {
+        private int blocks;
 
-            // 获取所有评分并将其放入当前歌曲的评分数据中
-            for (Text val : values) {
-                String[] parts = val.toString().split(":");
-                if (parts.length < 2) continue;  // 跳过格式错误的行
-                currentSong.getUsersRating().put(parts[0], Double.valueOf(parts[1]));
+        private int currentTile = -1;
+        private int currentBlockI;
+        private boolean diagonal;
+        private List<SparseRatingVector> blockI = new ArrayList<>();
+        private List<SparseRatingVector> blockJ = new ArrayList<>();
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            super.setup(context);
+            blocks = context.getConfiguration().getInt(BLOCKS, DEFAULT_BLOCKS);
+        }
+
+        @Override
+        public void reduce(ItemPairWritable key, Iterable<RatingWritable> values, Context context) throws IOException, InterruptedException {
+            int tile = key.getFirst();
+            int item = key.getSecond();
+
+            // 进入新的块对时先计算上一个块对
+            if (tile != currentTile) {
+                computeTile(context);
+                currentTile = tile;
+                int currentBlockJ = tileBlockJ(tile);
+                currentBlockI = tile - currentBlockJ * (currentBlockJ + 1) / 2;
+                diagonal = currentBlockI == currentBlockJ;
             }
 
-            // 将当前歌曲存入 songList，用于与其他歌曲计算相似度
-            songList.add(currentSong);
+            SparseRatingVector song = SparseRatingVector.fromRatings(item, values);
+            if (blockOf(item, blocks) == currentBlockI) {
+                blockI.add(song);
+            } else {
+                blockJ.add(song);
+            }
         }
 
-        // 在 cleanup() 中计算所有歌曲对之间的皮尔逊相关系数
         @Override
         public void cleanup(Context context) throws IOException, InterruptedException {
-            // 遍历 songList，计算所有歌曲之间的皮尔逊相关系数
-            for (int i = 0; i < songList.size(); i++) {
-                for (int j = i + 1; j < songList.size(); j++) {
-                    Song songA = songList.get(i);
-                    Song songB = songList.get(j);
+            computeTile(context);
+        }
+
+        private void computeTile(Context context) throws IOException, InterruptedException {
+            if (diagonal) {
+                // 对角块对 (i, i)：块内两两计算
+                selfJoin(blockI, context);
+            } else {
+                // 非对角块对 (i, j)：只计算跨块的歌曲对
+                join(blockI, blockJ, context);
+            }
+            blockI.clear();
+            blockJ.clear();
+        }
+    }
+
+    // Mapper 读取 UserItemMatrix 的一行 (UserID, ItemId1:Score1, ItemId2:Score2, ...)
+    // 对该用户评分过的每一对歌曲输出 ((ItemA, ItemB), 部分统计量)
+    public static class CooccurrenceMapper extends UserRowMapper<ItemPairWritable, SimilarityAccumulator> {
+
+        private ItemPairWritable itemPair = new ItemPairWritable();
+        private SimilarityAccumulator stats = new SimilarityAccumulator();
+        private boolean withUserMean;
+
+        @Override
+        protected void setup(Context context) {
+            withUserMean = getMetric(context.getConfiguration()) == SimilarityAccumulator.Metric.ADJUSTED_COSINE;
+        }
 
-                    // 计算 songA 和 songB 之间的皮尔逊相关系数
-                    double similarity = songA.getRelated(songB);
+        @Override
+        protected void map(int userId, UserVectorWritable row, Context context) throws IOException, InterruptedException {
+            if (row.size() < 2) return;  // 少于两个评分的用户不产生歌曲对
+
+            double userMean = 0.0;
+            if (withUserMean) {
+                userMean = row.mean();
+            }
 
-                    // 只输出相似度大于 0 的歌曲对
-                    if (similarity > 0) {
-                        // 输出两首歌及其相似度
-                        context.write(new Text("(" + songA.getId() + ", " + songB.getId() + ")"), new DoubleWritable(similarity));
+            // row 按 ItemID 升序，保证同一对歌曲在所有用户中以相同顺序作为键
+            for (int i = 0; i < row.size(); i++) {
+                int itemA = row.getItemId(i);
+                for (int j = i + 1; j < row.size(); j++) {
+                    int itemB = row.getItemId(j);
+                    if (itemA == itemB) continue;  // 同一首歌的重复评分
+                    itemPair.set(itemA, itemB);
+                    stats.clear();
+                    if (withUserMean) {
+                        stats.add(row.getScore(i), row.getScore(j), userMean);
+                    } else {
+                        stats.add(row.getScore(i), row.getScore(j));
                     }
+                    context.write(itemPair, stats);
                 }
             }
         }
+    }
 
+    // Combiner 在 Map 端对同一歌曲对的统计量求和
+    public static class AccumulatorCombiner extends Reducer<ItemPairWritable, SimilarityAccumulator, ItemPairWritable, SimilarityAccumulator> {
+        private SimilarityAccumulator sum = new SimilarityAccumulator();
 
+        @Override
+        public void reduce(ItemPairWritable key, Iterable<SimilarityAccumulator> values, Context context) throws IOException, InterruptedException {
+            sum.clear();
+            for (SimilarityAccumulator val : values) {
+                sum.merge(val);
+            }
+            context.write(key, sum);
+        }
+    }
+
+    // Reducer 汇总同一歌曲对的统计量并计算相似度，各歌曲对可以分布到任意多个 Reducer 上
+    public static class CooccurrenceReducer extends Reducer<ItemPairWritable, SimilarityAccumulator, ItemPairWritable, DoubleWritable> {
+        private SimilarityAccumulator sum = new SimilarityAccumulator();
+        private DoubleWritable similarityScore = new DoubleWritable();
+        private SimilarityAccumulator.Metric metric;
+        private double threshold;
+        private Counter evaluated;
+
+        @Override
+        protected void setup(Context context) {
+            metric = getMetric(context.getConfiguration());
+            threshold = context.getConfiguration().getDouble(THRESHOLD, 0.0);
+            evaluated = context.getCounter(SimilarityCounters.PAIRS_EVALUATED);
+        }
+
+        @Override
+        public void reduce(ItemPairWritable key, Iterable<SimilarityAccumulator> values, Context context) throws IOException, InterruptedException {
+            sum.clear();
+            for (SimilarityAccumulator val : values) {
+                sum.merge(val);
+            }
+
+            // 歌曲各自的评分人数和范数在这里不可见，因此该模式不支持 Jaccard 和全向量余弦（main 中已检查）
+            double similarity = sum.score(metric, 0, 0.0, 0, 0.0);
+            evaluated.increment(1);
+
+            // 只输出相似度大于 0（且不低于阈值）的歌曲对
+            if (similarity > 0 && similarity >= threshold) {
+                similarityScore.set(similarity);
+                context.write(key, similarityScore);
+            }
+        }
     }
 
     public static void main(String[] args) throws Exception {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: ItemSimilarity <in> <out>");
+            System.err.println("Usage: ItemSimilarity [-D " + MODE + "=" + MODE_ALL_PAIRS + "|" + MODE_COOCCURRENCE + "|" + MODE_BLOCK + "]"
+                    + " [-D " + BLOCKS + "=<B>] [-D " + METRIC + "=pearson|cosine|adjusted_cosine|jaccard|vector_cosine]"
+                    + " [-D " + THRESHOLD + "=<t>] [-D " + PRUNE + "=true] [-D " + TOP_K + "=<K>]"
+                    + " [-D " + UserItemMatrix.BINARY + "=true] <in> <out>");
             System.exit(2);
         }
 
@@ -190,12 +507,80 @@ public class ItemSimilarity {
 
         Job job = Job.getInstance(conf, "Item Similarity Calculation");
         job.setJarByClass(ItemSimilarity.class);
-        job.setMapperClass(RatingMapper.class);
-        job.setReducerClass(SimilarityReducer.class);
-        job.setMapOutputKeyClass(Text.class);
-        job.setMapOutputValueClass(Text.class);
-        job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(DoubleWritable.class);
+
+        SimilarityAccumulator.Metric metric;
+        try {
+            metric = getMetric(conf);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown " + METRIC + ": " + conf.get(METRIC));
+            System.exit(2);
+            return;
+        }
+
+        String mode = conf.get(MODE, MODE_ALL_PAIRS);
+        int topK = conf.getInt(TOP_K, 0);
+        if (topK > 0 && !MODE_ALL_PAIRS.equals(mode)) {
+            // 其它模式中一首歌的邻居分散在多个 Reducer 上，请用 DynamicThresholdKNN 选出前 K 个
+            System.err.println(TOP_K + " is only supported in " + MODE_ALL_PAIRS + " mode");
+            System.exit(2);
+        }
+        if (conf.getBoolean(PRUNE, false)) {
+            // 剪枝的上界基于单位化的完整向量，对只在共同评分用户上归一化的度量不成立
+            if (!metric.needsItemStats()) {
+                System.err.println(PRUNE + " needs " + METRIC + "=vector_cosine or jaccard");
+                System.exit(2);
+            }
+            if (conf.getDouble(THRESHOLD, 0.0) <= 0) {
+                System.err.println(PRUNE + " needs a positive " + THRESHOLD);
+                System.exit(2);
+            }
+            if (MODE_COOCCURRENCE.equals(mode)) {
+                System.err.println(PRUNE + " is not supported in " + MODE_COOCCURRENCE + " mode");
+                System.exit(2);
+            }
+        }
+        if (MODE_COOCCURRENCE.equals(mode)) {
+            if (metric.needsItemStats()) {
+                System.err.println(metric + " needs per-item rating counts and norms and is not supported in " + MODE_COOCCURRENCE + " mode");
+                System.exit(2);
+            }
+            // 输入为 UserItemMatrix 的输出，按用户生成歌曲对，Reducer 数量可任意设置
+            job.setMapperClass(CooccurrenceMapper.class);
+            job.setCombinerClass(AccumulatorCombiner.class);
+            job.setReducerClass(CooccurrenceReducer.class);
+            job.setMapOutputKeyClass(ItemPairWritable.class);
+            job.setMapOutputValueClass(SimilarityAccumulator.class);
+        } else if (MODE_BLOCK.equals(mode)) {
+            int blocks = conf.getInt(BLOCKS, DEFAULT_BLOCKS);
+            if (blocks < 1) {
+                System.err.println(BLOCKS + " must be positive");
+                System.exit(2);
+            }
+            // B(B+1)/2 个块对，每个块对一个 Reducer
+            job.setMapperClass(BlockMapper.class);
+            job.setPartitionerClass(TilePartitioner.class);
+            job.setReducerClass(BlockSimilarityReducer.class);
+            job.setMapOutputKeyClass(ItemPairWritable.class);
+            job.setMapOutputValueClass(RatingWritable.class);
+            job.setNumReduceTasks(blocks * (blocks + 1) / 2);
+        } else if (MODE_ALL_PAIRS.equals(mode)) {
+            job.setMapperClass(RatingMapper.class);
+            job.setReducerClass(SimilarityReducer.class);
+            job.setMapOutputKeyClass(IntWritable.class);
+            job.setMapOutputValueClass(RatingWritable.class);
+            job.setNumReduceTasks(1);  // cleanup() 中的两两计算需要看到所有歌曲
+        } else {
+            System.err.println("Unknown " + MODE + ": " + mode);
+            System.exit(2);
+        }
+        // topk 模式输出 (Item, 邻居列表)，其它模式输出 ((ItemA, ItemB), 相似度)
+        job.setOutputKeyClass(topK > 0 ? IntWritable.class : ItemPairWritable.class);
+        job.setOutputValueClass(topK > 0 ? Text.class : DoubleWritable.class);
+        if (conf.getBoolean(UserItemMatrix.BINARY, false)) {
+            // 输入为 UserItemMatrix 的 SequenceFile，输出 SequenceFile 供 DynamicThresholdKNN 读取
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        }
 
         FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
         FileOutputFormat.setOutputPath(job, outputPath);
@@ -0,0 +1,524 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.ByteWritable;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+import java.io.IOException;
+import java.util.*;
+
+// 近似候选对生成：对每首歌的评分用户集合计算 MinHash 签名，按 band 分桶，
+// 只有在某个 band 中落入同一个桶的歌曲对才精确计算相似度（默认皮尔逊）
+// 两首歌评分用户集合的 Jaccard 为 s 时，成为候选对的概率为 1 - (1 - s^rows)^bands
+//
+// 第一步：(ItemID, (UserID, Score)) -> 签名，输出 ((band, 桶哈希), SignatureWritable) 到 SequenceFile
+// 第二步：同一个桶内的歌曲两两精确计算，输出与 ItemSimilarity 相同的 ((ItemA, ItemB), 相似度)
+//         桶内歌曲数超过 lsh.max.bucket 时只计算其中优先级最小的 lsh.max.bucket 首歌之间的歌曲对，其余计入 SKIPPED_PAIRS
+//         设置了 lsh.max.bucket 时先用一个作业统计桶大小，找出超大桶和它们保留歌曲的优先级上限
+// 可选第三步（设置 lsh.exact 时）：用一个作业比较 LSH 结果和精确结果，计算召回率
+public class MinHashLSH {
+
+    public static final String BANDS = "lsh.bands";
+    public static final String ROWS = "lsh.rows";
+    public static final String SEED = "lsh.seed";
+    // 可选：同一输入上 ItemSimilarity 精确结果的目录，用于输出召回率报告
+    public static final String EXACT = "lsh.exact";
+    // 一个桶内最多精确比较的歌曲数，避免热门桶在单个 Reducer 中产生 O(m²) 的计算；0 表示不限制
+    public static final String MAX_BUCKET = "lsh.max.bucket";
+
+    public static final int DEFAULT_BANDS = 20;
+    public static final int DEFAULT_ROWS = 5;
+    public static final long DEFAULT_SEED = 42L;
+    public static final int DEFAULT_MAX_BUCKET = 1000;
+    // 超大桶统计结果的目录，由驱动程序设置
+    static final String OVERSIZED_PATH = "lsh.oversized.path";
+
+    public enum LSHCounters { CANDIDATE_PAIRS, DUPLICATE_PAIRS, OVERSIZED_BUCKETS, SKIPPED_PAIRS }
+
+    // 召回率作业的计数器：精确结果中的歌曲对、LSH 结果中的歌曲对、两者都有的歌曲对
+    public enum RecallCounters { EXACT_PAIRS, LSH_PAIRS, RECALLED_PAIRS }
+
+    // 第一步 Reducer：收集一首歌的评分向量，计算 MinHash 签名并发送到每个 band 的桶
+    // 桶键：高 32 位为 band，低 32 位为桶哈希，LongWritable 直接比较序列化后的字节
+    static long bucketKey(int band, int hash) {
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    public static class SignatureReducer extends Reducer<IntWritable, RatingWritable, LongWritable, SignatureWritable> {
+        private LongWritable bucket = new LongWritable();
+        private SignatureWritable entry = new SignatureWritable();
+        private int bands;
+        private int rows;
+        private long[] hashA;
+        private long[] hashB;
+
+        @Override
+        protected void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            bands = conf.getInt(BANDS, DEFAULT_BANDS);
+            rows = conf.getInt(ROWS, DEFAULT_ROWS);
+
+            // bands * rows 个 multiply-shift 哈希函数 h(u) = (a * u + b) >>> 32，所有 Reducer 使用相同的种子
+            Random random = new Random(conf.getLong(SEED, DEFAULT_SEED));
+            hashA = new long[bands * rows];
+            hashB = new long[bands * rows];
+            for (int i = 0; i < hashA.length; i++) {
+                hashA[i] = random.nextLong() | 1L;
+                hashB[i] = random.nextLong();
+            }
+        }
+
+        @Override
+        public void reduce(IntWritable key, Iterable<RatingWritable> values, Context context) throws IOException, InterruptedException {
+            SparseRatingVector song = SparseRatingVector.fromRatings(key.get(), values);
+            if (song.size() == 0) return;
+
+            // MinHash 签名：每个哈希函数在评分用户集合上的最小值
+            int[] users = song.getUserIds();
+            long[] signature = new long[hashA.length];
+            Arrays.fill(signature, Long.MAX_VALUE);
+            for (int user : users) {
+                for (int h = 0; h < signature.length; h++) {
+                    long value = (hashA[h] * user + hashB[h]) >>> 32;
+                    if (value < signature[h]) {
+                        signature[h] = value;
+                    }
+                }
+            }
+
+            int[] bandHashes = new int[bands];
+            for (int b = 0; b < bands; b++) {
+                int hash = b;
+                for (int r = 0; r < rows; r++) {
+                    hash = 31 * hash + Long.hashCode(signature[b * rows + r]);
+                }
+                bandHashes[b] = hash;
+            }
+
+            // 每个 band 的桶都需要完整的评分向量才能精确计算；二进制序列化，第二步不需要解析文本
+            entry.set(bandHashes, song);
+            for (int b = 0; b < bands; b++) {
+                bucket.set(bucketKey(b, bandHashes[b]));
+                context.write(bucket, entry);
+            }
+        }
+    }
+
+    // 超大桶中保留优先级最小的 lsh.max.bucket 首歌；优先级只取决于 band 和歌曲，
+    // 所以其他 band 的 Reducer 也能判断一对歌曲在这个桶中是否真的比较过
+    // 高 32 位为混合后的哈希，低 32 位为 ItemID，不同歌曲的优先级互不相同
+    static long priority(int band, int itemId) {
+        int hash = itemId * 0x9E3779B9 + band * 0x85EBCA6B;
+        hash ^= hash >>> 16;
+        hash *= 0x7FEB352D;
+        hash ^= hash >>> 15;
+        return ((long) hash << 32) | (itemId & 0xFFFFFFFFL);
+    }
+
+    // 桶大小作业的 Mapper：(桶, 歌曲) -> (桶, 优先级)
+    public static class BucketSizeMapper extends Mapper<LongWritable, SignatureWritable, LongWritable, LongWritable> {
+        private LongWritable priority = new LongWritable();
+
+        @Override
+        protected void map(LongWritable key, SignatureWritable value, Context context) throws IOException, InterruptedException {
+            priority.set(priority((int) (key.get() >>> 32), value.getVector().getId()));
+            context.write(key, priority);
+        }
+    }
+
+    // 桶大小作业的 Reducer：只输出超过 lsh.max.bucket 的桶，值为保留歌曲中最大的优先级
+    public static class BucketSizeReducer extends Reducer<LongWritable, LongWritable, LongWritable, LongWritable> {
+        private LongWritable cutoff = new LongWritable();
+        private PriorityQueue<Long> kept = new PriorityQueue<>(Collections.reverseOrder());
+        private int maxBucket;
+
+        @Override
+        protected void setup(Context context) {
+            maxBucket = context.getConfiguration().getInt(MAX_BUCKET, DEFAULT_MAX_BUCKET);
+        }
+
+        @Override
+        public void reduce(LongWritable key, Iterable<LongWritable> values, Context context) throws IOException, InterruptedException {
+            kept.clear();
+            long bucketSize = 0;
+            for (LongWritable val : values) {
+                bucketSize++;
+                if (kept.size() < maxBucket) {
+                    kept.add(val.get());
+                } else if (val.get() < kept.peek()) {
+                    kept.poll();
+                    kept.add(val.get());
+                }
+            }
+            if (bucketSize > maxBucket) {
+                cutoff.set(kept.peek());
+                context.write(key, cutoff);
+            }
+        }
+    }
+
+    // 第二步 Reducer：同一个桶内的歌曲两两精确计算相似度
+    // 一对歌曲可能在多个 band 中落入同一个桶，只在第一个真正比较了它的 band 中计算，避免重复输出
+    // 超大桶只保留优先级不超过上限的歌曲；被跳过的歌曲对如果在后面的 band 中相遇，仍会在那里计算
+    public static class BucketReducer extends Reducer<LongWritable, SignatureWritable, ItemPairWritable, DoubleWritable> {
+        private ItemPairWritable pair = new ItemPairWritable();
+        private DoubleWritable similarityScore = new DoubleWritable();
+        private SimilarityAccumulator acc = new SimilarityAccumulator();
+        private SimilarityAccumulator.Metric metric;
+        private double threshold;
+        // 超大桶 -> 保留歌曲的优先级上限，不在其中的桶没有被截断
+        private Map<Long, Long> cutoffs = new HashMap<>();
+        private List<SparseRatingVector> songs = new ArrayList<>();
+        private List<int[]> bandHashes = new ArrayList<>();
+        private Counter candidates;
+        private Counter duplicates;
+        private Counter oversized;
+        private Counter skipped;
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            metric = ItemSimilarity.getMetric(conf);
+            threshold = conf.getDouble(ItemSimilarity.THRESHOLD, 0.0);
+            if (conf.get(OVERSIZED_PATH) != null) {
+                readCutoffs(conf, new Path(conf.get(OVERSIZED_PATH)));
+            }
+            candidates = context.getCounter(LSHCounters.CANDIDATE_PAIRS);
+            duplicates = context.getCounter(LSHCounters.DUPLICATE_PAIRS);
+            oversized = context.getCounter(LSHCounters.OVERSIZED_BUCKETS);
+            skipped = context.getCounter(LSHCounters.SKIPPED_PAIRS);
+        }
+
+        // 读取 BucketSizeReducer 输出的 SequenceFile<LongWritable, LongWritable>，超大桶通常很少
+        private void readCutoffs(Configuration conf, Path dir) throws IOException {
+            FileSystem fs = dir.getFileSystem(conf);
+            LongWritable bucket = new LongWritable();
+            LongWritable cutoff = new LongWritable();
+            for (FileStatus status : fs.listStatus(dir)) {
+                if (!status.getPath().getName().startsWith("part-")) continue;
+                try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(status.getPath()))) {
+                    while (reader.next(bucket, cutoff)) {
+                        cutoffs.put(bucket.get(), cutoff.get());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void reduce(LongWritable key, Iterable<SignatureWritable> values, Context context) throws IOException, InterruptedException {
+            int band = (int) (key.get() >>> 32);
+
+            songs.clear();
+            bandHashes.clear();
+            long bucketSize = 0;
+            for (SignatureWritable val : values) {
+                bucketSize++;
+                // readFields 每次分配新数组，可以直接保存
+                if (kept(band, key.get(), val.getVector().getId())) {
+                    songs.add(val.getVector());
+                    bandHashes.add(val.getBandHashes());
+                }
+            }
+            if (bucketSize > songs.size()) {
+                oversized.increment(1);
+                long compared = songs.size();
+                skipped.increment(bucketSize * (bucketSize - 1) / 2 - compared * (compared - 1) / 2);
+            }
+
+            for (int i = 0; i < songs.size(); i++) {
+                for (int j = i + 1; j < songs.size(); j++) {
+                    SparseRatingVector songA = songs.get(i);
+                    SparseRatingVector songB = songs.get(j);
+                    if (comparedEarlier(bandHashes.get(i), songA.getId(), bandHashes.get(j), songB.getId(), band)) {
+                        duplicates.increment(1);
+                        continue;
+                    }
+                    candidates.increment(1);
+
+                    acc.clear();
+                    songA.accumulate(songB, acc);
+                    double similarity = acc.score(metric, songA.size(), songA.norm(), songB.size(), songB.norm());
+
+                    // 只输出相似度大于 0（且不低于阈值）的歌曲对，ID 较小的歌曲在前
+                    if (similarity > 0 && similarity >= threshold) {
+                        pair.setOrdered(songA.getId(), songB.getId());
+                        similarityScore.set(similarity);
+                        context.write(pair, similarityScore);
+                    }
+                }
+            }
+        }
+
+        // 歌曲是否在桶中参与比较：没有被截断的桶保留所有歌曲
+        private boolean kept(int band, long bucket, int itemId) {
+            Long cutoff = cutoffs.get(bucket);
+            return cutoff == null || priority(band, itemId) <= cutoff;
+        }
+
+        // 两首歌是否在更早的 band 中落入同一个桶，并且都在那个桶中被保留
+        private boolean comparedEarlier(int[] a, int itemA, int[] b, int itemB, int band) {
+            for (int earlier = 0; earlier < band; earlier++) {
+                if (a[earlier] == b[earlier]) {
+                    long bucket = bucketKey(earlier, a[earlier]);
+                    if (kept(earlier, bucket, itemA) && kept(earlier, bucket, itemB)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // 召回率作业的 Mapper：读取精确结果或 LSH 结果（文本或 SequenceFile），不低于阈值的歌曲对发出 (歌曲对, 来源)
+    public abstract static class RecallMapper extends DynamicThresholdKNN.PairMapper<ItemPairWritable, ByteWritable> {
+        static final byte EXACT_SOURCE = 1;
+        static final byte LSH_SOURCE = 2;
+
+        private ItemPairWritable pair = new ItemPairWritable();
+        private ByteWritable source = new ByteWritable(source());
+        private double threshold;
+
+        @Override
+        protected void setup(Context context) {
+            threshold = context.getConfiguration().getDouble(ItemSimilarity.THRESHOLD, 0.0);
+        }
+
+        protected abstract byte source();
+
+        @Override
+        protected void pair(int itemA, int itemB, double similarity, Context context) throws IOException, InterruptedException {
+            if (similarity > 0 && similarity >= threshold) {
+                pair.setOrdered(itemA, itemB);
+                context.write(pair, source);
+            }
+        }
+    }
+
+    public static class ExactPairMapper extends RecallMapper {
+        @Override
+        protected byte source() {
+            return EXACT_SOURCE;
+        }
+    }
+
+    public static class LshPairMapper extends RecallMapper {
+        @Override
+        protected byte source() {
+            return LSH_SOURCE;
+        }
+    }
+
+    // 召回率作业的 Reducer：合并同一对歌曲的来源，只更新计数器，不输出
+    public static class RecallReducer extends Reducer<ItemPairWritable, ByteWritable, ItemPairWritable, ByteWritable> {
+        private Counter exact;
+        private Counter approximate;
+        private Counter recalled;
+
+        @Override
+        protected void setup(Context context) {
+            exact = context.getCounter(RecallCounters.EXACT_PAIRS);
+            approximate = context.getCounter(RecallCounters.LSH_PAIRS);
+            recalled = context.getCounter(RecallCounters.RECALLED_PAIRS);
+        }
+
+        @Override
+        public void reduce(ItemPairWritable key, Iterable<ByteWritable> values, Context context) {
+            int sources = 0;
+            for (ByteWritable val : values) {
+                sources |= val.get();
+            }
+            if ((sources & RecallMapper.EXACT_SOURCE) != 0) {
+                exact.increment(1);
+            }
+            if ((sources & RecallMapper.LSH_SOURCE) != 0) {
+                approximate.increment(1);
+            }
+            if (sources == (RecallMapper.EXACT_SOURCE | RecallMapper.LSH_SOURCE)) {
+                recalled.increment(1);
+            }
+        }
+    }
+
+    // 召回率 / 速度报告：用一个作业与同一（抽样）输入上的精确结果比较，驱动程序只读取计数器
+    private static boolean printReport(Configuration conf, Path lshOutput, Path exactOutput, long signatureMillis,
+                                       long bucketMillis, Job bucketJob) throws IOException, InterruptedException, ClassNotFoundException {
+        long start = System.currentTimeMillis();
+        Job recallJob = Job.getInstance(conf, "LSH Recall");
+        recallJob.setJarByClass(MinHashLSH.class);
+        if (conf.getBoolean(UserItemMatrix.BINARY, false)) {
+            MultipleInputs.addInputPath(recallJob, exactOutput, SequenceFileInputFormat.class, ExactPairMapper.class);
+            MultipleInputs.addInputPath(recallJob, lshOutput, SequenceFileInputFormat.class, LshPairMapper.class);
+        } else {
+            MultipleInputs.addInputPath(recallJob, exactOutput, TextInputFormat.class, ExactPairMapper.class);
+            MultipleInputs.addInputPath(recallJob, lshOutput, TextInputFormat.class, LshPairMapper.class);
+        }
+        recallJob.setReducerClass(RecallReducer.class);
+        recallJob.setMapOutputKeyClass(ItemPairWritable.class);
+        recallJob.setMapOutputValueClass(ByteWritable.class);
+        recallJob.setOutputKeyClass(ItemPairWritable.class);
+        recallJob.setOutputValueClass(ByteWritable.class);
+        recallJob.setOutputFormatClass(NullOutputFormat.class);
+        if (!recallJob.waitForCompletion(true)) {
+            return false;
+        }
+        long recallMillis = System.currentTimeMillis() - start;
+
+        Counters counters = recallJob.getCounters();
+        long exact = counters.findCounter(RecallCounters.EXACT_PAIRS).getValue();
+        long approximate = counters.findCounter(RecallCounters.LSH_PAIRS).getValue();
+        long found = counters.findCounter(RecallCounters.RECALLED_PAIRS).getValue();
+        Counters bucketCounters = bucketJob.getCounters();
+        double threshold = conf.getDouble(ItemSimilarity.THRESHOLD, 0.0);
+        int bands = conf.getInt(BANDS, DEFAULT_BANDS);
+        int rows = conf.getInt(ROWS, DEFAULT_ROWS);
+        System.out.println("LSH report (bands=" + bands + ", rows=" + rows + ", threshold=" + threshold + ")");
+        System.out.println("  exact pairs:       " + exact);
+        System.out.println("  LSH pairs:         " + approximate);
+        System.out.printf("  recall:            %.4f%n", exact == 0 ? 1.0 : (double) found / exact);
+        System.out.println("  candidate pairs:   " + bucketCounters.findCounter(LSHCounters.CANDIDATE_PAIRS).getValue());
+        System.out.println("  oversized buckets: " + bucketCounters.findCounter(LSHCounters.OVERSIZED_BUCKETS).getValue()
+                + " (" + bucketCounters.findCounter(LSHCounters.SKIPPED_PAIRS).getValue() + " pairs skipped)");
+        System.out.println("  signature stage:   " + signatureMillis + " ms");
+        System.out.println("  bucket stage:      " + bucketMillis + " ms");
+        System.out.println("  recall job:        " + recallMillis + " ms");
+        // 不同 Jaccard 下成为候选对的理论概率，用于调整 bands / rows
+        for (double s = 0.1; s < 0.95; s += 0.2) {
+            System.out.printf("  P(candidate | jaccard=%.1f) = %.4f%n", s, 1 - Math.pow(1 - Math.pow(s, rows), bands));
+        }
+        return true;
+    }
+
+    // 第二步的作业：设置了 lsh.max.bucket 时先统计超大桶（输出到 <out>_oversized，用完删除），再按桶精确计算
+    // 返回已经运行完的桶作业，统计桶大小的作业失败时返回 null
+    static Job verifyBuckets(Configuration conf, Path signaturePath, Path outputPath)
+            throws IOException, InterruptedException, ClassNotFoundException {
+        FileSystem fs = outputPath.getFileSystem(conf);
+        Path oversizedPath = new Path(outputPath + "_oversized");
+        if (fs.exists(oversizedPath)) {
+            fs.delete(oversizedPath, true);
+        }
+        Configuration bucketConf = new Configuration(conf);
+        if (conf.getInt(MAX_BUCKET, DEFAULT_MAX_BUCKET) > 0) {
+            Job sizeJob = Job.getInstance(conf, "LSH Bucket Sizes");
+            sizeJob.setJarByClass(MinHashLSH.class);
+            sizeJob.setInputFormatClass(SequenceFileInputFormat.class);
+            sizeJob.setMapperClass(BucketSizeMapper.class);
+            sizeJob.setReducerClass(BucketSizeReducer.class);
+            sizeJob.setMapOutputKeyClass(LongWritable.class);
+            sizeJob.setMapOutputValueClass(LongWritable.class);
+            sizeJob.setOutputKeyClass(LongWritable.class);
+            sizeJob.setOutputValueClass(LongWritable.class);
+            sizeJob.setOutputFormatClass(SequenceFileOutputFormat.class);
+            FileInputFormat.addInputPath(sizeJob, signaturePath);
+            FileOutputFormat.setOutputPath(sizeJob, oversizedPath);
+            if (!sizeJob.waitForCompletion(true)) {
+                return null;
+            }
+            bucketConf.set(OVERSIZED_PATH, oversizedPath.toString());
+        }
+
+        Job bucketJob = Job.getInstance(bucketConf, "LSH Candidate Verification");
+        bucketJob.setJarByClass(MinHashLSH.class);
+        bucketJob.setInputFormatClass(SequenceFileInputFormat.class);
+        bucketJob.setMapperClass(Mapper.class);
+        bucketJob.setReducerClass(BucketReducer.class);
+        bucketJob.setMapOutputKeyClass(LongWritable.class);
+        bucketJob.setMapOutputValueClass(SignatureWritable.class);
+        bucketJob.setOutputKeyClass(ItemPairWritable.class);
+        bucketJob.setOutputValueClass(DoubleWritable.class);
+        if (conf.getBoolean(UserItemMatrix.BINARY, false)) {
+            bucketJob.setOutputFormatClass(SequenceFileOutputFormat.class);
+        }
+        FileInputFormat.addInputPath(bucketJob, signaturePath);
+        FileOutputFormat.setOutputPath(bucketJob, outputPath);
+        bucketJob.waitForCompletion(true);
+        fs.delete(oversizedPath, true);
+        return bucketJob;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: MinHashLSH [-D " + BANDS + "=<b>] [-D " + ROWS + "=<r>] [-D " + SEED + "=<seed>]"
+                    + " [-D " + ItemSimilarity.METRIC + "=<metric>] [-D " + ItemSimilarity.THRESHOLD + "=<t>]"
+                    + " [-D " + MAX_BUCKET + "=<n>] [-D " + EXACT + "=<ItemSimilarity output>] [-D " + UserItemMatrix.BINARY + "=true] <in> <out>");
+            System.exit(2);
+        }
+        if (conf.getInt(BANDS, DEFAULT_BANDS) < 1 || conf.getInt(ROWS, DEFAULT_ROWS) < 1) {
+            System.err.println(BANDS + " and " + ROWS + " must be positive");
+            System.exit(2);
+        }
+        try {
+            ItemSimilarity.getMetric(conf);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown " + ItemSimilarity.METRIC + ": " + conf.get(ItemSimilarity.METRIC));
+            System.exit(2);
+        }
+
+        // 检查输出路径是否存在，若存在则删除
+        Path outputPath = new Path(otherArgs[1]);
+        Path signaturePath = new Path(otherArgs[1] + "_signatures");
+        FileSystem fs = FileSystem.get(conf);
+        if (fs.exists(outputPath)) {
+            fs.delete(outputPath, true);
+        }
+        if (fs.exists(signaturePath)) {
+            fs.delete(signaturePath, true);
+        }
+
+        // 第一步：输入为 UserItemMatrix 的输出，Mapper 与 ItemSimilarity 相同
+        long start = System.currentTimeMillis();
+        Job signatureJob = Job.getInstance(conf, "MinHash Signatures");
+        signatureJob.setJarByClass(MinHashLSH.class);
+        signatureJob.setMapperClass(ItemSimilarity.RatingMapper.class);
+        signatureJob.setReducerClass(SignatureReducer.class);
+        signatureJob.setMapOutputKeyClass(IntWritable.class);
+        signatureJob.setMapOutputValueClass(RatingWritable.class);
+        signatureJob.setOutputKeyClass(LongWritable.class);
+        signatureJob.setOutputValueClass(SignatureWritable.class);
+        signatureJob.setOutputFormatClass(SequenceFileOutputFormat.class);
+        boolean binary = conf.getBoolean(UserItemMatrix.BINARY, false);
+        if (binary) {
+            signatureJob.setInputFormatClass(SequenceFileInputFormat.class);
+        }
+        FileInputFormat.addInputPath(signatureJob, new Path(otherArgs[0]));
+        FileOutputFormat.setOutputPath(signatureJob, signaturePath);
+        if (!signatureJob.waitForCompletion(true)) {
+            System.exit(1);
+        }
+        long signatureMillis = System.currentTimeMillis() - start;
+
+        // 第二步：按桶分组，桶内精确计算
+        start = System.currentTimeMillis();
+        Job bucketJob = verifyBuckets(conf, signaturePath, outputPath);
+        boolean success = bucketJob != null && bucketJob.isSuccessful();
+        long bucketMillis = System.currentTimeMillis() - start;
+        fs.delete(signaturePath, true);
+
+        if (success && conf.get(EXACT) != null) {
+            success = printReport(conf, outputPath, new Path(conf.get(EXACT)), signatureMillis, bucketMillis, bucketJob);
+        }
+
+        System.exit(success ? 0 : 1);
+    }
+}
@@ -0,0 +1,105 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// DynamicThresholdKNN 二次排序的组合键 (ItemID, 相似度)：先按 ItemID 升序，再按相似度降序
+// 配合 ItemComparator 只按 ItemID 分组，Reducer 收到的邻居已按相似度从高到低排列
+// 定长 12 字节，两个 Comparator 都直接比较序列化后的字节
+public class NeighborKey implements WritableComparable<NeighborKey> {
+
+    private int item;
+    private double similarity;
+
+    public void set(int item, double similarity) {
+        this.item = item;
+        this.similarity = similarity;
+    }
+
+    public int getItem() {
+        return item;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(item);
+        out.writeDouble(similarity);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        item = in.readInt();
+        similarity = in.readDouble();
+    }
+
+    @Override
+    public int compareTo(NeighborKey o) {
+        int cmp = Integer.compare(item, o.item);
+        return cmp != 0 ? cmp : Double.compare(o.similarity, similarity);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof NeighborKey)) {
+            return false;
+        }
+        NeighborKey other = (NeighborKey) o;
+        return item == other.item && Double.compare(similarity, other.similarity) == 0;
+    }
+
+    // 只用 ItemID，同一首歌的所有邻居进入同一个分区
+    @Override
+    public int hashCode() {
+        return item;
+    }
+
+    @Override
+    public String toString() {
+        return item + ":" + similarity;
+    }
+
+    // 排序：ItemID 升序，相似度降序
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(NeighborKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int cmp = Integer.compare(readInt(b1, s1), readInt(b2, s2));
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Double.compare(readDouble(b2, s2 + 4), readDouble(b1, s1 + 4));
+        }
+    }
+
+    // 分组：只比较 ItemID
+    public static class ItemComparator extends WritableComparator {
+        public ItemComparator() {
+            super(NeighborKey.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return Integer.compare(readInt(b1, s1), readInt(b2, s2));
+        }
+
+        @Override
+        public int compare(Object a, Object b) {
+            return Integer.compare(((NeighborKey) a).item, ((NeighborKey) b).item);
+        }
+    }
+
+    static {
+        WritableComparator.define(NeighborKey.class, new Comparator());
+    }
+}
@@ -0,0 +1,112 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Text;
+
+import java.util.Arrays;
+
+// 解析 DynamicThresholdKNN 文本输出的一行 "Item\tn1:s1,n2:s2,..."，直接扫描 Text 的字节，不创建 String
+// 没有制表符或 ItemID 格式错误时 parse 返回 false；格式错误的单个邻居被跳过，计入 getMalformedNeighbors()
+// 解析结果保存在可复用的数组中，下一次 parse 时覆盖
+public class NeighborListParser extends ByteLineParser {
+
+    private int item;
+    private int size;
+    private int[] ids = new int[16];
+    private double[] scores = new double[16];
+    private long malformedNeighbors;
+
+    public int getItem() {
+        return item;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public double getScore(int i) {
+        return scores[i];
+    }
+
+    public long getMalformedNeighbors() {
+        return malformedNeighbors;
+    }
+
+    public boolean parse(Text line) {
+        return parse(line.getBytes(), 0, line.getLength());
+    }
+
+    public boolean parse(byte[] bytes, int start, int length) {
+        this.bytes = bytes;
+        int lineEnd = start + length;
+        size = 0;
+        try {
+            int tab = indexOf('\t', start, lineEnd);
+            if (tab < 0) return false;
+            try {
+                item = parseField(start, tab);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+
+            // 邻居列表已按相似度降序
+            int fieldStart = tab + 1;
+            while (fieldStart < lineEnd) {
+                int comma = indexOf(',', fieldStart, lineEnd);
+                if (comma < 0) comma = lineEnd;
+                int colon = indexOf(':', fieldStart, comma);
+                if (colon > fieldStart) {
+                    try {
+                        add(parseField(fieldStart, colon), parseDoubleField(colon + 1, comma));
+                    } catch (NumberFormatException e) {
+                        malformedNeighbors++;
+                    }
+                } else if (comma > fieldStart) {
+                    malformedNeighbors++;
+                }
+                fieldStart = comma + 1;
+            }
+            return true;
+        } finally {
+            this.bytes = null;
+        }
+    }
+
+    // [from, to) 中前后可以有空白的一个整数
+    private int parseField(int from, int to) {
+        pos = from;
+        end = to;
+        skipWhitespace();
+        int value = parseInt();
+        skipWhitespace();
+        if (pos != end) {
+            throw new NumberFormatException("unexpected characters");
+        }
+        return value;
+    }
+
+    private double parseDoubleField(int from, int to) {
+        pos = from;
+        end = to;
+        skipWhitespace();
+        double value = parseDouble();
+        skipWhitespace();
+        if (pos != end) {
+            throw new NumberFormatException("unexpected characters");
+        }
+        return value;
+    }
+
+    private void add(int id, double score) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        ids[size] = id;
+        scores[size] = score;
+        size++;
+    }
+}
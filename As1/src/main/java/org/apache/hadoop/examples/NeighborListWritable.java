@@ -0,0 +1,74 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// 一首歌的邻居列表 (NeighborID, Similarity)，按加入顺序（DynamicThresholdKNN 中为相似度降序）
+// 内存中保存 double 相似度，toString() 与文本输出 "n1:s1,n2:s2,..." 相同；序列化时相似度写为 float
+public class NeighborListWritable implements Writable {
+
+    private int size;
+    private int[] ids = new int[16];
+    private double[] scores = new double[16];
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int id, double score) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        ids[size] = id;
+        scores[size] = score;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public double getScore(int i) {
+        return scores[i];
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeFloat((float) scores[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        clear();
+        int count = WritableUtils.readVInt(in);
+        for (int i = 0; i < count; i++) {
+            add(in.readInt(), in.readFloat());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder knnResult = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                knnResult.append(",");
+            }
+            knnResult.append(ids[i]).append(":").append(scores[i]);
+        }
+        return knnResult.toString();
+    }
+}
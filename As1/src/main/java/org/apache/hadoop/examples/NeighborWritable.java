@@ -0,0 +1,46 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// DynamicThresholdKNN 的 Map 输出值：一个邻居 (NeighborID, Similarity)，替代 "NeighborID:Similarity" 文本
+// ID 为 VInt；相似度保持 double，与文本输出的精度相同，Reducer 不再需要解析字符串
+public class NeighborWritable implements Writable {
+
+    private int id;
+    private double similarity;
+
+    public void set(int id, double similarity) {
+        this.id = id;
+        this.similarity = similarity;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, id);
+        out.writeDouble(similarity);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        id = WritableUtils.readVInt(in);
+        similarity = in.readDouble();
+    }
+
+    @Override
+    public String toString() {
+        return id + ":" + similarity;
+    }
+}
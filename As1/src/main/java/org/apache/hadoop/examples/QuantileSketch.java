@@ -0,0 +1,191 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// 可合并的流式分位数草图 (KLL)：第 h 层的每个元素代表 2^h 个原始值
+// 某层元素数超过其容量时排序并隔一个取一个放入上一层，总权重保持不变
+// 层容量从顶层的 k 开始逐层乘以 2/3，内存为 O(k)，分位数的秩误差约为 O(1/k)
+// 草图之间可以直接 merge()，所以 Combiner 和 Reducer 使用同样的合并操作
+public class QuantileSketch implements Writable {
+
+    public static final int DEFAULT_K = 200;
+
+    private int k;
+    private long n;
+    private int numLevels;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    // 压缩时交替保留奇数位 / 偶数位的元素，避免系统性偏差
+    private boolean compactOdd;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < 2) {
+            throw new IllegalArgumentException("k must be at least 2: " + k);
+        }
+        this.k = k;
+    }
+
+    public void clear() {
+        n = 0;
+        numLevels = 0;
+    }
+
+    public long getCount() {
+        return n;
+    }
+
+    public void add(double value) {
+        append(0, value);
+        n++;
+        compress();
+    }
+
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.numLevels; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        n += other.n;
+        compress();
+    }
+
+    // 秩为 ceil(p * n) 的值的估计，p 在 [0, 1] 之间；空草图返回 NaN
+    public double quantile(double p) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        int total = 0;
+        for (int h = 0; h < numLevels; h++) {
+            total += sizes[h];
+        }
+        // 所有元素及其权重，按值排序后累加权重找到目标秩
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        int pos = 0;
+        for (int h = 0; h < numLevels; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[pos] = levels[h][i];
+                weights[pos] = 1L << h;
+                pos++;
+            }
+        }
+        Integer[] index = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            index[i] = i;
+        }
+        Arrays.sort(index, (a, b) -> Double.compare(values[a], values[b]));
+
+        double rank = Math.max(1.0, Math.ceil(p * n));
+        long cumulative = 0;
+        for (int i = 0; i < total; i++) {
+            cumulative += weights[index[i]];
+            if (cumulative >= rank) {
+                return values[index[i]];
+            }
+        }
+        return values[index[total - 1]];
+    }
+
+    private void append(int h, double value) {
+        ensureLevel(h);
+        if (sizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(8, sizes[h] * 2));
+        }
+        levels[h][sizes[h]++] = value;
+    }
+
+    private void ensureLevel(int h) {
+        if (h >= levels.length) {
+            levels = Arrays.copyOf(levels, h + 1);
+            sizes = Arrays.copyOf(sizes, h + 1);
+        }
+        if (levels[h] == null) {
+            levels[h] = new double[8];
+        }
+        while (numLevels <= h) {
+            sizes[numLevels++] = 0;
+        }
+    }
+
+    // 第 h 层的容量：顶层为 k，往下每层乘以 2/3，至少为 2
+    private int capacity(int h) {
+        int depth = numLevels - 1 - h;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private void compress() {
+        for (int h = 0; h < numLevels; h++) {
+            if (sizes[h] >= capacity(h)) {
+                compact(h);
+            }
+        }
+    }
+
+    // 第 h 层排序后每两个元素保留一个放入 h + 1 层，元素数为奇数时最大的元素留在本层
+    private void compact(int h) {
+        double[] level = levels[h];
+        int size = sizes[h];
+        Arrays.sort(level, 0, size);
+        int pairs = size / 2;
+        int offset = compactOdd ? 1 : 0;
+        compactOdd = !compactOdd;
+        ensureLevel(h + 1);
+        for (int i = 0; i < pairs; i++) {
+            append(h + 1, level[2 * i + offset]);
+        }
+        if (size % 2 == 1) {
+            level[0] = level[size - 1];
+            sizes[h] = 1;
+        } else {
+            sizes[h] = 0;
+        }
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, k);
+        WritableUtils.writeVLong(out, n);
+        WritableUtils.writeVInt(out, numLevels);
+        for (int h = 0; h < numLevels; h++) {
+            WritableUtils.writeVInt(out, sizes[h]);
+            for (int i = 0; i < sizes[h]; i++) {
+                out.writeDouble(levels[h][i]);
+            }
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        k = WritableUtils.readVInt(in);
+        n = WritableUtils.readVLong(in);
+        int count = WritableUtils.readVInt(in);
+        numLevels = 0;
+        for (int h = 0; h < count; h++) {
+            int size = WritableUtils.readVInt(in);
+            ensureLevel(h);
+            if (levels[h].length < size) {
+                levels[h] = new double[size];
+            }
+            for (int i = 0; i < size; i++) {
+                levels[h][i] = in.readDouble();
+            }
+            sizes[h] = size;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + n + ",median=" + quantile(0.5);
+    }
+}
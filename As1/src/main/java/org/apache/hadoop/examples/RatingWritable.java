@@ -0,0 +1,53 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// 一个评分 (ID, Score)，替代 "ID:Score" 文本：ID 为 VInt，评分为 float
+// 在 ItemSimilarity 中 ID 为 UserID；调整余弦时评分已减去用户平均分，所以不能用整数存储
+public class RatingWritable implements Writable {
+
+    private int id;
+    private float score;
+
+    public RatingWritable() {
+    }
+
+    public RatingWritable(int id, float score) {
+        set(id, score);
+    }
+
+    public void set(int id, float score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, id);
+        out.writeFloat(score);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        id = WritableUtils.readVInt(in);
+        score = in.readFloat();
+    }
+
+    @Override
+    public String toString() {
+        return id + ":" + score;
+    }
+}
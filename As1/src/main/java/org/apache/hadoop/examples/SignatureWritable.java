@@ -0,0 +1,76 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// MinHashLSH 桶中的一首歌：各 band 的哈希和评分向量，替代 "ItemID|h0,h1,...|UserID:Score,..." 文本
+// 序列化格式：VInt ItemID，VInt band 数和每个 band 的 int 哈希，VInt 评分数，按 UserID 升序的差值 VInt 编码，然后 float 评分
+// readFields 每次分配新数组，Reducer 可以直接保存 getVector() 返回的向量，不受 Hadoop 复用值对象的影响
+public class SignatureWritable implements Writable {
+
+    private int[] bandHashes;
+    private SparseRatingVector vector;
+
+    public void set(int[] bandHashes, SparseRatingVector vector) {
+        this.bandHashes = bandHashes;
+        this.vector = vector;
+    }
+
+    public int[] getBandHashes() {
+        return bandHashes;
+    }
+
+    public SparseRatingVector getVector() {
+        return vector;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, vector.getId());
+        WritableUtils.writeVInt(out, bandHashes.length);
+        for (int hash : bandHashes) {
+            out.writeInt(hash);
+        }
+        int[] userIds = vector.getUserIds();
+        float[] scores = vector.getScores();
+        WritableUtils.writeVInt(out, userIds.length);
+        int previous = 0;
+        for (int userId : userIds) {
+            WritableUtils.writeVInt(out, userId - previous);
+            previous = userId;
+        }
+        for (float score : scores) {
+            out.writeFloat(score);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int id = WritableUtils.readVInt(in);
+        bandHashes = new int[WritableUtils.readVInt(in)];
+        for (int b = 0; b < bandHashes.length; b++) {
+            bandHashes[b] = in.readInt();
+        }
+        int size = WritableUtils.readVInt(in);
+        int[] userIds = new int[size];
+        float[] scores = new float[size];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += WritableUtils.readVInt(in);
+            userIds[i] = previous;
+        }
+        for (int i = 0; i < size; i++) {
+            scores[i] = in.readFloat();
+        }
+        vector = new SparseRatingVector(id, userIds, scores);
+    }
+
+    @Override
+    public String toString() {
+        return vector.getId() + "|" + bandHashes.length + " bands|" + vector.size() + " ratings";
+    }
+}
@@ -0,0 +1,182 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// 一对歌曲在共同评分用户上的充分统计量，一次遍历收集：
+//   n, ΣA, ΣB, ΣA², ΣB², ΣAB，以及调整余弦需要的 ΣUA, ΣUB, ΣU² (U 为该用户的平均评分)
+// 同一组统计量可以得到皮尔逊、余弦、调整余弦，再加上两首歌各自的评分人数 / 范数可得到 Jaccard 和全向量余弦
+// 统计量可以直接相加，所以 Combiner 和分布式 Reducer 使用同样的 merge()
+public class SimilarityAccumulator implements Writable {
+
+    public enum Metric {
+        PEARSON, COSINE, ADJUSTED_COSINE, JACCARD, VECTOR_COSINE;
+
+        // Jaccard 和全向量余弦还需要两首歌各自的评分人数 / 向量范数，只有持有完整向量时才能计算
+        public boolean needsItemStats() {
+            return this == JACCARD || this == VECTOR_COSINE;
+        }
+
+        // 解析配置中的名称，例如 "pearson"、"adjusted_cosine"
+        public static Metric fromString(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private long n;
+    private double sumA;
+    private double sumB;
+    private double sumAA;
+    private double sumBB;
+    private double sumAB;
+    private double sumUA;
+    private double sumUB;
+    private double sumUU;
+
+    public void clear() {
+        n = 0;
+        sumA = sumB = sumAA = sumBB = sumAB = 0.0;
+        sumUA = sumUB = sumUU = 0.0;
+    }
+
+    // 加入一个共同评分用户
+    public void add(double a, double b) {
+        n++;
+        sumA += a;
+        sumB += b;
+        sumAA += a * a;
+        sumBB += b * b;
+        sumAB += a * b;
+    }
+
+    // 加入一个共同评分用户以及该用户的平均评分，用于调整余弦
+    public void add(double a, double b, double userMean) {
+        add(a, b);
+        sumUA += userMean * a;
+        sumUB += userMean * b;
+        sumUU += userMean * userMean;
+    }
+
+    public void merge(SimilarityAccumulator other) {
+        n += other.n;
+        sumA += other.sumA;
+        sumB += other.sumB;
+        sumAA += other.sumAA;
+        sumBB += other.sumBB;
+        sumAB += other.sumAB;
+        sumUA += other.sumUA;
+        sumUB += other.sumUB;
+        sumUU += other.sumUU;
+    }
+
+    public long getCount() {
+        return n;
+    }
+
+    // 均值只在共同评分用户上计算，与原 Song.getRelated 的定义一致
+    public double pearson() {
+        if (n == 0) {
+            return 0.0;
+        }
+        // 乘以 n 的形式：整数评分时分子分母都是精确的整数
+        double numerator = n * sumAB - sumA * sumB;
+        double denominatorA = n * sumAA - sumA * sumA;
+        double denominatorB = n * sumBB - sumB * sumB;
+        return ratio(numerator, denominatorA, n * sumAA, denominatorB, n * sumBB);
+    }
+
+    // 只在共同评分用户上归一化的余弦
+    public double cosine() {
+        return ratio(sumAB, sumAA, sumAA, sumBB, sumBB);
+    }
+
+    // Σ(A-U)(B-U) / sqrt(Σ(A-U)² Σ(B-U)²)，按平方展开后只需要上面的和
+    public double adjustedCosine() {
+        double numerator = sumAB - sumUA - sumUB + sumUU;
+        double denominatorA = sumAA - 2 * sumUA + sumUU;
+        double denominatorB = sumBB - 2 * sumUB + sumUU;
+        return ratio(numerator, denominatorA, sumAA + sumUU, denominatorB, sumBB + sumUU);
+    }
+
+    // 未评分视为 0 的全向量余弦，normA/normB 为两首歌完整评分向量的 L2 范数
+    public double vectorCosine(double normA, double normB) {
+        if (normA == 0 || normB == 0) {
+            return 0.0;
+        }
+        return sumAB / (normA * normB);
+    }
+
+    // 评分用户集合的 Jaccard 系数，countA/countB 为两首歌各自的评分人数
+    public double jaccard(long countA, long countB) {
+        long union = countA + countB - n;
+        return union <= 0 ? 0.0 : (double) n / union;
+    }
+
+    public double score(Metric metric, long countA, double normA, long countB, double normB) {
+        switch (metric) {
+            case COSINE:
+                return cosine();
+            case ADJUSTED_COSINE:
+                return adjustedCosine();
+            case JACCARD:
+                return jaccard(countA, countB);
+            case VECTOR_COSINE:
+                return vectorCosine(normA, normB);
+            default:
+                return pearson();
+        }
+    }
+
+    // 分母为 0（或浮点误差导致的接近 0 / 负数）时返回 0，避免除零错误
+    private static double ratio(double numerator, double denominatorA, double scaleA,
+                                double denominatorB, double scaleB) {
+        if (denominatorA <= 1e-12 * scaleA || denominatorB <= 1e-12 * scaleB) {
+            return 0.0;
+        }
+        return numerator / (Math.sqrt(denominatorA) * Math.sqrt(denominatorB));
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(n);
+        out.writeDouble(sumA);
+        out.writeDouble(sumB);
+        out.writeDouble(sumAA);
+        out.writeDouble(sumBB);
+        out.writeDouble(sumAB);
+        // 不使用调整余弦时这三项都是 0，省去 24 字节的 shuffle 数据
+        boolean hasUserMeans = sumUA != 0 || sumUB != 0 || sumUU != 0;
+        out.writeBoolean(hasUserMeans);
+        if (hasUserMeans) {
+            out.writeDouble(sumUA);
+            out.writeDouble(sumUB);
+            out.writeDouble(sumUU);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        n = in.readLong();
+        sumA = in.readDouble();
+        sumB = in.readDouble();
+        sumAA = in.readDouble();
+        sumBB = in.readDouble();
+        sumAB = in.readDouble();
+        if (in.readBoolean()) {
+            sumUA = in.readDouble();
+            sumUB = in.readDouble();
+            sumUU = in.readDouble();
+        } else {
+            sumUA = sumUB = sumUU = 0.0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return n + "," + sumA + "," + sumB + "," + sumAA + "," + sumBB + "," + sumAB
+                + "," + sumUA + "," + sumUB + "," + sumUU;
+    }
+}
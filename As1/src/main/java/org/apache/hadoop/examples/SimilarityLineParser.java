@@ -0,0 +1,80 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Text;
+
+// 解析 ItemSimilarity 文本输出的一行 "(ItemA, ItemB)\tSimilarity"，直接扫描 Text 的字节，不创建 String
+// 解析成功后通过 getItemA()/getItemB()/getSimilarity() 取结果，格式错误时 parse 返回 false
+// 同一个解析器对象可以反复使用，并统计接受和拒绝的行数
+// MysqlManager 的 org.example.SimilarityLineParser 是同一个解析器的副本（两个模块没有共同依赖）：
+// 两边的 SimilarityLineParserTest 读取同一份 testdata/similarity-lines.txt，行为不一致时测试失败
+public class SimilarityLineParser extends ByteLineParser {
+
+    private int itemA;
+    private int itemB;
+    private double similarity;
+
+    private long parsedLines;
+    private long malformedLines;
+
+    public int getItemA() {
+        return itemA;
+    }
+
+    public int getItemB() {
+        return itemB;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public long getParsedLines() {
+        return parsedLines;
+    }
+
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    public boolean parse(Text line) {
+        return parse(line.getBytes(), 0, line.getLength());
+    }
+
+    // 解析 bytes[start, start + length) 并更新行数统计
+    public boolean parse(byte[] bytes, int start, int length) {
+        if (parseLine(bytes, start, length)) {
+            parsedLines++;
+            return true;
+        }
+        malformedLines++;
+        return false;
+    }
+
+    private boolean parseLine(byte[] bytes, int start, int length) {
+        this.bytes = bytes;
+        this.pos = start;
+        this.end = start + length;
+        try {
+            skipWhitespace();
+            if (!expect('(')) return false;
+            skipWhitespace();
+            itemA = parseInt();
+            skipWhitespace();
+            if (!expect(',')) return false;
+            skipWhitespace();
+            itemB = parseInt();
+            skipWhitespace();
+            if (!expect(')')) return false;
+            int beforeSeparator = pos;
+            skipWhitespace();
+            if (pos == beforeSeparator) return false;  // 相似度前至少有一个空白字符
+            similarity = parseDouble();
+            skipWhitespace();
+            return pos == end;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            this.bytes = null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.apache.hadoop.examples;
+
+import java.util.Arrays;
+
+// 一首歌曲的稀疏评分向量：按 UserID 升序排列的 int[] 用户 和 float[] 评分
+// 相比 HashMap<String, Double>，每个评分只占 8 字节，两两计算时按顺序归并求交集，不分配任何对象
+public class SparseRatingVector {
+
+    private final int id;
+    private final int[] userIds;
+    private final float[] scores;
+    private double norm = -1;
+
+    public SparseRatingVector(int id, int[] userIds, float[] scores) {
+        this.id = id;
+        this.userIds = userIds;
+        this.scores = scores;
+    }
+
+    // 由 Reducer 收到的 (UserID, Score) 列表构造向量
+    public static SparseRatingVector fromRatings(int id, Iterable<RatingWritable> values) {
+        // 高 32 位为 UserID，低 32 位为评分的 float 位模式，排序后即按 UserID 有序
+        long[] packed = new long[16];
+        int size = 0;
+        for (RatingWritable val : values) {
+            if (size == packed.length) {
+                packed = Arrays.copyOf(packed, size * 2);
+            }
+            packed[size++] = ((long) val.getId() << 32) | (Float.floatToRawIntBits(val.getScore()) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed, 0, size);
+
+        int[] userIds = new int[size];
+        float[] scores = new float[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int userId = (int) (packed[i] >> 32);
+            if (n > 0 && userIds[n - 1] == userId) {
+                n--;  // 同一用户的重复评分只保留一个
+            }
+            userIds[n] = userId;
+            scores[n] = Float.intBitsToFloat((int) packed[i]);
+            n++;
+        }
+        if (n < size) {
+            userIds = Arrays.copyOf(userIds, n);
+            scores = Arrays.copyOf(scores, n);
+        }
+        return new SparseRatingVector(id, userIds, scores);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int size() {
+        return userIds.length;
+    }
+
+    public int[] getUserIds() {
+        return userIds;
+    }
+
+    public float[] getScores() {
+        return scores;
+    }
+
+    // 完整评分向量的 L2 范数，第一次使用时计算
+    public double norm() {
+        if (norm < 0) {
+            double sumSquares = 0.0;
+            for (float score : scores) {
+                sumSquares += (double) score * score;
+            }
+            norm = Math.sqrt(sumSquares);
+        }
+        return norm;
+    }
+
+    // 归并两个向量的共同评分用户，一次遍历把统计量收集到 acc 中（调用方负责 clear）
+    public void accumulate(SparseRatingVector b, SimilarityAccumulator acc) {
+        int[] usersB = b.userIds;
+        float[] scoresB = b.scores;
+        for (int i = 0, j = 0; i < userIds.length && j < usersB.length; ) {
+            if (userIds[i] < usersB[j]) {
+                i++;
+            } else if (userIds[i] > usersB[j]) {
+                j++;
+            } else {
+                acc.add(scores[i++], scoresB[j++]);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.apache.hadoop.examples;
+
+import java.util.Arrays;
+
+// 容量为 K 的 (double 分数, int ID) 最小堆，只保留分数最高的 K 个元素
+// 数组按需增长到 K，元素少的歌曲不会占用 K 个槽位
+public class TopKHeap {
+
+    private final int capacity;
+    private double[] scores;
+    private int[] ids;
+    private int size;
+
+    public TopKHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        int initial = Math.min(capacity, 8);
+        this.scores = new double[initial];
+        this.ids = new int[initial];
+    }
+
+    // 加入一个元素，返回是否被保留（堆满时分数不高于堆顶的元素会被丢弃）
+    public boolean offer(int id, double score) {
+        if (size < capacity) {
+            if (size == scores.length) {
+                int grown = Math.min(capacity, size * 2);
+                scores = Arrays.copyOf(scores, grown);
+                ids = Arrays.copyOf(ids, grown);
+            }
+            scores[size] = score;
+            ids[size] = id;
+            siftUp(size++);
+            return true;
+        }
+        if (score <= scores[0]) {
+            return false;
+        }
+        scores[0] = score;
+        ids[0] = id;
+        siftDown(0);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    // 堆中最低的分数，即新元素被保留所需超过的分数
+    public double minScore() {
+        return scores[0];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // 按分数降序取出全部元素写入 idsOut/scoresOut，返回元素个数，之后堆为空
+    public int drainDescending(int[] idsOut, double[] scoresOut) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            idsOut[i] = ids[0];
+            scoresOut[i] = scores[0];
+            size--;
+            if (size > 0) {
+                scores[0] = scores[size];
+                ids[0] = ids[size];
+                siftDown(0);
+            }
+        }
+        return count;
+    }
+
+    private void siftUp(int i) {
+        double score = scores[i];
+        int id = ids[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) break;
+            scores[i] = scores[parent];
+            ids[i] = ids[parent];
+            i = parent;
+        }
+        scores[i] = score;
+        ids[i] = id;
+    }
+
+    private void siftDown(int i) {
+        double score = scores[i];
+        int id = ids[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) break;
+            scores[i] = scores[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        scores[i] = score;
+        ids[i] = id;
+    }
+}
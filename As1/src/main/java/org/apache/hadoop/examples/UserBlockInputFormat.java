@@ -0,0 +1,187 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// KDD-Cup 评分文件的 InputFormat，每条记录是一个完整的用户块：
+//   UserID|评分数
+//   ItemID\tScore\t...
+//   ...
+// 键为 UserID，值为该用户的全部评分行（以 '\n' 分隔）
+// 与 TextInputFormat 一样，分片从第一个完整行开始；分片开头不完整的用户块属于上一个分片，
+// 上一个分片会越过分片边界读完它的最后一个用户块，所以大文件可以安全地由多个 Mapper 处理
+public class UserBlockInputFormat extends FileInputFormat<Text, Text> {
+
+    @Override
+    public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new UserBlockRecordReader();
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        // 压缩文件无法从中间开始读取
+        CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+        return codec == null;
+    }
+
+    public static class UserBlockRecordReader extends RecordReader<Text, Text> {
+        private long start;
+        private long end;
+        private long pos;
+        private LineReader in;
+        private InputStream fileIn;
+
+        private Text line = new Text();
+        private Text key = new Text();
+        private Text value = new Text();
+
+        // 读取评分行时遇到的下一个用户行（上一个用户块的评分数与实际行数不符时）
+        private boolean hasPendingHeader;
+        private long pendingHeaderStart;
+        private Text pendingHeader = new Text();
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            Configuration conf = context.getConfiguration();
+            start = split.getStart();
+            end = start + split.getLength();
+            Path file = split.getPath();
+            FileSystem fs = file.getFileSystem(conf);
+
+            CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+            FSDataInputStream rawIn = fs.open(file);
+            if (codec != null) {
+                // 不可分片，整个文件是一个分片
+                fileIn = codec.createInputStream(rawIn);
+                end = Long.MAX_VALUE;
+            } else {
+                rawIn.seek(start);
+                fileIn = rawIn;
+            }
+            in = new LineReader(fileIn, conf);
+
+            // 不是文件开头时跳过第一行（可能不完整，或者已被上一个分片读取）
+            if (start != 0) {
+                start += in.readLine(new Text());
+            }
+            pos = start;
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            // 找到下一个从本分片内开始的用户行，之前的评分行属于上一个分片的用户块
+            long headerStart;
+            if (hasPendingHeader) {
+                hasPendingHeader = false;
+                headerStart = pendingHeaderStart;
+                line.set(pendingHeader);
+            } else {
+                while (true) {
+                    headerStart = pos;
+                    if (headerStart > end) {
+                        return false;
+                    }
+                    int size = in.readLine(line);
+                    if (size == 0) {
+                        return false;  // 文件结束
+                    }
+                    pos += size;
+                    if (isHeader(line)) {
+                        break;
+                    }
+                }
+            }
+            if (headerStart > end) {
+                return false;
+            }
+
+            String header = line.toString().trim();
+            String[] parts = header.split("\\|");
+            key.set(parts[0].trim());
+            int remaining;
+            try {
+                remaining = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+            } catch (NumberFormatException e) {
+                remaining = 0;
+            }
+
+            // 读取该用户的评分行，即使越过了分片末尾
+            value.clear();
+            while (remaining > 0) {
+                long lineStart = pos;
+                int size = in.readLine(line);
+                if (size == 0) {
+                    break;  // 文件在用户块中间结束
+                }
+                pos += size;
+                if (isHeader(line)) {
+                    // 评分数与实际行数不符，下一个用户从这里开始
+                    hasPendingHeader = true;
+                    pendingHeaderStart = lineStart;
+                    pendingHeader.set(line);
+                    break;
+                }
+                if (line.getLength() == 0) {
+                    continue;  // 跳过空行
+                }
+                if (value.getLength() > 0) {
+                    value.append(new byte[]{'\n'}, 0, 1);
+                }
+                value.append(line.getBytes(), 0, line.getLength());
+                remaining--;
+            }
+            return true;
+        }
+
+        private static boolean isHeader(Text line) {
+            byte[] bytes = line.getBytes();
+            for (int i = 0; i < line.getLength(); i++) {
+                if (bytes[i] == '|') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Text getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            if (start == end || end == Long.MAX_VALUE) {
+                return 0.0f;
+            }
+            return Math.min(1.0f, (pos - start) / (float) (end - start));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
@@ -2,57 +2,108 @@ package org.apache.hadoop.examples;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
 import java.io.IOException;
 
 public class UserItemMatrix {
 
-  public static class RatingMapper extends Mapper<Object, Text, Text, Text> {
+  // 二进制模式：各阶段之间通过 SequenceFile 交换 IntWritable / UserVectorWritable / ItemPairWritable，
+  // 不再拼接和解析文本。ItemSimilarity、MinHashLSH 和 DynamicThresholdKNN 使用同一个开关
+  public static final String BINARY = "recommender.binary";
 
-    private Text userId = new Text();
-    private Text itemAndScore = new Text();
-    private boolean isUserIdLine = false;  // 标记当前是否为用户ID行
+  // 每条输入记录是 UserBlockInputFormat 读出的一个完整用户块，不依赖前面的行，可以任意分片
+  // UserID 以 IntWritable 作为 shuffle 键，按数值直接比较序列化后的字节
+  public static class RatingMapper extends Mapper<Text, Text, IntWritable, Text> {
+
+    private IntWritable userId = new IntWritable();
+    private Text ratings = new Text();
+
+    @Override
+    public void map(Text user, Text block, Context context) throws IOException, InterruptedException {
+      try {
+        userId.set(Integer.parseInt(user.toString()));
+      } catch (NumberFormatException e) {
+        return;  // 跳过格式错误的用户行
+      }
+
+      StringBuilder row = new StringBuilder();
+      for (String line : block.toString().split("\n")) {
+        // 评分记录行: ItemId\tScore\t...
+        String[] fields = line.trim().split("\t");
+        if (fields.length < 2) continue;  // 跳过格式错误的行
+
+        if (row.length() > 0) {
+          row.append(", ");
+        }
+        row.append(fields[0]).append(":").append(fields[1]);  // 拼接成ItemId:Score格式
+      }
+      if (row.length() == 0) return;
+
+      // 输出 (UserId, ItemId1:Score1, ItemId2:Score2, ...)
+      ratings.set(row.toString());
+      context.write(userId, ratings);
+    }
+  }
+
+  // 二进制模式的 Mapper：把用户块解析为 (UserID, UserVectorWritable)
+  public static class VectorMapper extends Mapper<Text, Text, IntWritable, UserVectorWritable> {
+
+    private IntWritable userId = new IntWritable();
+    private UserVectorWritable vector = new UserVectorWritable();
+
+    @Override
+    public void map(Text user, Text block, Context context) throws IOException, InterruptedException {
+      try {
+        userId.set(Integer.parseInt(user.toString()));
+      } catch (NumberFormatException e) {
+        return;  // 跳过格式错误的用户行
+      }
+
+      vector.clear();
+      for (String line : block.toString().split("\n")) {
+        String[] fields = line.trim().split("\t");
+        if (fields.length < 2) continue;  // 跳过格式错误的行
+        try {
+          vector.add(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]));
+        } catch (IllegalArgumentException e) {
+          // 跳过格式错误或超出 0-255 的评分
+        }
+      }
+      if (vector.size() == 0) return;
+      context.write(userId, vector);
+    }
+  }
+
+  // 二进制模式的 Reducer：合并同一用户的评分向量（通常只有一个）
+  public static class VectorReducer extends Reducer<IntWritable, UserVectorWritable, IntWritable, UserVectorWritable> {
+
+    private UserVectorWritable merged = new UserVectorWritable();
 
     @Override
-    public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-      String line = value.toString().trim();
-
-      // 如果当前行为用户ID行
-      if (line.contains("|")) {
-        // 将UserId提取出来
-        String[] parts = line.split("\\|");
-        if (parts.length != 2) return;  // 跳过格式错误的行
-        userId.set(parts[0]);  // 设置UserId作为键
-        isUserIdLine = true;   // 标记为用户ID行
-      } else if (isUserIdLine) {
-        // 如果不是用户ID行，则是评分记录行
-        String[] fields = line.split("\t");
-        if (fields.length < 2) return;  // 跳过格式错误的行
-
-        // 提取ItemId和Score
-        String itemId = fields[0];
-        String score = fields[1];
-        itemAndScore.set(itemId + ":" + score);  // 拼接成ItemId:Score格式
-
-        // 输出 (UserId, ItemId:Score)
-        context.write(userId, itemAndScore);
+    public void reduce(IntWritable key, Iterable<UserVectorWritable> values, Context context) throws IOException, InterruptedException {
+      merged.clear();
+      for (UserVectorWritable val : values) {
+        merged.addAll(val);
       }
+      context.write(key, merged);
     }
   }
 
-  public static class MatrixReducer extends Reducer<Text, Text, Text, Text> {
+  public static class MatrixReducer extends Reducer<IntWritable, Text, IntWritable, Text> {
 
     private Text result = new Text();
 
     @Override
-    public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+    public void reduce(IntWritable key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
       StringBuilder ratings = new StringBuilder();
       for (Text val : values) {
         if (ratings.length() > 0) {
@@ -69,18 +120,29 @@ public class UserItemMatrix {
     Configuration conf = new Configuration();
     String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
     if (otherArgs.length < 2) {
-      System.err.println("Usage: UserItemMatrix <in> <out>");
+      System.err.println("Usage: UserItemMatrix [-D " + BINARY + "=true] <in> <out>");
       System.exit(2);
     }
 
     Job job = Job.getInstance(conf, "User-Item Rating Matrix");
     job.setJarByClass(UserItemMatrix.class);
-    job.setMapperClass(RatingMapper.class);
-    job.setReducerClass(MatrixReducer.class);
-    job.setMapOutputKeyClass(Text.class);
-    job.setMapOutputValueClass(Text.class);
-    job.setOutputKeyClass(Text.class);
-    job.setOutputValueClass(Text.class);
+    job.setInputFormatClass(UserBlockInputFormat.class);
+    if (conf.getBoolean(BINARY, false)) {
+      job.setMapperClass(VectorMapper.class);
+      job.setReducerClass(VectorReducer.class);
+      job.setMapOutputKeyClass(IntWritable.class);
+      job.setMapOutputValueClass(UserVectorWritable.class);
+      job.setOutputKeyClass(IntWritable.class);
+      job.setOutputValueClass(UserVectorWritable.class);
+      job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    } else {
+      job.setMapperClass(RatingMapper.class);
+      job.setReducerClass(MatrixReducer.class);
+      job.setMapOutputKeyClass(IntWritable.class);
+      job.setMapOutputValueClass(Text.class);
+      job.setOutputKeyClass(IntWritable.class);
+      job.setOutputValueClass(Text.class);
+    }
 
     FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
     FileOutputFormat.setOutputPath(job, new Path(otherArgs[1]));
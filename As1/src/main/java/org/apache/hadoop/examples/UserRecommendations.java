@@ -0,0 +1,457 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 离线批量计算每个用户的 top-N 推荐：UserItemMatrix 输出与 DynamicThresholdKNN 邻居列表的连接
+// 推荐分数与 RecommendationSystem 的 SQL 相同：score(j) = Σ 用户评过的歌曲 i 的 similarity(i, j) * score(i)，
+// 但不推荐用户已经评过的歌曲
+//
+// 邻居表（knn.k 限制后每首歌最多 K 个邻居）远小于评分数据，所以用 Map 端连接：每个 Mapper 在 setup 中把整个
+// 邻居表读入内存（文本输出解析为紧凑的数组，csr 输出直接内存映射），然后逐个用户计算，不需要 shuffle 和 Reducer
+// 输出为文本 "UserID\tItem1:Score1,Item2:Score2,..."（分数降序），由 MysqlManager 导入 user_recommendations 表
+public class UserRecommendations {
+
+    // 每个用户保留的推荐数，默认 50
+    public static final String TOP_N = "recommend.n";
+    public static final int DEFAULT_TOP_N = 50;
+
+    // 只使用相似度不低于该值的邻居，默认使用邻居表中的全部邻居（阈值已由 DynamicThresholdKNN 应用）
+    public static final String THRESHOLD = "recommend.threshold";
+
+    // 邻居表目录（DynamicThresholdKNN 的输出），由 main 设置
+    static final String NEIGHBORS_PATH = "recommend.neighbors.path";
+
+    public enum RecommendCounters { USERS, USERS_WITHOUT_RECOMMENDATIONS, RATED_ITEMS_WITHOUT_NEIGHBORS }
+
+    // 一首歌的邻居按相似度降序写入 ids/scores，最多写数组长度个，返回写入的个数；没有邻居时返回 0
+    interface NeighborTable {
+        int neighbors(int item, int[] ids, float[] scores);
+
+        // 单首歌最多的邻居数，用于分配缓冲区
+        int maxNeighbors();
+
+        // 相似度按本表的存储精度（float 或 16 位量化）编码后读回的值
+        // 编码是单调的：相似度不低于阈值的邻居，读回的值也不低于 stored(阈值)，所以阈值要先经过同样的编码再比较
+        float stored(double similarity);
+    }
+
+    // 读取邻居表：目录中有 .csr 文件时内存映射（只支持本地文件系统），否则解析文本 part 文件
+    static NeighborTable readNeighbors(Configuration conf, Path dir) throws IOException {
+        FileSystem fs = dir.getFileSystem(conf);
+        List<Path> csrFiles = new ArrayList<>();
+        List<Path> textFiles = new ArrayList<>();
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if (!name.startsWith("part-")) continue;
+            if (name.endsWith(CsrNeighborOutputFormat.EXTENSION)) {
+                csrFiles.add(status.getPath());
+            } else {
+                textFiles.add(status.getPath());
+            }
+        }
+        if (!csrFiles.isEmpty()) {
+            if (!"file".equals(fs.getUri().getScheme())) {
+                throw new IOException("csr neighbor files can only be memory-mapped from the local file system: " + dir);
+            }
+            return CsrTable.open(csrFiles);
+        }
+        return TextTable.read(fs, textFiles);
+    }
+
+    // 多个 csr part 文件：每首歌只出现在一个文件中（按 Reducer 分区）
+    // open 时把各文件的歌曲表合并成一个按 ItemID 排序的索引 (ItemID -> 文件, 行号)，每次查询只做一次二分查找
+    static class CsrTable implements NeighborTable {
+        private final CsrNeighborFile[] files;
+        private final int[] items;      // 升序
+        private final int[] fileOf;
+        private final int[] rowOf;
+        private final int maxNeighbors;
+
+        private CsrTable(CsrNeighborFile[] files, int[] items, int[] fileOf, int[] rowOf, int maxNeighbors) {
+            this.files = files;
+            this.items = items;
+            this.fileOf = fileOf;
+            this.rowOf = rowOf;
+            this.maxNeighbors = maxNeighbors;
+        }
+
+        static CsrTable open(List<Path> paths) throws IOException {
+            CsrNeighborFile[] files = new CsrNeighborFile[paths.size()];
+            int total = 0;
+            for (int i = 0; i < files.length; i++) {
+                files[i] = CsrNeighborFile.open(new File(paths.get(i).toUri().getPath()));
+                total += files[i].itemCount();
+            }
+
+            // 高 32 位为 ItemID，低 32 位为全局下标，排序后即按 ItemID 有序
+            long[] order = new long[total];
+            int[] fileOfIndex = new int[total];
+            int[] rowOfIndex = new int[total];
+            int maxNeighbors = 0;
+            int n = 0;
+            for (int f = 0; f < files.length; f++) {
+                for (int row = 0; row < files[f].itemCount(); row++) {
+                    order[n] = ((long) files[f].itemAt(row) << 32) | n;
+                    fileOfIndex[n] = f;
+                    rowOfIndex[n] = row;
+                    maxNeighbors = Math.max(maxNeighbors, files[f].neighborCountAt(row));
+                    n++;
+                }
+            }
+            Arrays.sort(order);
+            int[] items = new int[total];
+            int[] fileOf = new int[total];
+            int[] rowOf = new int[total];
+            for (int i = 0; i < total; i++) {
+                int index = (int) order[i];
+                items[i] = (int) (order[i] >> 32);
+                fileOf[i] = fileOfIndex[index];
+                rowOf[i] = rowOfIndex[index];
+            }
+            return new CsrTable(files, items, fileOf, rowOf, maxNeighbors);
+        }
+
+        @Override
+        public int neighbors(int item, int[] ids, float[] scores) {
+            int k = Arrays.binarySearch(items, item);
+            return k < 0 ? 0 : files[fileOf[k]].neighborsAt(rowOf[k], ids, scores);
+        }
+
+        @Override
+        public int maxNeighbors() {
+            return maxNeighbors;
+        }
+
+        @Override
+        public float stored(double similarity) {
+            // 同一次作业的 part 文件量化方式相同；万一混用，取最小值，宁可多保留也不漏掉邻居
+            float min = Float.POSITIVE_INFINITY;
+            for (CsrNeighborFile file : files) {
+                min = Math.min(min, file.stored(similarity));
+            }
+            return files.length == 0 ? (float) similarity : min;
+        }
+    }
+
+    // 文本邻居表 "Item\tn1:s1,n2:s2,..." 解析为 CSR 数组：按 ItemID 排序的行表 + 连续存放的邻居和 float 相似度
+    static class TextTable implements NeighborTable {
+        private final int[] items;      // 升序
+        private final int[] offsets;    // 与 items 对应的行起点
+        private final int[] counts;
+        private final int[] neighborIds;
+        private final float[] neighborScores;
+        private final int maxNeighbors;
+
+        private TextTable(int[] items, int[] offsets, int[] counts, int[] neighborIds, float[] neighborScores,
+                          int maxNeighbors) {
+            this.items = items;
+            this.offsets = offsets;
+            this.counts = counts;
+            this.neighborIds = neighborIds;
+            this.neighborScores = neighborScores;
+            this.maxNeighbors = maxNeighbors;
+        }
+
+        static TextTable read(FileSystem fs, List<Path> paths) throws IOException {
+            int rows = 0;
+            int[] rowItems = new int[1024];
+            int[] rowStarts = new int[1024];
+            int edges = 0;
+            int[] ids = new int[1 << 16];
+            float[] scores = new float[1 << 16];
+
+            // 直接在 Text 的字节上解析，跳过格式错误的行和邻居
+            Text line = new Text();
+            NeighborListParser parser = new NeighborListParser();
+            for (Path path : paths) {
+                try (InputStream in = fs.open(path)) {
+                    LineReader reader = new LineReader(in);
+                    while (reader.readLine(line) > 0) {
+                        if (!parser.parse(line)) continue;
+                        if (rows == rowItems.length) {
+                            rowItems = Arrays.copyOf(rowItems, rows * 2);
+                            rowStarts = Arrays.copyOf(rowStarts, rows * 2);
+                        }
+                        rowItems[rows] = parser.getItem();
+                        rowStarts[rows] = edges;
+                        rows++;
+
+                        // 邻居列表已按相似度降序
+                        int count = parser.size();
+                        if (edges + count > ids.length) {
+                            int grown = Math.max(ids.length * 2, edges + count);
+                            ids = Arrays.copyOf(ids, grown);
+                            scores = Arrays.copyOf(scores, grown);
+                        }
+                        for (int i = 0; i < count; i++) {
+                            ids[edges] = parser.getId(i);
+                            scores[edges] = (float) parser.getScore(i);
+                            edges++;
+                        }
+                    }
+                }
+            }
+
+            // 多个 part 文件各自有序，按 ItemID 重新排序：高 32 位为 ItemID，低 32 位为行号
+            long[] order = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                order[i] = ((long) rowItems[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] items = new int[rows];
+            int[] offsets = new int[rows];
+            int[] counts = new int[rows];
+            int maxNeighbors = 0;
+            for (int i = 0; i < rows; i++) {
+                int row = (int) order[i];
+                items[i] = (int) (order[i] >> 32);
+                offsets[i] = rowStarts[row];
+                counts[i] = (row + 1 < rows ? rowStarts[row + 1] : edges) - rowStarts[row];
+                maxNeighbors = Math.max(maxNeighbors, counts[i]);
+            }
+            return new TextTable(items, offsets, counts, ids, scores, maxNeighbors);
+        }
+
+        @Override
+        public int neighbors(int item, int[] ids, float[] scores) {
+            int k = Arrays.binarySearch(items, item);
+            if (k < 0) {
+                return 0;
+            }
+            int count = Math.min(counts[k], ids.length);
+            int start = offsets[k];
+            System.arraycopy(neighborIds, start, ids, 0, count);
+            System.arraycopy(neighborScores, start, scores, 0, count);
+            return count;
+        }
+
+        @Override
+        public int maxNeighbors() {
+            return maxNeighbors;
+        }
+
+        @Override
+        public float stored(double similarity) {
+            return (float) similarity;
+        }
+    }
+
+    // 候选歌曲的分数累加器：int -> double 开放寻址哈希表，每个用户之后只清空用过的槽位
+    static class ScoreAccumulator {
+        private static final int EMPTY = -1;  // ItemID 不为负数
+
+        private int[] keys = new int[1024];
+        private double[] values = new double[1024];
+        private int[] used = new int[1024];  // 超过一半的槽位被占用前扩容，used 不会溢出
+        private int size;
+
+        ScoreAccumulator() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void add(int item, double value) {
+            int mask = keys.length - 1;
+            int slot = mix(item) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != item) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = item;
+                values[slot] = value;
+                used[size++] = slot;
+                if (size * 2 > keys.length) {
+                    grow();
+                }
+            } else {
+                values[slot] += value;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int itemAt(int i) {
+            return keys[used[i]];
+        }
+
+        double scoreAt(int i) {
+            return values[used[i]];
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                keys[used[i]] = EMPTY;
+            }
+            size = 0;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            int[] oldUsed = used;
+            int oldSize = size;
+            keys = new int[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            used = new int[keys.length];
+            size = 0;
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldSize; i++) {
+                add(oldKeys[oldUsed[i]], oldValues[oldUsed[i]]);
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // Map 端连接：每个用户的评分向量与内存中的邻居表连接，输出分数最高的 N 首未评过的歌曲
+    public static class RecommendMapper extends ItemSimilarity.UserRowMapper<IntWritable, NeighborListWritable> {
+        private NeighborTable table;
+        private float threshold;
+        private TopKHeap heap;
+        private int[] neighborIds;
+        private float[] neighborScores;
+        private int[] topIds;
+        private double[] topScores;
+        private ScoreAccumulator accumulator = new ScoreAccumulator();
+
+        private IntWritable user = new IntWritable();
+        private NeighborListWritable recommendations = new NeighborListWritable();
+        private Counter users;
+        private Counter empty;
+        private Counter missing;
+
+        @Override
+        protected void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            table = readNeighbors(conf, new Path(conf.get(NEIGHBORS_PATH)));
+            // 与邻居表中的相似度按同样的精度比较，否则恰好等于阈值的邻居可能因为 float 舍入或量化被丢掉
+            threshold = table.stored(conf.getDouble(THRESHOLD, Double.NEGATIVE_INFINITY));
+            int n = conf.getInt(TOP_N, DEFAULT_TOP_N);
+            heap = new TopKHeap(n);
+            topIds = new int[n];
+            topScores = new double[n];
+            neighborIds = new int[Math.max(1, table.maxNeighbors())];
+            neighborScores = new float[neighborIds.length];
+            users = context.getCounter(RecommendCounters.USERS);
+            empty = context.getCounter(RecommendCounters.USERS_WITHOUT_RECOMMENDATIONS);
+            missing = context.getCounter(RecommendCounters.RATED_ITEMS_WITHOUT_NEIGHBORS);
+        }
+
+        @Override
+        protected void map(int userId, UserVectorWritable row, Context context) throws IOException, InterruptedException {
+            users.increment(1);
+            accumulator.clear();
+            for (int i = 0; i < row.size(); i++) {
+                int count = table.neighbors(row.getItemId(i), neighborIds, neighborScores);
+                if (count == 0) {
+                    missing.increment(1);
+                    continue;
+                }
+                int score = row.getScore(i);
+                for (int j = 0; j < count; j++) {
+                    if (neighborScores[j] < threshold) break;  // 邻居按相似度降序
+                    accumulator.add(neighborIds[j], neighborScores[j] * (double) score);
+                }
+            }
+
+            heap.clear();
+            for (int i = 0; i < accumulator.size(); i++) {
+                int item = accumulator.itemAt(i);
+                if (!rated(row, item)) {
+                    heap.offer(item, accumulator.scoreAt(i));
+                }
+            }
+            if (heap.size() == 0) {
+                empty.increment(1);
+                return;
+            }
+
+            int count = heap.drainDescending(topIds, topScores);
+            recommendations.clear();
+            for (int i = 0; i < count; i++) {
+                recommendations.add(topIds[i], topScores[i]);
+            }
+            user.set(userId);
+            context.write(user, recommendations);
+        }
+
+        // 评分向量按 ItemID 升序，二分查找
+        private static boolean rated(UserVectorWritable row, int item) {
+            int low = 0;
+            int high = row.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midItem = row.getItemId(mid);
+                if (midItem < item) {
+                    low = mid + 1;
+                } else if (midItem > item) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 3) {
+            System.err.println("Usage: UserRecommendations [-D " + TOP_N + "=<N>] [-D " + THRESHOLD + "=<t>]"
+                    + " [-D " + UserItemMatrix.BINARY + "=true] <user item matrix> <knn neighbors> <out>");
+            System.exit(2);
+        }
+        if (conf.getInt(TOP_N, DEFAULT_TOP_N) < 1) {
+            System.err.println(TOP_N + " must be positive");
+            System.exit(2);
+        }
+
+        // 检查输出路径是否存在，若存在则删除
+        Path outputPath = new Path(otherArgs[2]);
+        FileSystem fs = FileSystem.get(conf);
+        if (fs.exists(outputPath)) {
+            fs.delete(outputPath, true);
+        }
+        conf.set(NEIGHBORS_PATH, otherArgs[1]);
+
+        Job job = Job.getInstance(conf, "Per-User Top-N Recommendations");
+        job.setJarByClass(UserRecommendations.class);
+        job.setMapperClass(RecommendMapper.class);
+        job.setNumReduceTasks(0);  // Map 端连接，不需要 Reducer
+        job.setOutputKeyClass(IntWritable.class);
+        job.setOutputValueClass(NeighborListWritable.class);
+        // UserItemMatrix 的二进制输出为 SequenceFile<IntWritable, UserVectorWritable>
+        if (conf.getBoolean(UserItemMatrix.BINARY, false)) {
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+        }
+
+        FileInputFormat.addInputPath(job, new Path(otherArgs[0]));
+        FileOutputFormat.setOutputPath(job, outputPath);
+
+        System.exit(job.waitForCompletion(true) ? 0 : 1);
+    }
+}
@@ -0,0 +1,133 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// 一个用户的全部评分，替代 "ItemId1:Score1, ItemId2:Score2, ..." 文本
+// 序列化格式：VInt 评分数，按 ItemID 升序的差值 VInt 编码，然后每个评分 1 字节（KDD-Cup 评分为 0-100）
+public class UserVectorWritable implements Writable {
+
+    private int size;
+    private int[] itemIds = new int[16];
+    private byte[] scores = new byte[16];
+    private boolean sorted = true;
+
+    public void clear() {
+        size = 0;
+        sorted = true;
+    }
+
+    // 加入一个评分，评分必须在 0-255 之间
+    public void add(int itemId, int score) {
+        if (score < 0 || score > 255) {
+            throw new IllegalArgumentException("score out of range: " + score);
+        }
+        if (size == itemIds.length) {
+            itemIds = Arrays.copyOf(itemIds, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        if (size > 0 && itemId < itemIds[size - 1]) {
+            sorted = false;
+        }
+        itemIds[size] = itemId;
+        scores[size] = (byte) score;
+        size++;
+    }
+
+    // 合并另一个向量的评分（同一用户出现在多个用户块中时）
+    public void addAll(UserVectorWritable other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.itemIds[i], other.scores[i] & 0xFF);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getItemId(int i) {
+        sort();
+        return itemIds[i];
+    }
+
+    public int getScore(int i) {
+        sort();
+        return scores[i] & 0xFF;
+    }
+
+    // 评分的平均值，用于调整余弦
+    public double mean() {
+        if (size == 0) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += scores[i] & 0xFF;
+        }
+        return (double) sum / size;
+    }
+
+    // 按 ItemID 排序：高 32 位为 ItemID，低 8 位为评分
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((long) itemIds[i] << 32) | (scores[i] & 0xFF);
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < size; i++) {
+            itemIds[i] = (int) (packed[i] >> 32);
+            scores[i] = (byte) packed[i];
+        }
+        sorted = true;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        sort();
+        WritableUtils.writeVInt(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            WritableUtils.writeVInt(out, itemIds[i] - previous);
+            previous = itemIds[i];
+        }
+        out.write(scores, 0, size);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        size = WritableUtils.readVInt(in);
+        if (itemIds.length < size) {
+            itemIds = new int[size];
+            scores = new byte[size];
+        }
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += WritableUtils.readVInt(in);
+            itemIds[i] = previous;
+        }
+        in.readFully(scores, 0, size);
+        sorted = true;
+    }
+
+    // 与 UserItemMatrix 文本输出的格式相同
+    @Override
+    public String toString() {
+        sort();
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                row.append(", ");
+            }
+            row.append(itemIds[i]).append(":").append(scores[i] & 0xFF);
+        }
+        return row.toString();
+    }
+}
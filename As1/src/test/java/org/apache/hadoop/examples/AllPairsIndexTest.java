@@ -0,0 +1,153 @@
+package org.apache.hadoop.examples;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// AllPairsIndex 只是剪枝：与暴力计算全部歌曲对比较，达到阈值的歌曲对一个都不能漏掉
+public class AllPairsIndexTest {
+
+    // 热门用户出现在很多歌曲中，与真实数据一样让前缀剪枝起作用
+    private static List<SparseRatingVector> randomSongs(Random random, int count, int users, boolean centred) {
+        List<SparseRatingVector> songs = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            int size = 1 + random.nextInt(12);
+            Set<Integer> chosen = new HashSet<>();
+            while (chosen.size() < size) {
+                double u = random.nextDouble();
+                chosen.add((int) (u * u * users));
+            }
+            int[] userIds = new int[size];
+            int k = 0;
+            for (int user : chosen) {
+                userIds[k++] = user;
+            }
+            Arrays.sort(userIds);
+            float[] scores = new float[size];
+            for (int i = 0; i < size; i++) {
+                scores[i] = centred ? random.nextInt(9) / 2.0f - 2.0f : 1 + random.nextInt(5);
+            }
+            songs.add(new SparseRatingVector(id, userIds, scores));
+        }
+        return songs;
+    }
+
+    private static double cosine(SparseRatingVector a, SparseRatingVector b) {
+        if (a.norm() == 0 || b.norm() == 0) {
+            return 0.0;
+        }
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        a.accumulate(b, acc);
+        return acc.vectorCosine(a.norm(), b.norm());
+    }
+
+    private static double jaccard(SparseRatingVector a, SparseRatingVector b) {
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        a.accumulate(b, acc);
+        return acc.jaccard(a.size(), b.size());
+    }
+
+    private static long key(SparseRatingVector a, SparseRatingVector b) {
+        return ((long) a.getId() << 32) | b.getId();
+    }
+
+    private static void checkSelfJoin(List<SparseRatingVector> songs, double threshold, boolean binary)
+            throws IOException, InterruptedException {
+        Set<Long> candidates = new HashSet<>();
+        long reported = new AllPairsIndex(threshold, binary).selfJoin(songs, (a, b) -> {
+            // 每对只出现一次，且不会与自己配对
+            assertTrue(a.getId() != b.getId());
+            assertTrue(candidates.add(key(a, b)));
+            assertFalse(candidates.contains(key(b, a)));
+        });
+        assertEquals(candidates.size(), reported);
+
+        int expected = 0;
+        for (int i = 0; i < songs.size(); i++) {
+            for (int j = i + 1; j < songs.size(); j++) {
+                SparseRatingVector a = songs.get(i);
+                SparseRatingVector b = songs.get(j);
+                double similarity = binary ? jaccard(a, b) : cosine(a, b);
+                if (similarity >= threshold) {
+                    expected++;
+                    assertTrue("missed (" + a.getId() + ", " + b.getId() + ") = " + similarity + " at t = " + threshold,
+                            candidates.contains(key(a, b)) || candidates.contains(key(b, a)));
+                }
+            }
+        }
+        assertTrue("no pair reaches t = " + threshold + ", the test would prove nothing", expected > 0);
+    }
+
+    @Test
+    public void selfJoinHasNoFalseNegatives() throws IOException, InterruptedException {
+        Random random = new Random(1);
+        for (double threshold : new double[] {0.3, 0.5, 0.8}) {
+            checkSelfJoin(randomSongs(random, 300, 60, false), threshold, false);
+        }
+    }
+
+    @Test
+    public void negativeRatingsHaveNoFalseNegatives() throws IOException, InterruptedException {
+        // 评分减去均值后含负数和 0，包括零向量
+        Random random = new Random(2);
+        for (double threshold : new double[] {0.3, 0.6}) {
+            checkSelfJoin(randomSongs(random, 300, 60, true), threshold, false);
+        }
+    }
+
+    @Test
+    public void binaryHasNoFalseNegatives() throws IOException, InterruptedException {
+        Random random = new Random(3);
+        for (double threshold : new double[] {0.2, 0.4, 0.7}) {
+            checkSelfJoin(randomSongs(random, 300, 40, false), threshold, true);
+        }
+    }
+
+    @Test
+    public void pairAtExactlyTheThresholdIsKept() throws IOException, InterruptedException {
+        // 两个用户中共同一个：余弦恰好为 0.5
+        List<SparseRatingVector> songs = new ArrayList<>();
+        songs.add(new SparseRatingVector(1, new int[] {10, 20}, new float[] {1, 1}));
+        songs.add(new SparseRatingVector(2, new int[] {20, 30}, new float[] {1, 1}));
+        long[] count = new long[1];
+        new AllPairsIndex(0.5, false).selfJoin(songs, (a, b) -> count[0]++);
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    public void joinHasNoFalseNegatives() throws IOException, InterruptedException {
+        Random random = new Random(4);
+        List<SparseRatingVector> left = randomSongs(random, 150, 50, false);
+        List<SparseRatingVector> right = randomSongs(random, 150, 50, false);
+        for (int i = 0; i < right.size(); i++) {
+            SparseRatingVector song = right.get(i);
+            right.set(i, new SparseRatingVector(1000 + i, song.getUserIds(), song.getScores()));
+        }
+        double threshold = 0.5;
+        Set<Long> candidates = new HashSet<>();
+        new AllPairsIndex(threshold, false).join(left, right, (a, b) -> {
+            assertTrue(a.getId() < 1000 && b.getId() >= 1000);
+            assertTrue(candidates.add(key(a, b)));
+        });
+        int expected = 0;
+        for (SparseRatingVector a : left) {
+            for (SparseRatingVector b : right) {
+                if (cosine(a, b) >= threshold) {
+                    expected++;
+                    assertTrue(candidates.contains(key(a, b)));
+                }
+            }
+        }
+        assertTrue(expected > 0);
+    }
+}
@@ -0,0 +1,204 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// CsrNeighborOutputFormat 写出、CsrNeighborFile 内存映射读回，内容必须一致
+public class CsrNeighborFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private int[] items;
+    private int[][] ids;
+    private double[][] scores;
+
+    // 升序的 ItemID，每首歌 0..maxNeighbors 个按相似度降序的邻居
+    private void randomTable(Random random, int count, int maxNeighbors) {
+        items = new int[count];
+        ids = new int[count][];
+        scores = new double[count][];
+        int item = 0;
+        for (int i = 0; i < count; i++) {
+            item += 1 + random.nextInt(5);
+            items[i] = item;
+            int size = random.nextInt(maxNeighbors + 1);
+            ids[i] = new int[size];
+            scores[i] = new double[size];
+            for (int j = 0; j < size; j++) {
+                ids[i][j] = random.nextInt(100000);
+                scores[i][j] = random.nextDouble() * 2 - 1;
+            }
+            Arrays.sort(scores[i]);
+            for (int j = 0; j < size / 2; j++) {
+                double t = scores[i][j];
+                scores[i][j] = scores[i][size - 1 - j];
+                scores[i][size - 1 - j] = t;
+            }
+        }
+    }
+
+    private File write(boolean quantized) throws IOException {
+        File file = new File(folder.getRoot(), "part-r-00000" + CsrNeighborOutputFormat.EXTENSION);
+        FileSystem fs = FileSystem.getLocal(new Configuration()).getRaw();
+        CsrNeighborOutputFormat.CsrRecordWriter writer =
+                new CsrNeighborOutputFormat.CsrRecordWriter(fs.create(new Path(file.toURI()), true), quantized);
+        IntWritable key = new IntWritable();
+        NeighborListWritable value = new NeighborListWritable();
+        for (int i = 0; i < items.length; i++) {
+            key.set(items[i]);
+            value.clear();
+            for (int j = 0; j < ids[i].length; j++) {
+                value.add(ids[i][j], scores[i][j]);
+            }
+            writer.write(key, value);
+        }
+        writer.close(null);
+        return file;
+    }
+
+    private void checkRoundTrip(boolean quantized) throws IOException {
+        randomTable(new Random(quantized ? 16 : 61), 500, 40);
+        long edges = 0;
+        for (int[] row : ids) {
+            edges += row.length;
+        }
+        try (CsrNeighborFile file = CsrNeighborFile.open(write(quantized))) {
+            assertEquals(items.length, file.itemCount());
+            assertEquals(edges, file.edgeCount());
+            int[] readIds = new int[40];
+            float[] readScores = new float[40];
+            for (int i = 0; i < items.length; i++) {
+                assertEquals(items[i], file.itemAt(i));
+                assertEquals(i, file.indexOf(items[i]));
+                assertEquals(ids[i].length, file.neighborCount(items[i]));
+                int count = file.neighbors(items[i], readIds, readScores);
+                assertEquals(ids[i].length, count);
+                for (int j = 0; j < count; j++) {
+                    assertEquals(ids[i][j], readIds[j]);
+                    if (quantized) {
+                        // 2 / 65535 的一半
+                        assertEquals(scores[i][j], readScores[j], 1.6e-5);
+                    } else {
+                        assertEquals((float) scores[i][j], readScores[j], 0.0f);
+                    }
+                    assertEquals(file.stored(scores[i][j]), readScores[j], 0.0f);
+                }
+            }
+            // 不存在的歌曲：表中间、最小值之前、最大值之后
+            assertTrue(file.indexOf(items[0] - 1) < 0);
+            assertTrue(file.indexOf(items[items.length - 1] + 1) < 0);
+            for (int i = 1; i < items.length; i++) {
+                if (items[i] > items[i - 1] + 1) {
+                    assertTrue(file.indexOf(items[i] - 1) < 0);
+                    assertEquals(0, file.neighbors(items[i] - 1, readIds, readScores));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripFloat() throws IOException {
+        checkRoundTrip(false);
+    }
+
+    @Test
+    public void roundTripQuantized() throws IOException {
+        checkRoundTrip(true);
+    }
+
+    @Test
+    public void storedThresholdKeepsEveryNeighborAtOrAboveIt() throws IOException {
+        // 邻居恰好等于阈值或略高于阈值：读回的值可能低于阈值本身，但不会低于 stored(阈值)
+        Random random = new Random(5);
+        for (boolean quantized : new boolean[] {false, true}) {
+            items = new int[200];
+            ids = new int[200][1];
+            scores = new double[200][1];
+            double[] thresholds = new double[200];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = i;
+                thresholds[i] = random.nextDouble() * 2 - 1;
+                scores[i][0] = thresholds[i] + (i % 2 == 0 ? 0 : random.nextDouble() * 1e-5);
+            }
+            int below = 0;
+            try (CsrNeighborFile file = CsrNeighborFile.open(write(quantized))) {
+                int[] readIds = new int[1];
+                float[] readScores = new float[1];
+                for (int i = 0; i < items.length; i++) {
+                    file.neighbors(i, readIds, readScores);
+                    if (readScores[0] < thresholds[i]) {
+                        below++;
+                    }
+                    assertTrue(readScores[0] >= file.stored(thresholds[i]));
+                }
+            }
+            // 否则这个测试什么也没有证明
+            assertTrue(below > 0);
+        }
+    }
+
+    @Test
+    public void quantizationClampsAndCoversTheRange() {
+        assertEquals(0, CsrNeighborFile.quantize(-1.0));
+        assertEquals(0, CsrNeighborFile.quantize(-3.0));
+        assertEquals(65535, CsrNeighborFile.quantize(1.0));
+        assertEquals(65535, CsrNeighborFile.quantize(1.0000001));
+        assertEquals(-1.0f, CsrNeighborFile.dequantize(0), 0.0f);
+        assertEquals(1.0f, CsrNeighborFile.dequantize(65535), 0.0f);
+    }
+
+    @Test
+    public void smallBufferTruncates() throws IOException {
+        randomTable(new Random(1), 20, 30);
+        try (CsrNeighborFile file = CsrNeighborFile.open(write(false))) {
+            for (int i = 0; i < items.length; i++) {
+                int[] readIds = new int[3];
+                float[] readScores = new float[3];
+                int count = file.neighborsAt(i, readIds, readScores);
+                assertEquals(Math.min(3, ids[i].length), count);
+                assertEquals(ids[i].length, file.neighborCountAt(i));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsItemsOutOfOrder() throws IOException {
+        items = new int[] {5, 5};
+        ids = new int[][] {{1}, {2}};
+        scores = new double[][] {{0.5}, {0.5}};
+        try {
+            write(false);
+            fail("duplicate item accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("increasing order"));
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File other = folder.newFile("part-r-00001");
+        Files.write(other.toPath(), "1\t2:0.5\n".getBytes("US-ASCII"));
+        try {
+            CsrNeighborFile.open(other).close();
+            fail("opened a text file");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("not a CSR neighbor file"));
+        }
+    }
+}
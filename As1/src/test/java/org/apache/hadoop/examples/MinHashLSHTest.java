@@ -0,0 +1,119 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 在本地模式下运行第二步：手工构造各 band 的桶哈希，检查 lsh.max.bucket 截断与按 band 去重的配合
+public class MinHashLSHTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 三首歌在 band 0 落入同一个桶，每一对还在后面恰好一个 band 中相遇：
+    // (1, 2) 在 band 1，(1, 3) 在 band 2，(2, 3) 在 band 3
+    private static final int[][] BAND_HASHES = {
+            {7, 11, 21, 31},
+            {7, 11, 22, 33},
+            {7, 12, 21, 33},
+    };
+
+    private Path path(String name) {
+        return new Path(folder.getRoot().toURI().toString(), name);
+    }
+
+    private Job run(int maxBucket) throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("fs.defaultFS", "file:///");
+        conf.set(ItemSimilarity.METRIC, "vector_cosine");
+        conf.setInt(MinHashLSH.MAX_BUCKET, maxBucket);
+        conf.setBoolean(UserItemMatrix.BINARY, true);
+
+        Path signatures = path("signatures");
+        try (SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(new Path(signatures, "part-r-00000")),
+                SequenceFile.Writer.keyClass(LongWritable.class), SequenceFile.Writer.valueClass(SignatureWritable.class))) {
+            for (int i = 0; i < BAND_HASHES.length; i++) {
+                SignatureWritable entry = new SignatureWritable();
+                entry.set(BAND_HASHES[i], new SparseRatingVector(i + 1, new int[]{1, 2}, new float[]{4, 5}));
+                for (int band = 0; band < BAND_HASHES[i].length; band++) {
+                    writer.append(new LongWritable(MinHashLSH.bucketKey(band, BAND_HASHES[i][band])), entry);
+                }
+            }
+        }
+        Job job = MinHashLSH.verifyBuckets(conf, signatures, path("out"));
+        assertTrue(job != null && job.isSuccessful());
+        return job;
+    }
+
+    private List<String> pairs() throws IOException {
+        Configuration conf = new Configuration();
+        Path out = path("out");
+        FileSystem fs = out.getFileSystem(conf);
+        List<String> pairs = new ArrayList<>();
+        ItemPairWritable pair = new ItemPairWritable();
+        DoubleWritable similarity = new DoubleWritable();
+        for (FileStatus status : fs.listStatus(out)) {
+            if (!status.getPath().getName().startsWith("part-")) continue;
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(status.getPath()))) {
+                while (reader.next(pair, similarity)) {
+                    pairs.add(pair.getFirst() + "," + pair.getSecond());
+                }
+            }
+        }
+        Collections.sort(pairs);
+        return pairs;
+    }
+
+    private static long counter(Job job, MinHashLSH.LSHCounters counter) throws IOException {
+        return job.getCounters().findCounter(counter).getValue();
+    }
+
+    @Test
+    public void pairSkippedByTheCapIsComputedInALaterBand() throws Exception {
+        // band 0 的桶只比较其中两首歌；被跳过的两对不能算作重复，必须在它们各自的后一个 band 中计算
+        Job job = run(2);
+        assertEquals(Arrays.asList("1,2", "1,3", "2,3"), pairs());
+        assertEquals(3, counter(job, MinHashLSH.LSHCounters.CANDIDATE_PAIRS));
+        assertEquals(1, counter(job, MinHashLSH.LSHCounters.DUPLICATE_PAIRS));
+        assertEquals(1, counter(job, MinHashLSH.LSHCounters.OVERSIZED_BUCKETS));
+        assertEquals(2, counter(job, MinHashLSH.LSHCounters.SKIPPED_PAIRS));
+        // 超大桶统计结果用完即删除
+        assertFalse(path("out_oversized").getFileSystem(new Configuration()).exists(path("out_oversized")));
+    }
+
+    @Test
+    public void withoutCapEveryPairIsComputedInItsFirstBand() throws Exception {
+        Job job = run(0);
+        assertEquals(Arrays.asList("1,2", "1,3", "2,3"), pairs());
+        assertEquals(3, counter(job, MinHashLSH.LSHCounters.CANDIDATE_PAIRS));
+        assertEquals(3, counter(job, MinHashLSH.LSHCounters.DUPLICATE_PAIRS));
+        assertEquals(0, counter(job, MinHashLSH.LSHCounters.OVERSIZED_BUCKETS));
+    }
+
+    @Test
+    public void bucketAtTheCapIsNotTruncated() throws Exception {
+        Job job = run(3);
+        assertEquals(Arrays.asList("1,2", "1,3", "2,3"), pairs());
+        assertEquals(0, counter(job, MinHashLSH.LSHCounters.OVERSIZED_BUCKETS));
+        assertEquals(3, counter(job, MinHashLSH.LSHCounters.DUPLICATE_PAIRS));
+    }
+}
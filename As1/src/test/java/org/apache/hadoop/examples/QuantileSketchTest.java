@@ -0,0 +1,129 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 输入为 0..n-1 的排列，值 v 的真实秩就是 v + 1，可以直接算出估计值的秩误差
+public class QuantileSketchTest {
+
+    private static int[] permutation(int n, Random random) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+
+    // p = 0, 0.01, ..., 1 上最大的归一化秩误差
+    private static double maxRankError(QuantileSketch sketch, long n) {
+        double error = 0;
+        for (int q = 0; q <= 100; q++) {
+            double p = q / 100.0;
+            double target = Math.max(1.0, Math.ceil(p * n));
+            error = Math.max(error, Math.abs(sketch.quantile(p) + 1 - target) / n);
+        }
+        return error;
+    }
+
+    private static QuantileSketch roundTrip(QuantileSketch sketch) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        sketch.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        QuantileSketch copy = new QuantileSketch();
+        copy.readFields(in);
+        return copy;
+    }
+
+    @Test
+    public void rankErrorWithinBound() {
+        // 实测 k = 200 时最大秩误差约 2%，上界取 5/k
+        for (int k : new int[] {50, 200, 800}) {
+            for (int seed = 0; seed < 5; seed++) {
+                int n = 100000;
+                QuantileSketch sketch = new QuantileSketch(k);
+                for (int value : permutation(n, new Random(seed))) {
+                    sketch.add(value);
+                }
+                assertEquals(n, sketch.getCount());
+                double error = maxRankError(sketch, n);
+                assertTrue("k = " + k + ", seed " + seed + ": rank error " + error, error <= 5.0 / k);
+            }
+        }
+    }
+
+    @Test
+    public void sortedInputWithinBound() {
+        // 相似度常常按顺序到达，最坏情况下也要满足同样的上界
+        int n = 100000;
+        QuantileSketch ascending = new QuantileSketch();
+        QuantileSketch descending = new QuantileSketch();
+        for (int i = 0; i < n; i++) {
+            ascending.add(i);
+            descending.add(n - 1 - i);
+        }
+        assertTrue(maxRankError(ascending, n) <= 5.0 / QuantileSketch.DEFAULT_K);
+        assertTrue(maxRankError(descending, n) <= 5.0 / QuantileSketch.DEFAULT_K);
+    }
+
+    @Test
+    public void mergedSketchesWithinBound() throws IOException {
+        // 模拟 Mapper -> Combiner -> Reducer：各部分序列化后合并，部分大小悬殊
+        int n = 100000;
+        int[] values = permutation(n, new Random(11));
+        QuantileSketch[] parts = new QuantileSketch[7];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new QuantileSketch();
+        }
+        for (int i = 0; i < n; i++) {
+            parts[i < 50 ? 0 : i < 60000 ? 1 : 2 + i % 5].add(values[i]);
+        }
+        QuantileSketch combined = new QuantileSketch();
+        combined.merge(roundTrip(parts[0]));
+        combined.merge(roundTrip(parts[1]));
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(roundTrip(combined));
+        for (int i = 2; i < parts.length; i++) {
+            merged.merge(roundTrip(parts[i]));
+        }
+        assertEquals(n, merged.getCount());
+        double error = maxRankError(merged, n);
+        assertTrue("rank error " + error, error <= 5.0 / QuantileSketch.DEFAULT_K);
+    }
+
+    @Test
+    public void exactBelowK() {
+        // 元素数小于 k 时不压缩，分位数是精确的
+        QuantileSketch sketch = new QuantileSketch(200);
+        int[] values = permutation(150, new Random(3));
+        for (int value : values) {
+            sketch.add(value);
+        }
+        assertEquals(0.0, maxRankError(sketch, 150), 0.0);
+        assertEquals(0.0, sketch.quantile(0.0), 0.0);
+        assertEquals(149.0, sketch.quantile(1.0), 0.0);
+    }
+
+    @Test
+    public void emptySketch() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        sketch.add(1.0);
+        sketch.clear();
+        assertEquals(0, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    }
+}
@@ -0,0 +1,172 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// 一次遍历的充分统计量与按定义两次遍历（先求均值再求离差）的结果比较
+public class SimilarityAccumulatorTest {
+
+    private static final double EPSILON = 1e-12;
+
+    private static double twoPassPearson(double[] a, double[] b) {
+        double meanA = 0;
+        double meanB = 0;
+        for (int i = 0; i < a.length; i++) {
+            meanA += a[i];
+            meanB += b[i];
+        }
+        meanA /= a.length;
+        meanB /= b.length;
+        double numerator = 0;
+        double sumA = 0;
+        double sumB = 0;
+        for (int i = 0; i < a.length; i++) {
+            numerator += (a[i] - meanA) * (b[i] - meanB);
+            sumA += (a[i] - meanA) * (a[i] - meanA);
+            sumB += (b[i] - meanB) * (b[i] - meanB);
+        }
+        return sumA == 0 || sumB == 0 ? 0.0 : numerator / Math.sqrt(sumA * sumB);
+    }
+
+    private static double twoPassAdjustedCosine(double[] a, double[] b, double[] userMeans) {
+        double numerator = 0;
+        double sumA = 0;
+        double sumB = 0;
+        for (int i = 0; i < a.length; i++) {
+            numerator += (a[i] - userMeans[i]) * (b[i] - userMeans[i]);
+            sumA += (a[i] - userMeans[i]) * (a[i] - userMeans[i]);
+            sumB += (b[i] - userMeans[i]) * (b[i] - userMeans[i]);
+        }
+        return sumA == 0 || sumB == 0 ? 0.0 : numerator / Math.sqrt(sumA * sumB);
+    }
+
+    @Test
+    public void matchesTwoPassDefinitions() {
+        Random random = new Random(42);
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        for (int trial = 0; trial < 1000; trial++) {
+            int n = 2 + random.nextInt(50);
+            double[] a = new double[n];
+            double[] b = new double[n];
+            double[] userMeans = new double[n];
+            acc.clear();
+            double dot = 0;
+            double normA = 0;
+            double normB = 0;
+            for (int i = 0; i < n; i++) {
+                // 1..5 的整数评分，与数据集相同
+                a[i] = 1 + random.nextInt(5);
+                b[i] = 1 + random.nextInt(5);
+                userMeans[i] = 1 + 4 * random.nextDouble();
+                acc.add(a[i], b[i], userMeans[i]);
+                dot += a[i] * b[i];
+                normA += a[i] * a[i];
+                normB += b[i] * b[i];
+            }
+            assertEquals(n, acc.getCount());
+            assertEquals(twoPassPearson(a, b), acc.pearson(), EPSILON);
+            assertEquals(dot / Math.sqrt(normA * normB), acc.cosine(), EPSILON);
+            assertEquals(twoPassAdjustedCosine(a, b, userMeans), acc.adjustedCosine(), 1e-9);
+        }
+    }
+
+    @Test
+    public void constantRatingsHaveNoCorrelation() {
+        // 大数值下 n*ΣA² - (ΣA)² 的舍入误差不能被当成非零方差
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        for (int i = 0; i < 1000; i++) {
+            acc.add(4.7, 1 + i % 5);
+        }
+        assertEquals(0.0, acc.pearson(), 0.0);
+        acc.clear();
+        assertEquals(0.0, acc.pearson(), 0.0);
+        assertEquals(0.0, acc.cosine(), 0.0);
+    }
+
+    @Test
+    public void perfectlyCorrelated() {
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        for (int i = 1; i <= 5; i++) {
+            acc.add(i, 2 * i + 1);
+        }
+        assertEquals(1.0, acc.pearson(), EPSILON);
+        acc.clear();
+        for (int i = 1; i <= 5; i++) {
+            acc.add(i, 6 - i);
+        }
+        assertEquals(-1.0, acc.pearson(), EPSILON);
+    }
+
+    @Test
+    public void mergeEqualsSinglePass() throws IOException {
+        Random random = new Random(7);
+        SimilarityAccumulator all = new SimilarityAccumulator();
+        SimilarityAccumulator left = new SimilarityAccumulator();
+        SimilarityAccumulator right = new SimilarityAccumulator();
+        for (int i = 0; i < 200; i++) {
+            double a = 1 + random.nextInt(5);
+            double b = 1 + random.nextInt(5);
+            double mean = 1 + 4 * random.nextDouble();
+            all.add(a, b, mean);
+            (i % 3 == 0 ? left : right).add(a, b, mean);
+        }
+        // Combiner 的输出经过序列化再合并
+        SimilarityAccumulator merged = roundTrip(left);
+        merged.merge(roundTrip(right));
+        assertEquals(all.getCount(), merged.getCount());
+        assertEquals(all.pearson(), merged.pearson(), EPSILON);
+        assertEquals(all.cosine(), merged.cosine(), EPSILON);
+        assertEquals(all.adjustedCosine(), merged.adjustedCosine(), 1e-9);
+    }
+
+    @Test
+    public void writableRoundTripWithoutUserMeans() throws IOException {
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        acc.add(3, 4);
+        acc.add(5, 1);
+        // 先读入带用户均值的统计量，确认 readFields 会清掉上一次的值
+        SimilarityAccumulator withMeans = new SimilarityAccumulator();
+        withMeans.add(1, 2, 3);
+        DataOutputBuffer out = new DataOutputBuffer();
+        withMeans.write(out);
+        acc.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        SimilarityAccumulator copy = new SimilarityAccumulator();
+        copy.readFields(in);
+        copy.readFields(in);
+        assertEquals(acc.toString(), copy.toString());
+    }
+
+    @Test
+    public void jaccardAndVectorCosine() {
+        SimilarityAccumulator acc = new SimilarityAccumulator();
+        acc.add(2, 3);
+        acc.add(4, 1);
+        // 两首歌分别有 4 和 3 个评分用户，共同 2 个：2 / (4 + 3 - 2)
+        assertEquals(0.4, acc.jaccard(4, 3), EPSILON);
+        assertEquals(0.0, new SimilarityAccumulator().jaccard(0, 0), 0.0);
+        assertEquals(10 / (5.0 * 4.0), acc.vectorCosine(5, 4), EPSILON);
+        assertEquals(0.0, acc.vectorCosine(0, 4), 0.0);
+        assertEquals(acc.jaccard(4, 3),
+                acc.score(SimilarityAccumulator.Metric.JACCARD, 4, 5, 3, 4), 0.0);
+        assertEquals(SimilarityAccumulator.Metric.ADJUSTED_COSINE,
+                SimilarityAccumulator.Metric.fromString(" adjusted-cosine"));
+    }
+
+    private static SimilarityAccumulator roundTrip(SimilarityAccumulator acc) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        acc.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        SimilarityAccumulator copy = new SimilarityAccumulator();
+        copy.readFields(in);
+        return copy;
+    }
+}
@@ -0,0 +1,127 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 用仓库根目录的 testdata/similarity-lines.txt 固定 SimilarityLineParser 的行为
+// MysqlManager 的 SimilarityLineParserTest 读取同一份文件，两个副本只要有一个改变了行为就会有一边测试失败
+public class SimilarityLineParserTest {
+
+    // pom.xml 把 testdata/ 复制到测试 classpath 上，与工作目录无关
+    static final String GOLDEN = "/similarity-lines.txt";
+
+    // 一个用例：原始输入字节和期望结果，格式错误的行 expected 为 null
+    static class Case {
+        final String source;
+        final byte[] input;
+        final String[] expected;
+
+        Case(String source, byte[] input, String[] expected) {
+            this.source = source;
+            this.input = input;
+            this.expected = expected;
+        }
+    }
+
+    static List<Case> readCases() throws IOException {
+        List<Case> cases = new ArrayList<>();
+        InputStream in = SimilarityLineParserTest.class.getResourceAsStream(GOLDEN);
+        if (in == null) {
+            throw new FileNotFoundException(GOLDEN + " 不在测试 classpath 上，见 pom.xml 的 testResources");
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        for (String line : lines) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int arrow = line.lastIndexOf(" => ");
+            String expected = line.substring(arrow + 4).trim();
+            cases.add(new Case(line, unescape(line.substring(0, arrow)).getBytes(StandardCharsets.US_ASCII),
+                    expected.equals("malformed") ? null : expected.split(" ")));
+        }
+        return cases;
+    }
+
+    static String unescape(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char next = s.charAt(++i);
+            out.append(next == 't' ? '\t' : next == 'r' ? '\r' : next == 'n' ? '\n' : next);
+        }
+        return out.toString();
+    }
+
+    private static void check(Case c, boolean parsed, SimilarityLineParser parser) {
+        if (c.expected == null) {
+            assertFalse(c.source, parsed);
+            return;
+        }
+        assertTrue(c.source, parsed);
+        assertEquals(c.source, Integer.parseInt(c.expected[0]), parser.getItemA());
+        assertEquals(c.source, Integer.parseInt(c.expected[1]), parser.getItemB());
+        // 逐位比较：与 Double.parseDouble 的结果完全相同，包括零的符号
+        assertEquals(c.source, Double.doubleToLongBits(Double.parseDouble(c.expected[2])),
+                Double.doubleToLongBits(parser.getSimilarity()));
+    }
+
+    @Test
+    public void parsesGoldenLines() throws IOException {
+        List<Case> cases = readCases();
+        assertTrue("no cases in " + GOLDEN, cases.size() > 20);
+        SimilarityLineParser parser = new SimilarityLineParser();
+        long wellFormed = 0;
+        for (Case c : cases) {
+            // 行前后放上其它字节，解析器只能读取 [start, start + length)
+            byte[] buffer = new byte[c.input.length + 8];
+            buffer[0] = '9';
+            buffer[1] = '(';
+            buffer[2] = '\t';
+            System.arraycopy(c.input, 0, buffer, 3, c.input.length);
+            for (int i = 3 + c.input.length; i < buffer.length; i++) {
+                buffer[i] = '7';
+            }
+            check(c, parser.parse(buffer, 3, c.input.length), parser);
+            if (c.expected != null) {
+                wellFormed++;
+            }
+        }
+        assertEquals(wellFormed, parser.getParsedLines());
+        assertEquals(cases.size() - wellFormed, parser.getMalformedLines());
+    }
+
+    @Test
+    public void parsesReusedText() throws IOException {
+        // Mapper 复用同一个 Text：较短的行写入后，底层数组中还留着上一行的字节
+        SimilarityLineParser parser = new SimilarityLineParser();
+        Text line = new Text();
+        line.set("(123456, 654321)\t0.123456789 and some trailing text");
+        for (Case c : readCases()) {
+            line.set(c.input);
+            check(c, parser.parse(line), parser);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.apache.hadoop.examples;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKHeapTest {
+
+    @Test
+    public void keepsTheKHighestScores() {
+        Random random = new Random(6);
+        for (int trial = 0; trial < 200; trial++) {
+            int k = 1 + random.nextInt(20);
+            int n = random.nextInt(100);
+            double[] all = new double[n];
+            TopKHeap heap = new TopKHeap(k);
+            for (int i = 0; i < n; i++) {
+                // 不同的分数，结果唯一；ID 为分数在 all 中的下标
+                all[i] = random.nextDouble() * 2 - 1;
+                heap.offer(i, all[i]);
+            }
+            int expected = Math.min(k, n);
+            assertEquals(expected, heap.size());
+            assertEquals(n >= k, heap.isFull());
+
+            double[] sorted = all.clone();
+            Arrays.sort(sorted);
+            int[] ids = new int[expected];
+            double[] scores = new double[expected];
+            assertEquals(expected, heap.drainDescending(ids, scores));
+            assertEquals(0, heap.size());
+            for (int i = 0; i < expected; i++) {
+                assertEquals(sorted[n - 1 - i], scores[i], 0.0);
+                assertEquals(all[ids[i]], scores[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void offerReportsWhetherKept() {
+        TopKHeap heap = new TopKHeap(2);
+        assertTrue(heap.offer(1, 0.5));
+        assertTrue(heap.offer(2, 0.1));
+        assertEquals(0.1, heap.minScore(), 0.0);
+        assertFalse(heap.offer(3, 0.05));
+        // 与堆顶相等的分数不替换已有元素：先到的保留
+        assertFalse(heap.offer(4, 0.1));
+        assertTrue(heap.offer(5, 0.7));
+        assertEquals(0.5, heap.minScore(), 0.0);
+
+        int[] ids = new int[2];
+        double[] scores = new double[2];
+        heap.drainDescending(ids, scores);
+        assertArrayEquals(new int[] {5, 1}, ids);
+        assertArrayEquals(new double[] {0.7, 0.5}, scores, 0.0);
+    }
+
+    @Test
+    public void reusableAfterClearAndDrain() {
+        TopKHeap heap = new TopKHeap(3);
+        heap.offer(1, 1.0);
+        heap.offer(2, 2.0);
+        heap.clear();
+        assertEquals(0, heap.size());
+        heap.offer(3, 3.0);
+        int[] ids = new int[3];
+        double[] scores = new double[3];
+        assertEquals(1, heap.drainDescending(ids, scores));
+        assertEquals(3, ids[0]);
+        for (int i = 0; i < 5; i++) {
+            heap.offer(10 + i, i);
+        }
+        assertEquals(3, heap.drainDescending(ids, scores));
+        assertArrayEquals(new int[] {14, 13, 12}, ids);
+    }
+
+    @Test
+    public void unboundedCapacityGrowsOnDemand() {
+        // DynamicThresholdKNN 在不限制 knn.k 时使用 Integer.MAX_VALUE，不能预先分配
+        TopKHeap heap = new TopKHeap(Integer.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(heap.offer(i, -i));
+        }
+        assertEquals(1000, heap.size());
+        assertFalse(heap.isFull());
+        assertEquals(-999.0, heap.minScore(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new TopKHeap(0);
+    }
+}
@@ -0,0 +1,120 @@
+package org.apache.hadoop.examples;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// 按各种分片大小切分同一个文件，所有分片读出的用户块拼起来必须与整个文件一次读出的结果相同：
+// 每个用户块恰好出现一次，越过分片边界的块完整地属于它开始的分片
+public class UserBlockInputFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Configuration conf = new Configuration();
+
+    private List<String> read(File file, long start, long length) throws IOException {
+        FileSplit split = new FileSplit(new Path(file.toURI()), start, length, null);
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        List<String> records = new ArrayList<>();
+        try (UserBlockInputFormat.UserBlockRecordReader reader = new UserBlockInputFormat.UserBlockRecordReader()) {
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                records.add(reader.getCurrentKey() + "=" + reader.getCurrentValue().toString().replace('\n', ';'));
+            }
+        }
+        return records;
+    }
+
+    private void checkAllSplitSizes(File file, List<String> expected) throws IOException {
+        long length = file.length();
+        assertEquals(expected, read(file, 0, length));
+        for (long splitSize = 1; splitSize <= length; splitSize++) {
+            List<String> records = new ArrayList<>();
+            for (long start = 0; start < length; start += splitSize) {
+                records.addAll(read(file, start, Math.min(splitSize, length - start)));
+            }
+            assertEquals("split size " + splitSize, expected, records);
+        }
+    }
+
+    @Test
+    public void everyBlockReadOnceForEverySplitSize() throws IOException {
+        File file = folder.newFile("ratings.txt");
+        Files.write(file.toPath(), ("0|2\n"
+                + "10\t90\t0\t00:00:00\n"
+                + "11\t80\t0\t00:00:00\n"
+                + "1|0\n"
+                + "2|1\n"
+                + "12\t70\t0\t00:00:00\n"
+                + "3|3\n"
+                + "13\t60\t0\t00:00:00\n"
+                + "\n"
+                + "14\t50\t0\t00:00:00\n"
+                + "15\t40\t0\t00:00:00\n").getBytes(StandardCharsets.US_ASCII));
+        List<String> expected = new ArrayList<>();
+        expected.add("0=10\t90\t0\t00:00:00;11\t80\t0\t00:00:00");
+        expected.add("1=");
+        expected.add("2=12\t70\t0\t00:00:00");
+        // 空行被跳过，不计入评分数
+        expected.add("3=13\t60\t0\t00:00:00;14\t50\t0\t00:00:00;15\t40\t0\t00:00:00");
+        checkAllSplitSizes(file, expected);
+    }
+
+    @Test
+    public void wrongRatingCountsDoNotSwallowUsers() throws IOException {
+        // 第一个用户声明 3 个评分只有 1 个，第二个声明 1 个却有 2 个（多出的一行不属于任何用户）；文件在块中间结束
+        File file = folder.newFile("broken.txt");
+        Files.write(file.toPath(), ("5|3\n"
+                + "1\t10\n"
+                + "6|1\n"
+                + "2\t20\n"
+                + "3\t30\n"
+                + "7|4\n"
+                + "4\t40").getBytes(StandardCharsets.US_ASCII));
+        List<String> expected = new ArrayList<>();
+        expected.add("5=1\t10");
+        expected.add("6=2\t20");
+        expected.add("7=4\t40");
+        checkAllSplitSizes(file, expected);
+    }
+
+    @Test
+    public void randomFilesForEverySplitSize() throws IOException {
+        Random random = new Random(8);
+        for (int trial = 0; trial < 3; trial++) {
+            StringBuilder text = new StringBuilder();
+            List<String> expected = new ArrayList<>();
+            for (int user = 0; user < 15; user++) {
+                int count = random.nextInt(4);
+                text.append(user).append('|').append(count).append('\n');
+                StringBuilder block = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    String rating = random.nextInt(1000) + "\t" + random.nextInt(101);
+                    text.append(rating).append('\n');
+                    block.append(i > 0 ? ";" : "").append(rating);
+                }
+                expected.add(user + "=" + block);
+            }
+            File file = folder.newFile("random" + trial + ".txt");
+            Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.US_ASCII));
+            checkAllSplitSizes(file, expected);
+        }
+    }
+}
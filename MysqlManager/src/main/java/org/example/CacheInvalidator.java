@@ -0,0 +1,126 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Tells a running RecommendationServer which of its cached results a load made stale, through POST /invalidate.
+ *
+ * As a RatingListener it collects the users whose ratings were committed and posts them BATCH_SIZE at a time;
+ * flush() posts the rest and must be called when the load is done. invalidateAll() is for loads that change
+ * every user's results: item_similarity and user_recommendations.
+ *
+ * A failed request is reported and otherwise ignored, so loading works without a server; entries that could
+ * not be invalidated still expire after recommender.cache.ttlSeconds.
+ */
+public class CacheInvalidator implements ParallelBulkLoader.RatingListener {
+
+    public static final int BATCH_SIZE = 1000;
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private final String url;
+    private int[] pending = new int[BATCH_SIZE];
+    private int pendingCount;
+
+    /**
+     * @param url The server's invalidation endpoint, e.g. http://localhost:8080/invalidate.
+     */
+    public CacheInvalidator(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Reads recommender.cache.invalidateUrl; null if it is not set.
+     */
+    public static CacheInvalidator fromProperties(Properties props) {
+        String url = props.getProperty("recommender.cache.invalidateUrl");
+        return url == null || url.trim().isEmpty() ? null : new CacheInvalidator(url.trim());
+    }
+
+    @Override
+    public void ratingsChanged(int userId) {
+        int[] full;
+        synchronized (this) {
+            pending[pendingCount++] = userId;
+            if (pendingCount < BATCH_SIZE) {
+                return;
+            }
+            full = pending;
+            pending = new int[BATCH_SIZE];
+            pendingCount = 0;
+        }
+        // Posted outside the lock so the other loader threads keep going
+        post(toJson(full, full.length));
+    }
+
+    /**
+     * Posts the users collected since the last batch.
+     */
+    public void flush() {
+        int[] users;
+        int count;
+        synchronized (this) {
+            users = pending;
+            count = pendingCount;
+            pending = new int[BATCH_SIZE];
+            pendingCount = 0;
+        }
+        if (count > 0) {
+            post(toJson(users, count));
+        }
+    }
+
+    /**
+     * Drops every cached result, after item_similarity or user_recommendations was reloaded.
+     */
+    public void invalidateAll() {
+        post("");
+    }
+
+    private static String toJson(int[] users, int count) {
+        StringBuilder json = new StringBuilder(count * 8).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(users[i]);
+        }
+        return json.append(']').toString();
+    }
+
+    // Returns false if the server could not be reached or refused the request
+    boolean post(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(TIMEOUT_MILLIS);
+            conn.setReadTimeout(TIMEOUT_MILLIS);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+            int status = conn.getResponseCode();
+            if (status != 200) {
+                System.err.println("Cache invalidation at " + url + " failed with HTTP " + status);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Cache invalidation at " + url + " failed: " + e.getMessage());
+            return false;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+}
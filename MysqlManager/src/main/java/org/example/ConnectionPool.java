@@ -0,0 +1,97 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed-size pool of JDBC connections.
+ *
+ * Connections are opened lazily, handed out with borrow() and returned with release(). A connection that
+ * failed is returned with discard() instead, which closes it and lets the next borrow() open a new one.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Opens a new connection, e.g. {@code () -> DriverManager.getConnection(url, user, password)}.
+     */
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final BlockingQueue<Connection> idle;
+    // One permit per connection that may still be handed out
+    private final Semaphore available;
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionFactory factory, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("pool size must be positive: " + size);
+        }
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.available = new Semaphore(size, true);
+    }
+
+    /**
+     * Waits up to the timeout for a connection, opening a new one if none is idle.
+     *
+     * @throws SQLException If the pool is closed, the timeout expires or a new connection cannot be opened.
+     */
+    public Connection borrow(long timeout, TimeUnit unit) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!available.tryAcquire(timeout, unit)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        Connection conn = idle.poll();
+        if (conn != null) {
+            return conn;
+        }
+        try {
+            return factory.open();
+        } catch (SQLException | RuntimeException e) {
+            available.release();
+            throw e;
+        }
+    }
+
+    public void release(Connection conn) {
+        if (closed || !idle.offer(conn)) {
+            closeQuietly(conn);
+        }
+        available.release();
+    }
+
+    public void discard(Connection conn) {
+        closeQuietly(conn);
+        available.release();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection conn;
+        while ((conn = idle.poll()) != null) {
+            closeQuietly(conn);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // Nothing useful to do with a connection that cannot even be closed
+        }
+    }
+}
@@ -1,15 +1,19 @@
 package org.example;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -60,48 +64,71 @@ public class DatabaseManager {
         }
     }
 
+    // Receives each parsed line of a similarity file
+    interface RecordSink {
+        void accept(int itemA, int itemB, double similarity) throws InterruptedException;
+    }
+
     public List<ItemSimilarityRecord> loadDataFromFile(String filePath) {
         List<ItemSimilarityRecord> records = new ArrayList<>();
-        String line;
-
-        // Compile the regex pattern once
-        Pattern pattern = Pattern.compile("\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\)\\s+(\\d+\\.\\d+|\\d+\\.\\d+E[-+]?[0-9]+|\\d+)");
+        SimilarityLineParser parser = new SimilarityLineParser();
+        try {
+            forEachRecord(filePath, parser,
+                    (itemA, itemB, similarity) -> records.add(new ItemSimilarityRecord(itemA, itemB, similarity)));
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + filePath);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            while ((line = br.readLine()) != null) {
-                // Skip empty lines
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
+        if (parser.getMalformedLines() > 0) {
+            System.err.println("Skipped " + parser.getMalformedLines() + " invalid lines in " + filePath);
+        }
+        return records;
+    }
 
-                // Trim the line
-                line = line.trim();
-
-                // Use the pattern to match the line
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.matches()) {
-                    try {
-                        // Extract and parse the integers and double
-                        int itemId = Integer.parseInt(matcher.group(1));
-                        int similarItemId = Integer.parseInt(matcher.group(2));
-                        double similarityScore = Double.parseDouble(matcher.group(3));
-
-                        // Collect the record
-                        records.add(new ItemSimilarityRecord(itemId, similarItemId, similarityScore));
-                    } catch (NumberFormatException e) {
-                        System.err.println("Error parsing numbers in line: " + line);
-                        e.printStackTrace();
+    // Parses the file and passes every valid line to the sink; malformed lines are counted by the parser
+    static void forEachRecord(String filePath, SimilarityLineParser parser, RecordSink sink)
+            throws IOException, InterruptedException {
+        // Scan the raw bytes line by line; the parser reads numbers in place without creating Strings
+        byte[] buffer = new byte[64 * 1024];
+        int length = 0;
+        try (InputStream in = new FileInputStream(filePath)) {
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer[i] == '\n') {
+                        parseLine(parser, buffer, lineStart, i - lineStart, sink);
+                        lineStart = i + 1;
                     }
-                } else {
-                    System.err.println("Invalid line format: " + line);
+                }
+                // Move the incomplete last line to the front, growing the buffer for very long lines
+                length -= lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, length);
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + filePath);
-            e.printStackTrace();
+            parseLine(parser, buffer, 0, length, sink);
         }
+    }
 
-        return records;
+    private static void parseLine(SimilarityLineParser parser, byte[] buffer, int start, int length,
+                                  RecordSink sink) throws InterruptedException {
+        // Skip empty lines
+        boolean blank = true;
+        for (int i = start; i < start + length && blank; i++) {
+            blank = buffer[i] == ' ' || buffer[i] == '\t' || buffer[i] == '\r';
+        }
+        if (blank) {
+            return;
+        }
+        if (parser.parse(buffer, start, length)) {
+            sink.accept(parser.getItemA(), parser.getItemB(), parser.getSimilarity());
+        }
     }
 
     public void insertItemSimilarityBatch(List<ItemSimilarityRecord> records) {
@@ -124,6 +151,154 @@ public class DatabaseManager {
         }
     }
 
+    // Streams the file into item_similarity in chunks; memory stays constant regardless of the file size
+    public StreamingSimilarityLoader.LoadStats loadDataStreaming(String filePath, int flushSize, int commitInterval,
+                                                                 int queueCapacity) throws IOException, SQLException {
+        StreamingSimilarityLoader loader = new StreamingSimilarityLoader(flushSize, commitInterval, queueCapacity);
+        try (Connection conn = getConnection()) {
+            return loader.load(filePath, conn);
+        }
+    }
+
+    // Loads the file, or every part-* file of a Hadoop output directory, over several connections at once
+    // With localInfile each range is streamed through LOAD DATA LOCAL INFILE, falling back to batches if refused;
+    // with symmetric every pair is written as both (item1, item2) and (item2, item1) into item_similarity_symmetric
+    public StreamingSimilarityLoader.LoadStats loadDataParallel(String path, int parallelism, int batchSize,
+                                                                boolean localInfile, boolean symmetric)
+            throws IOException, SQLException {
+        return new ParallelBulkLoader(DatabaseManager::getConnection, parallelism)
+                .setBatchSize(batchSize)
+                .setLoadDataLocal(localInfile)
+                .load(similarityTable(symmetric), Collections.singletonList(path));
+    }
+
+    // Replaces the contents of item_similarity (or item_similarity_symmetric) through a staging table,
+    // see refreshTable
+    public StreamingSimilarityLoader.LoadStats refreshItemSimilarity(String path, int parallelism, int batchSize,
+                                                                     boolean localInfile, boolean symmetric)
+            throws IOException, SQLException {
+        return refreshTable(similarityTable(symmetric), path, parallelism, batchSize, localInfile);
+    }
+
+    private static ParallelBulkLoader.Table similarityTable(boolean symmetric) {
+        return symmetric ? ParallelBulkLoader.Table.ITEM_SIMILARITY_SYMMETRIC : ParallelBulkLoader.Table.ITEM_SIMILARITY;
+    }
+
+    // Replaces user_recommendations with the output of As1's UserRecommendations job (the nightly top-N
+    // precomputation), see refreshTable; serving reads it with RecommendationSystem.getPrecomputedRecommendations
+    public StreamingSimilarityLoader.LoadStats refreshUserRecommendations(String path, int parallelism, int batchSize,
+                                                                         boolean localInfile)
+            throws IOException, SQLException {
+        return refreshTable(ParallelBulkLoader.Table.USER_RECOMMENDATIONS, path, parallelism, batchSize, localInfile);
+    }
+
+    /**
+     * Replaces the contents of a table without touching the live table while loading.
+     *
+     * The file is bulk-loaded into &lt;table&gt;_staging, created LIKE the live table but with its secondary
+     * indexes dropped so the load only maintains the primary key. The indexes are then rebuilt in one ALTER
+     * TABLE, and a single RENAME TABLE swaps the staging table in. RENAME TABLE is atomic, so queries see either
+     * the old or the new rows, never a mix. If anything fails before the swap, the staging table is dropped and
+     * the live table is left as it was.
+     */
+    private StreamingSimilarityLoader.LoadStats refreshTable(ParallelBulkLoader.Table table, String path,
+                                                             int parallelism, int batchSize, boolean localInfile)
+            throws IOException, SQLException {
+        String live = table.getTableName();
+        String staging = live + "_staging";
+        String old = live + "_old";
+
+        Map<String, String> indexes;
+        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + staging + ", " + old);
+            stmt.execute("CREATE TABLE " + staging + " LIKE " + live);
+            indexes = secondaryIndexes(conn, staging);
+            if (!indexes.isEmpty()) {
+                stmt.execute("ALTER TABLE " + staging + " " + indexClauses(indexes, true));
+            }
+        }
+
+        boolean swapped = false;
+        try {
+            long start = System.nanoTime();
+            StreamingSimilarityLoader.LoadStats stats = new ParallelBulkLoader(DatabaseManager::getConnection, parallelism)
+                    .setBatchSize(batchSize)
+                    .setLoadDataLocal(localInfile)
+                    .setTargetTable(staging)
+                    .load(table, Collections.singletonList(path));
+            System.out.println("Loaded staging table: " + stats);
+
+            try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+                if (!indexes.isEmpty()) {
+                    stmt.execute("ALTER TABLE " + staging + " " + indexClauses(indexes, false));
+                }
+                stmt.execute("ANALYZE TABLE " + staging);
+                stmt.execute("RENAME TABLE " + live + " TO " + old + ", " + staging + " TO " + live);
+                swapped = true;
+                stmt.execute("DROP TABLE " + old);
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            return new StreamingSimilarityLoader.LoadStats(stats.getRows(), stats.getMalformedLines(), elapsedMillis);
+        } finally {
+            if (!swapped) {
+                try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + staging);
+                } catch (SQLException e) {
+                    System.err.println("Could not drop " + staging + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Index name -> "[UNIQUE] INDEX `name` (`col`, ...)" for every index except the primary key
+    private static Map<String, String> secondaryIndexes(Connection conn, String table) throws SQLException {
+        String sql = "SELECT INDEX_NAME, NON_UNIQUE, COLUMN_NAME, SUB_PART FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME <> 'PRIMARY' "
+                + "ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+        Map<String, StringBuilder> columns = new LinkedHashMap<>();
+        Map<String, Boolean> unique = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString("INDEX_NAME");
+                    StringBuilder cols = columns.computeIfAbsent(name, k -> new StringBuilder());
+                    if (cols.length() > 0) {
+                        cols.append(", ");
+                    }
+                    cols.append('`').append(rs.getString("COLUMN_NAME")).append('`');
+                    int subPart = rs.getInt("SUB_PART");
+                    if (!rs.wasNull()) {
+                        cols.append('(').append(subPart).append(')');
+                    }
+                    unique.put(name, rs.getInt("NON_UNIQUE") == 0);
+                }
+            }
+        }
+        Map<String, String> indexes = new LinkedHashMap<>();
+        for (Map.Entry<String, StringBuilder> index : columns.entrySet()) {
+            indexes.put(index.getKey(), (unique.get(index.getKey()) ? "UNIQUE " : "") + "INDEX `" + index.getKey()
+                    + "` (" + index.getValue() + ")");
+        }
+        return indexes;
+    }
+
+    // "DROP INDEX `a`, DROP INDEX `b`" or "ADD INDEX `a` (...), ADD INDEX `b` (...)"
+    private static String indexClauses(Map<String, String> indexes, boolean drop) {
+        StringBuilder clauses = new StringBuilder();
+        for (Map.Entry<String, String> index : indexes.entrySet()) {
+            if (clauses.length() > 0) {
+                clauses.append(", ");
+            }
+            if (drop) {
+                clauses.append("DROP INDEX `").append(index.getKey()).append('`');
+            } else {
+                clauses.append("ADD ").append(index.getValue());
+            }
+        }
+        return clauses.toString();
+    }
+
     private static void testConnection() {
         try (Connection conn = getConnection()) {
             if (conn != null) {
@@ -166,12 +341,56 @@ public class DatabaseManager {
         // Specify the file path
         String filePath = "As1/src/ItemSimilarity/part-r-00000"; // Replace with your actual file path
 
-        // Load data from the file
-        List<ItemSimilarityRecord> records = dbManager.loadDataFromFile(filePath);
+        // Rows per JDBC batch, rows per transaction and chunks buffered between the reader and the inserter
+        int flushSize = Integer.parseInt(props.getProperty("load.flushSize",
+                String.valueOf(StreamingSimilarityLoader.DEFAULT_FLUSH_SIZE)));
+        int commitInterval = Integer.parseInt(props.getProperty("load.commitInterval",
+                String.valueOf(StreamingSimilarityLoader.DEFAULT_COMMIT_INTERVAL)));
+        int queueCapacity = Integer.parseInt(props.getProperty("load.queueCapacity",
+                String.valueOf(StreamingSimilarityLoader.DEFAULT_QUEUE_CAPACITY)));
+        // Number of connections loading at the same time; 1 streams the file over a single connection
+        int parallelism = Integer.parseInt(props.getProperty("load.parallelism", "1"));
+        // Send the data with LOAD DATA LOCAL INFILE instead of INSERT batches
+        boolean localInfile = Boolean.parseBoolean(props.getProperty("load.localInfile", "false"));
+        if (localInfile) {
+            DB_URL = ParallelBulkLoader.enableLocalInfile(DB_URL);
+        }
+        // Load into a staging table and swap it in, instead of inserting into the live table
+        boolean refresh = Boolean.parseBoolean(props.getProperty("load.refresh", "false"));
+        // Load item_similarity_symmetric, both orientations of every pair, instead of item_similarity
+        // (see src/sql/createSymmetricSimilarityTable.sql); only RecommendationSystem's "symmetric" mode reads it
+        boolean symmetric = Boolean.parseBoolean(props.getProperty("load.symmetric", "false"));
+        // Output directory of As1's UserRecommendations job; when set, user_recommendations is refreshed too
+        String recommendationsPath = props.getProperty("load.recommendations");
+        // With recommender.cache.invalidateUrl set, a running RecommendationServer drops its cached results
+        // after each table is replaced, since every user's recommendations may have changed
+        CacheInvalidator invalidator = CacheInvalidator.fromProperties(props);
 
-        // Insert data in batch
-        dbManager.insertItemSimilarityBatch(records);
+        // Stream the file into the database
+        try {
+            StreamingSimilarityLoader.LoadStats stats;
+            if (refresh) {
+                stats = dbManager.refreshItemSimilarity(filePath, parallelism, flushSize, localInfile, symmetric);
+            } else if (parallelism > 1 || localInfile || symmetric) {
+                stats = dbManager.loadDataParallel(filePath, parallelism, flushSize, localInfile, symmetric);
+            } else {
+                stats = dbManager.loadDataStreaming(filePath, flushSize, commitInterval, queueCapacity);
+            }
+            System.out.println("Data loading completed: " + stats);
+            if (invalidator != null) {
+                invalidator.invalidateAll();
+            }
 
-        System.out.println("Data loading completed.");
+            if (recommendationsPath != null) {
+                stats = dbManager.refreshUserRecommendations(recommendationsPath, parallelism, flushSize, localInfile);
+                System.out.println("Recommendations loading completed: " + stats);
+                if (invalidator != null) {
+                    invalidator.invalidateAll();
+                }
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Data loading failed: " + e.getMessage());
+            e.printStackTrace();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,520 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serves the same recommendations as RecommendationSystem.getRecommendations from memory.
+ *
+ * The similarity graph is kept as CSR arrays over dense item indices: the neighbours of item i are
+ * neighbors[offsets[i] .. offsets[i + 1]), with each pair stored in both directions and every row sorted by
+ * similarity descending, so applying the threshold means stopping at the first neighbour below it. Ratings are
+ * kept the same way per user (dense item index plus the 0-100 score in a byte). A request touches only the
+ * rows of the user's items; scores are summed in a primitive open-addressing hash map and the best `limit`
+ * items are picked with a min-heap.
+ *
+ * Like the SQL query, items the user already rated are not excluded. Ties are ordered by item id. Scores are
+ * stored as floats, so a similarity within float rounding of the threshold may be treated differently than
+ * in MySQL. The object is immutable after loading and can be shared by any number of threads.
+ */
+public class InMemoryRecommender {
+
+    // Similarity graph
+    private final int[] itemIds;        // dense index -> item id, ascending
+    private final int[] offsets;        // row start per item, length itemIds.length + 1
+    private final int[] neighbors;      // dense item indices
+    private final float[] similarities; // descending within each row
+
+    // Ratings
+    private final int[] userIds;        // ascending
+    private final int[] ratingOffsets;  // row start per user, length userIds.length + 1
+    private final int[] ratingItems;    // dense item indices
+    private final byte[] ratingScores;  // 0-100
+
+    // Buffers borrowed for one request and returned afterwards, so requests do not allocate beyond their result
+    // list. Unlike a ThreadLocal this keeps working when every request runs on a new (virtual) thread.
+    private final ConcurrentLinkedQueue<Scratch> scratch = new ConcurrentLinkedQueue<>();
+
+    private InMemoryRecommender(int[] itemIds, int[] offsets, int[] neighbors, float[] similarities,
+                                int[] userIds, int[] ratingOffsets, int[] ratingItems, byte[] ratingScores) {
+        this.itemIds = itemIds;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+        this.userIds = userIds;
+        this.ratingOffsets = ratingOffsets;
+        this.ratingItems = ratingItems;
+        this.ratingScores = ratingScores;
+    }
+
+    /**
+     * Loads item_similarity and user_ratings, streaming both tables row by row. Like the OR query it expects one
+     * item_similarity row per pair; item_similarity_symmetric is not read.
+     */
+    public static InMemoryRecommender load(Connection conn) throws SQLException {
+        Builder builder = new Builder();
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J streams the result instead of buffering it all when the fetch size is Integer.MIN_VALUE
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery("SELECT item1, item2, similarity_score FROM item_similarity")) {
+                while (rs.next()) {
+                    builder.addSimilarity(rs.getInt(1), rs.getInt(2), rs.getDouble(3));
+                }
+            }
+            // Primary key order, so each user's ratings arrive together
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT user_id, item_id, score FROM user_ratings ORDER BY user_id, item_id")) {
+                while (rs.next()) {
+                    builder.addRating(rs.getInt(1), rs.getInt(2), rs.getInt(3));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public int getItemCount() {
+        return itemIds.length;
+    }
+
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    public long getEdgeCount() {
+        return neighbors.length;
+    }
+
+    public long getRatingCount() {
+        return ratingItems.length;
+    }
+
+    /**
+     * Returns up to limit items ordered by SUM(similarity * score) over the user's rated items and their
+     * neighbours with similarity >= similarityThreshold; an empty list for an unknown user.
+     */
+    public List<Map.Entry<Integer, Double>> getRecommendations(int userId, double similarityThreshold, int limit) {
+        int user = Arrays.binarySearch(userIds, userId);
+        if (user < 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Scratch s = scratch.poll();
+        if (s == null) {
+            s = new Scratch();
+        }
+        try {
+            return recommend(s, user, similarityThreshold, limit);
+        } finally {
+            scratch.offer(s);
+        }
+    }
+
+    private List<Map.Entry<Integer, Double>> recommend(Scratch s, int user, double similarityThreshold, int limit) {
+        ScoreAccumulator scores = s.scores;
+        scores.clear();
+        for (int r = ratingOffsets[user]; r < ratingOffsets[user + 1]; r++) {
+            int item = ratingItems[r];
+            int score = ratingScores[r];
+            for (int e = offsets[item]; e < offsets[item + 1]; e++) {
+                if (similarities[e] < similarityThreshold) {
+                    break;  // Rows are sorted, everything after is below the threshold too
+                }
+                scores.add(neighbors[e], similarities[e] * (double) score);
+            }
+        }
+
+        TopK top = s.top;
+        top.reset(limit);
+        for (int i = 0; i < scores.size(); i++) {
+            top.offer(scores.keyAt(i), scores.valueAt(i));
+        }
+        int count = top.drainDescending();
+        List<Map.Entry<Integer, Double>> recommendations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            recommendations.add(new AbstractMap.SimpleEntry<>(itemIds[top.items[i]], top.scores[i]));
+        }
+        return recommendations;
+    }
+
+    private static class Scratch {
+        final ScoreAccumulator scores = new ScoreAccumulator();
+        final TopK top = new TopK();
+    }
+
+    // int -> double map with open addressing; clear() only touches the keys that were used
+    static class ScoreAccumulator {
+        private int[] keys = new int[1024];
+        private double[] values = new double[1024];
+        private int[] used = new int[513];   // slots in insertion order, up to half the table plus one
+        private int size;
+        private int mask = 1023;
+
+        ScoreAccumulator() {
+            Arrays.fill(keys, -1);
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                keys[used[i]] = -1;
+            }
+            size = 0;
+        }
+
+        void add(int key, double value) {
+            int slot = mix(key) & mask;
+            while (keys[slot] != -1) {
+                if (keys[slot] == key) {
+                    values[slot] += value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            used[size++] = slot;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int keyAt(int i) {
+            return keys[used[i]];
+        }
+
+        double valueAt(int i) {
+            return values[used[i]];
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            int[] oldUsed = used;
+            int oldSize = size;
+            keys = new int[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            used = new int[keys.length / 2 + 1];
+            Arrays.fill(keys, -1);
+            mask = keys.length - 1;
+            size = 0;
+            for (int i = 0; i < oldSize; i++) {
+                int slot = oldUsed[i];
+                add(oldKeys[slot], oldValues[slot]);
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // Min-heap keeping the `limit` best (score descending, item ascending) entries
+    static class TopK {
+        int[] items = new int[16];
+        double[] scores = new double[16];
+        private int size;
+        private int capacity;
+
+        void reset(int limit) {
+            capacity = limit;
+            size = 0;
+            if (items.length < limit) {
+                items = new int[limit];
+                scores = new double[limit];
+            }
+        }
+
+        // true if a ranks below b
+        private static boolean worse(double scoreA, int itemA, double scoreB, int itemB) {
+            return scoreA < scoreB || (scoreA == scoreB && itemA > itemB);
+        }
+
+        void offer(int item, double score) {
+            if (size < capacity) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse(score, item, scores[parent], items[parent])) {
+                        break;
+                    }
+                    items[i] = items[parent];
+                    scores[i] = scores[parent];
+                    i = parent;
+                }
+                items[i] = item;
+                scores[i] = score;
+            } else if (worse(scores[0], items[0], score, item)) {
+                siftDown(item, score, size);
+            }
+        }
+
+        // Places (item, score) at the root and restores the heap over the first n entries
+        private void siftDown(int item, double score, int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && worse(scores[child + 1], items[child + 1], scores[child], items[child])) {
+                    child++;
+                }
+                if (!worse(scores[child], items[child], score, item)) {
+                    break;
+                }
+                items[i] = items[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            items[i] = item;
+            scores[i] = score;
+        }
+
+        // Sorts the heap in place, best first; returns the number of entries
+        int drainDescending() {
+            int count = size;
+            for (int n = size - 1; n > 0; n--) {
+                int item = items[n];
+                double score = scores[n];
+                items[n] = items[0];
+                scores[n] = scores[0];
+                siftDown(item, score, n);
+            }
+            size = 0;
+            return count;
+        }
+    }
+
+    /**
+     * Collects similarities and ratings in growable primitive arrays and packs them into the CSR layout.
+     * Ratings must arrive grouped by user (as with ORDER BY user_id).
+     */
+    public static class Builder {
+        private int edgeCount;
+        private int[] edgeA = new int[1024];
+        private int[] edgeB = new int[1024];
+        private float[] edgeSimilarity = new float[1024];
+
+        private int userCount;
+        private int[] users = new int[1024];
+        private int[] userStarts = new int[1024];
+        private int ratingCount;
+        private int[] ratedItems = new int[1024];
+        private byte[] scores = new byte[1024];
+
+        public void addSimilarity(int item1, int item2, double similarity) {
+            if (edgeCount == edgeA.length) {
+                int capacity = grownCapacity(edgeCount);
+                edgeA = Arrays.copyOf(edgeA, capacity);
+                edgeB = Arrays.copyOf(edgeB, capacity);
+                edgeSimilarity = Arrays.copyOf(edgeSimilarity, capacity);
+            }
+            edgeA[edgeCount] = item1;
+            edgeB[edgeCount] = item2;
+            edgeSimilarity[edgeCount] = (float) similarity;
+            edgeCount++;
+        }
+
+        public void addRating(int userId, int itemId, int score) {
+            // Stored in a byte
+            if (score < 0 || score > 100) {
+                throw new IllegalArgumentException("score must be between 0 and 100: " + score + " (user " + userId
+                        + ", item " + itemId + ")");
+            }
+            if (userCount == 0 || users[userCount - 1] != userId) {
+                if (userCount > 0 && userId < users[userCount - 1]) {
+                    throw new IllegalArgumentException("ratings must be ordered by user id: " + userId
+                            + " after " + users[userCount - 1]);
+                }
+                if (userCount == users.length) {
+                    users = Arrays.copyOf(users, grownCapacity(userCount));
+                    userStarts = Arrays.copyOf(userStarts, users.length);
+                }
+                users[userCount] = userId;
+                userStarts[userCount] = ratingCount;
+                userCount++;
+            }
+            if (ratingCount == ratedItems.length) {
+                ratedItems = Arrays.copyOf(ratedItems, grownCapacity(ratingCount));
+                scores = Arrays.copyOf(scores, ratedItems.length);
+            }
+            ratedItems[ratingCount] = itemId;
+            scores[ratingCount] = (byte) score;
+            ratingCount++;
+        }
+
+        private static int grownCapacity(int size) {
+            if (size == Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("too many rows for in-memory arrays");
+            }
+            return (int) Math.min(Integer.MAX_VALUE - 8, size * 2L);
+        }
+
+        public InMemoryRecommender build() {
+            // Dense item indices over every item that appears in a similarity
+            int[] ids = new int[edgeCount * 2];
+            System.arraycopy(edgeA, 0, ids, 0, edgeCount);
+            System.arraycopy(edgeB, 0, ids, edgeCount, edgeCount);
+            Arrays.sort(ids);
+            int itemCount = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[itemCount++] = ids[i];
+                }
+            }
+            int[] itemIds = Arrays.copyOf(ids, itemCount);
+            ids = null;
+
+            // Both directions of every pair; a pair of an item with itself is stored once, as in the SQL join
+            for (int i = 0; i < edgeCount; i++) {
+                edgeA[i] = Arrays.binarySearch(itemIds, edgeA[i]);
+                edgeB[i] = Arrays.binarySearch(itemIds, edgeB[i]);
+            }
+            int[] offsets = new int[itemCount + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[edgeA[i] + 1]++;
+                if (edgeA[i] != edgeB[i]) {
+                    offsets[edgeB[i] + 1]++;
+                }
+            }
+            for (int i = 0; i < itemCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] neighbors = new int[offsets[itemCount]];
+            float[] similarities = new float[offsets[itemCount]];
+            int[] next = Arrays.copyOf(offsets, itemCount);
+            for (int i = 0; i < edgeCount; i++) {
+                int a = edgeA[i];
+                int b = edgeB[i];
+                neighbors[next[a]] = b;
+                similarities[next[a]++] = edgeSimilarity[i];
+                if (a != b) {
+                    neighbors[next[b]] = a;
+                    similarities[next[b]++] = edgeSimilarity[i];
+                }
+            }
+            next = null;
+            edgeA = edgeB = null;
+            edgeSimilarity = null;
+            sortRows(offsets, neighbors, similarities);
+
+            // Ratings of items without any similarity can never contribute, so they are not kept
+            int[] ratingOffsets = new int[userCount + 1];
+            int kept = 0;
+            for (int u = 0; u < userCount; u++) {
+                int end = u + 1 < userCount ? userStarts[u + 1] : ratingCount;
+                ratingOffsets[u] = kept;
+                for (int r = userStarts[u]; r < end; r++) {
+                    int item = Arrays.binarySearch(itemIds, ratedItems[r]);
+                    if (item >= 0) {
+                        ratedItems[kept] = item;
+                        scores[kept] = scores[r];
+                        kept++;
+                    }
+                }
+            }
+            ratingOffsets[userCount] = kept;
+
+            return new InMemoryRecommender(itemIds, offsets, neighbors, similarities,
+                    Arrays.copyOf(users, userCount), ratingOffsets,
+                    Arrays.copyOf(ratedItems, kept), Arrays.copyOf(scores, kept));
+        }
+
+        // Sorts every row by similarity descending (then neighbour ascending) through packed long keys
+        private static void sortRows(int[] offsets, int[] neighbors, float[] similarities) {
+            int maxDegree = 0;
+            for (int i = 0; i + 1 < offsets.length; i++) {
+                maxDegree = Math.max(maxDegree, offsets[i + 1] - offsets[i]);
+            }
+            long[] keys = new long[maxDegree];
+            for (int i = 0; i + 1 < offsets.length; i++) {
+                int start = offsets[i];
+                int degree = offsets[i + 1] - start;
+                for (int j = 0; j < degree; j++) {
+                    // Bits of a float, flipped so that signed int order matches float order, then inverted
+                    int bits = Float.floatToIntBits(similarities[start + j]);
+                    bits ^= (bits >> 31) & 0x7FFFFFFF;
+                    keys[j] = ((long) ~bits << 32) | (neighbors[start + j] & 0xFFFFFFFFL);
+                }
+                Arrays.sort(keys, 0, degree);
+                for (int j = 0; j < degree; j++) {
+                    int bits = ~(int) (keys[j] >> 32);
+                    bits ^= (bits >> 31) & 0x7FFFFFFF;
+                    similarities[start + j] = Float.intBitsToFloat(bits);
+                    neighbors[start + j] = (int) keys[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads both tables using db.properties and reports load time and per-request latency for random users.
+     *
+     * Usage: InMemoryRecommender [threshold] [limit] [requests]
+     */
+    public static void main(String[] args) throws SQLException {
+        Properties props = new Properties();
+        try (InputStream input = InMemoryRecommender.class.getClassLoader().getResourceAsStream("db.properties")) {
+            if (input == null) {
+                System.out.println("Can't find db.properties file");
+                return;
+            }
+            props.load(input);
+        } catch (IOException e) {
+            System.err.println("Error loading db.properties: " + e.getMessage());
+            return;
+        }
+        double threshold = args.length > 0 ? Double.parseDouble(args[0]) : 0.5;
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        long start = System.nanoTime();
+        InMemoryRecommender recommender;
+        try (Connection conn = DriverManager.getConnection(props.getProperty("db.url"),
+                props.getProperty("db.user"), props.getProperty("db.password"))) {
+            recommender = load(conn);
+        }
+        System.out.printf("Loaded %d items, %d neighbour entries, %d users, %d ratings in %.1f s%n",
+                recommender.getItemCount(), recommender.getEdgeCount(), recommender.getUserCount(),
+                recommender.getRatingCount(), (System.nanoTime() - start) / 1e9);
+        if (recommender.getUserCount() == 0) {
+            return;
+        }
+        benchmark(recommender, threshold, limit, requests);
+    }
+
+    static void benchmark(InMemoryRecommender recommender, double threshold, int limit, int requests) {
+        Random random = new Random(42);
+        long[] latencies = new long[requests];
+        long checksum = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int i = 0; i < requests; i++) {
+                int userId = recommender.userIds[random.nextInt(recommender.userIds.length)];
+                long t0 = System.nanoTime();
+                checksum += recommender.getRecommendations(userId, threshold, limit).size();
+                latencies[i] = System.nanoTime() - t0;
+            }
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%d requests: p50 %.1f us, p99 %.1f us, max %.1f us (%d results)%n", requests,
+                latencies[requests / 2] / 1e3, latencies[(int) (requests * 0.99)] / 1e3,
+                latencies[requests - 1] / 1e3, checksum);
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Compares batched INSERTs with LOAD DATA LOCAL INFILE on a local MySQL/MariaDB server.
+ *
+ * Every run empties the target table first, so the benchmark only connects to bench.url (and bench.user,
+ * bench.password) from db.properties, never to db.url. Point it at a scratch database that has the
+ * item_similarity and user_ratings tables. If the server refuses LOAD DATA LOCAL INFILE, the load-data runs are
+ * reported as refused and skipped instead of timing the loader's batched fallback.
+ *
+ * Usage: LoadBenchmark <similarity file or directory> <ratings file> [parallelism]
+ */
+public class LoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LoadBenchmark <similarity file or directory> <ratings file> [parallelism]");
+            System.exit(2);
+        }
+        Properties props = new Properties();
+        try (InputStream input = LoadBenchmark.class.getClassLoader().getResourceAsStream("db.properties")) {
+            if (input == null) {
+                System.out.println("Can't find db.properties file");
+                return;
+            }
+            props.load(input);
+        }
+        String url = props.getProperty("bench.url");
+        if (url == null) {
+            System.err.println("Set bench.url in db.properties to a scratch database; its tables are truncated");
+            System.exit(2);
+        }
+        String jdbcUrl = ParallelBulkLoader.enableLocalInfile(url);
+        String user = props.getProperty("bench.user", props.getProperty("db.user"));
+        String password = props.getProperty("bench.password", props.getProperty("db.password"));
+        ConnectionPool.ConnectionFactory factory = () -> DriverManager.getConnection(jdbcUrl, user, password);
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-16s %-12s %5s %12s %10s %12s%n", "table", "mode", "conns", "rows", "seconds", "rows/s");
+        run(factory, ParallelBulkLoader.Table.ITEM_SIMILARITY, "item_similarity", args[0], parallelism);
+        run(factory, ParallelBulkLoader.Table.USER_RATINGS, "user_ratings", args[1], parallelism);
+    }
+
+    private static void run(ConnectionPool.ConnectionFactory factory, ParallelBulkLoader.Table table, String tableName,
+                            String path, int parallelism) throws IOException, SQLException {
+        int[] connections = parallelism > 1 ? new int[]{1, parallelism} : new int[]{1};
+        for (boolean localInfile : new boolean[]{false, true}) {
+            for (int n : connections) {
+                truncate(factory, tableName);
+                List<String> paths = Collections.singletonList(path);
+                ParallelBulkLoader loader = new ParallelBulkLoader(factory, n).setLoadDataLocal(localInfile);
+                StreamingSimilarityLoader.LoadStats stats = loader.load(table, paths);
+                if (localInfile && loader.isLoadDataRefused()) {
+                    // The loader fell back to batched inserts; timing it as load-data would compare batches with batches
+                    System.out.printf("%-16s %-12s %5d  LOAD DATA LOCAL INFILE was refused; enable local_infile on the"
+                            + " server to benchmark it%n", tableName, "load-data", n);
+                    return;
+                }
+                long count = count(factory, tableName);
+                String mode = localInfile ? "load-data" : "batched";
+                System.out.printf("%-16s %-12s %5d %12d %10.1f %12.0f%s%n", tableName, mode, n, stats.getRows(),
+                        stats.getElapsedMillis() / 1000.0, stats.getRowsPerSecond(),
+                        count == stats.getRows() ? "" : "  (table has " + count + " rows)");
+            }
+        }
+    }
+
+    private static void truncate(ConnectionPool.ConnectionFactory factory, String tableName) throws SQLException {
+        try (Connection conn = factory.open(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE " + tableName);
+        }
+    }
+
+    private static long count(ConnectionPool.ConnectionFactory factory, String tableName) throws SQLException {
+        try (Connection conn = factory.open(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
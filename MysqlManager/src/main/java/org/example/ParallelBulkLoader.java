@@ -0,0 +1,854 @@
+package org.example;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads ItemSimilarity output, KDD-Cup rating files or UserRecommendations output over several pooled
+ * connections at once.
+ *
+ * Every input file is cut into byte ranges of about splitSize bytes (a directory contributes each of its
+ * part-* files). Worker threads take ranges from a shared queue, parse them and insert the rows in batches
+ * of batchSize; every batch is its own transaction. A batch that fails (deadlock, lost connection, ...) is
+ * rolled back and retried on a fresh connection with exponential backoff, up to maxRetries times.
+ *
+ * Ranges are aligned the same way as Hadoop input splits: a range owns the lines (or, for ratings, the
+ * user blocks) that start inside it, and reads past its end to finish the last one.
+ *
+ * With setLoadDataLocal(true) each range is instead converted to TSV on a second thread and streamed through a
+ * pipe into one LOAD DATA LOCAL INFILE statement, which skips per-row statement handling entirely and needs no
+ * temporary files. This needs allowLoadLocalInfile=true on the JDBC URL (see enableLocalInfile) and local_infile
+ * enabled on the server; if either side refuses, the loader switches to batched inserts for the rest of the load.
+ */
+public class ParallelBulkLoader {
+
+    public enum Table {
+        // "(ItemA, ItemB)\tSimilarity" lines
+        ITEM_SIMILARITY("item_similarity", "item1, item2, similarity_score", "", ""),
+        // The same lines, each written as both (item1, item2) and (item2, item1); a pair of an item with itself
+        // once. A separate table, so the OR/UNION queries never see both orientations
+        // (src/sql/createSymmetricSimilarityTable.sql)
+        ITEM_SIMILARITY_SYMMETRIC("item_similarity_symmetric", "item1, item2, similarity_score", "", ""),
+        // "UserID|count" headers each followed by count "ItemID\tScore" lines
+        // REPLACE keeps the ON DUPLICATE KEY UPDATE behaviour; LOCAL would otherwise skip duplicate keys
+        USER_RATINGS("user_ratings", "user_id, item_id, score", " ON DUPLICATE KEY UPDATE score=VALUES(score)",
+                "REPLACE "),
+        // "UserID\tItem1:Score1,Item2:Score2,..." lines written by As1's UserRecommendations job
+        USER_RECOMMENDATIONS("user_recommendations", "user_id, item_id, score",
+                " ON DUPLICATE KEY UPDATE score=VALUES(score)", "REPLACE ");
+
+        private final String tableName;
+        private final String columns;
+        private final String onDuplicate;
+        private final String loadDataModifier;
+
+        Table(String tableName, String columns, String onDuplicate, String loadDataModifier) {
+            this.tableName = tableName;
+            this.columns = columns;
+            this.onDuplicate = onDuplicate;
+            this.loadDataModifier = loadDataModifier;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        String insertSql(String target) {
+            return "INSERT INTO " + target + " (" + columns + ") VALUES (?, ?, ?)" + onDuplicate;
+        }
+
+        String loadDataSql(String target) {
+            return "LOAD DATA LOCAL INFILE 'stream' " + loadDataModifier + "INTO TABLE " + target + " " + TSV_FORMAT
+                    + " (" + columns + ")";
+        }
+    }
+
+    private static final String TSV_FORMAT = "FIELDS TERMINATED BY '\\t' LINES TERMINATED BY '\\n'";
+
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+    public static final long DEFAULT_SPLIT_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private final ConnectionPool.ConnectionFactory factory;
+    private final int parallelism;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long splitSize = DEFAULT_SPLIT_SIZE;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private boolean loadDataLocal;
+    // Table to insert into instead of the Table's own, e.g. a staging copy
+    private String targetTable;
+    // Told about every user whose ratings were committed, e.g. a CacheInvalidator
+    private RatingListener ratingListener;
+    // Set once the driver or the server has refused LOAD DATA LOCAL INFILE
+    private final AtomicBoolean loadDataRefused = new AtomicBoolean();
+
+    public ParallelBulkLoader(ConnectionPool.ConnectionFactory factory, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.factory = factory;
+        this.parallelism = parallelism;
+    }
+
+    public ParallelBulkLoader setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public ParallelBulkLoader setSplitSize(long splitSize) {
+        this.splitSize = splitSize;
+        return this;
+    }
+
+    public ParallelBulkLoader setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public ParallelBulkLoader setTargetTable(String targetTable) {
+        this.targetTable = targetTable;
+        return this;
+    }
+
+    private String targetTable(Table table) {
+        return targetTable != null ? targetTable : table.getTableName();
+    }
+
+    /**
+     * Called with the ids of users whose ratings changed, once per user and batch, after the batch committed.
+     * Must be thread-safe: every worker calls it.
+     */
+    public interface RatingListener {
+        void ratingsChanged(int userId);
+    }
+
+    public ParallelBulkLoader setRatingListener(RatingListener ratingListener) {
+        this.ratingListener = ratingListener;
+        return this;
+    }
+
+    public ParallelBulkLoader setLoadDataLocal(boolean loadDataLocal) {
+        this.loadDataLocal = loadDataLocal;
+        return this;
+    }
+
+    /**
+     * Whether LOAD DATA LOCAL INFILE was refused by the driver or the server, so that the load (or the rest of it)
+     * used batched inserts instead.
+     */
+    public boolean isLoadDataRefused() {
+        return loadDataRefused.get();
+    }
+
+    // Connector/J only answers the server's request for a local file when this is set
+    public static String enableLocalInfile(String url) {
+        if (url.contains("allowLoadLocalInfile=")) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + "allowLoadLocalInfile=true";
+    }
+
+    // ER_NOT_ALLOWED_COMMAND (older servers, MariaDB), ER_CLIENT_LOCAL_FILES_DISABLED (MySQL 8),
+    // or Connector/J refusing because allowLoadLocalInfile is off
+    static boolean isLoadDataRefused(SQLException e) {
+        String message = e.getMessage();
+        return e.getErrorCode() == 1148 || e.getErrorCode() == 3948
+                || (message != null && message.contains("allowLoadLocalInfile"));
+    }
+
+    // A byte range [start, end) of one file
+    static class Split {
+        final File file;
+        final long start;
+        final long end;
+
+        Split(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + start + "+" + (end - start);
+        }
+    }
+
+    /**
+     * Cuts the inputs into splits. A directory contributes its part-* files (Hadoop output directories).
+     */
+    static List<Split> planSplits(List<String> paths, long splitSize) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] parts = file.listFiles((dir, name) -> name.startsWith("part-"));
+                if (parts != null) {
+                    Arrays.sort(parts);
+                    files.addAll(Arrays.asList(parts));
+                }
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                throw new IOException("Input not found: " + path);
+            }
+        }
+
+        List<Split> splits = new ArrayList<>();
+        for (File file : files) {
+            long length = file.length();
+            for (long start = 0; start < length; start += splitSize) {
+                splits.add(new Split(file, start, Math.min(length, start + splitSize)));
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Loads the inputs into the table and waits until every split is done.
+     *
+     * @param table The target table, which also selects the input format.
+     * @param paths Input files or Hadoop output directories.
+     * @return Rows inserted, malformed lines skipped and the overall throughput.
+     * @throws IOException If an input cannot be read.
+     * @throws SQLException If a batch still fails after maxRetries retries. Batches committed before that
+     *                      stay in the table; the remaining splits are abandoned. Also thrown, with the interrupt
+     *                      flag set, if the calling thread is interrupted: the workers are interrupted and waited
+     *                      for, each stopping after the batch it is inserting.
+     */
+    public StreamingSimilarityLoader.LoadStats load(Table table, List<String> paths) throws IOException, SQLException {
+        long startNanos = System.nanoTime();
+        ConcurrentLinkedQueue<Split> pending = new ConcurrentLinkedQueue<>(planSplits(paths, splitSize));
+        AtomicLong rows = new AtomicLong();
+        AtomicLong malformed = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Future<Void>> workers = new ArrayList<>();
+        try (ConnectionPool pool = new ConnectionPool(factory, parallelism)) {
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(executor.submit(() -> {
+                    new Worker(table, pool, rows, malformed).run(pending, failed);
+                    return null;
+                }));
+            }
+
+            Exception error = null;
+            for (Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    failed.set(true);
+                    error = new SQLException("Interrupted while loading", e);
+                    // The workers still hold pooled connections; closing the pool must wait for them
+                    stopWorkers(executor);
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    if (error == null) {
+                        error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof SQLException) {
+                throw (SQLException) error;
+            }
+            if (error != null) {
+                throw new SQLException("Loading failed", error);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return new StreamingSimilarityLoader.LoadStats(rows.get(), malformed.get(), elapsedMillis);
+    }
+
+    // Interrupts the workers and waits until each has finished its current batch and stopped
+    private static void stopWorkers(ExecutorService executor) {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One loading thread: takes splits until none are left, keeping one connection and one batch buffer
+    private class Worker {
+        private final Table table;
+        private final ConnectionPool pool;
+        private final AtomicLong rows;
+        private final AtomicLong malformed;
+        // One spare row: a symmetric similarity line adds two rows before the batch size is checked
+        private final StreamingSimilarityLoader.Chunk chunk = new StreamingSimilarityLoader.Chunk(batchSize + 1);
+
+        private Connection conn;
+        private PreparedStatement pstmt;
+
+        Worker(Table table, ConnectionPool pool, AtomicLong rows, AtomicLong malformed) {
+            this.table = table;
+            this.pool = pool;
+            this.rows = rows;
+            this.malformed = malformed;
+        }
+
+        void run(ConcurrentLinkedQueue<Split> pending, AtomicBoolean failed)
+                throws IOException, SQLException, InterruptedException {
+            try {
+                Split split;
+                while (!failed.get() && (split = pending.poll()) != null) {
+                    try {
+                        loadSplit(split);
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+            } finally {
+                closeConnection(false);
+            }
+        }
+
+        private void loadSplit(Split split) throws IOException, SQLException, InterruptedException {
+            if (loadDataLocal && !loadDataRefused.get()) {
+                if (loadSplitWithLoadData(split)) {
+                    return;
+                }
+                if (!loadDataRefused.getAndSet(true)) {
+                    System.err.println("LOAD DATA LOCAL INFILE is not available, falling back to batched inserts");
+                }
+            }
+            LineParser parser = newParser(table);
+            forEachLine(split, (buffer, start, length, offset) -> {
+                if (!parser.parseLine(buffer, start, length, offset, split.end, chunk)) {
+                    return false;
+                }
+                if (chunk.size >= batchSize) {
+                    flush();
+                }
+                return true;
+            });
+            flush();
+            malformed.addAndGet(parser.getMalformedLines());
+        }
+
+        /**
+         * Streams the split into a single LOAD DATA LOCAL INFILE statement and commits it, retrying the whole
+         * split on failure.
+         *
+         * @return false if the driver or server does not allow LOAD DATA LOCAL INFILE; nothing was loaded then.
+         */
+        private boolean loadSplitWithLoadData(Split split) throws IOException, SQLException, InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                TsvWriter writer = null;
+                Thread writerThread = null;
+                PipedInputStream in = null;
+                try {
+                    ensureConnection();
+                    try (Statement stmt = conn.createStatement()) {
+                        JdbcStatement mysqlStmt;
+                        try {
+                            mysqlStmt = stmt.unwrap(JdbcStatement.class);
+                        } catch (SQLException e) {
+                            return false;  // Not Connector/J
+                        }
+                        in = new PipedInputStream(PIPE_SIZE);
+                        writer = new TsvWriter(table, split, new PipedOutputStream(in));
+                        writerThread = new Thread(writer, "tsv-writer");
+                        writerThread.setDaemon(true);
+                        writerThread.start();
+
+                        mysqlStmt.setLocalInfileInputStream(in);
+                        stmt.executeUpdate(table.loadDataSql(targetTable(table)));
+                    }
+                    writerThread.join();
+                    writerThread = null;
+                    if (writer.error != null) {
+                        // The server saw a truncated stream; do not commit what it loaded
+                        conn.rollback();
+                        if (writer.error instanceof IOException) {
+                            throw (IOException) writer.error;
+                        }
+                        throw new IOException("Error reading " + split, writer.error);
+                    }
+                    conn.commit();
+                    if (writer.users != null) {
+                        for (int i = 0; i < writer.userCount; i++) {
+                            ratingListener.ratingsChanged(writer.users[i]);
+                        }
+                    }
+                    rows.addAndGet(writer.rows);
+                    malformed.addAndGet(writer.malformedLines);
+                    return true;
+                } catch (SQLException e) {
+                    if (isLoadDataRefused(e)) {
+                        closeConnection(true);
+                        return false;
+                    }
+                    if (attempt >= maxRetries) {
+                        throw e;
+                    }
+                    System.err.println("LOAD DATA of " + split + " failed (" + e.getMessage() + "), retry "
+                            + (attempt + 1) + " of " + maxRetries);
+                    closeConnection(true);
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << attempt);
+                } finally {
+                    if (writerThread != null) {
+                        // Unblock a writer the driver stopped reading from
+                        try {
+                            in.close();
+                        } catch (IOException e) {
+                            // Closing the read end of a pipe cannot fail in a way that matters here
+                        }
+                        writerThread.join();
+                    }
+                }
+            }
+        }
+
+        private void ensureConnection() throws SQLException {
+            if (conn == null) {
+                conn = pool.borrow(1, TimeUnit.MINUTES);
+                conn.setAutoCommit(false);
+                pstmt = conn.prepareStatement(table.insertSql(targetTable(table)));
+            }
+        }
+
+        // Inserts and commits the buffered rows, retrying the whole batch on a new connection if it fails
+        private void flush() throws SQLException, InterruptedException {
+            if (chunk.size == 0) {
+                return;
+            }
+            // load() interrupts the workers when it is interrupted itself; stop before the next batch
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Interrupted before inserting " + chunk.size + " rows");
+            }
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    ensureConnection();
+                    for (int i = 0; i < chunk.size; i++) {
+                        pstmt.setInt(1, chunk.item1[i]);
+                        pstmt.setInt(2, chunk.item2[i]);
+                        if (table == Table.USER_RATINGS) {
+                            pstmt.setInt(3, (int) chunk.score[i]);
+                        } else {
+                            pstmt.setDouble(3, chunk.score[i]);
+                        }
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    conn.commit();
+                    break;
+                } catch (SQLException e) {
+                    if (attempt >= maxRetries) {
+                        throw e;
+                    }
+                    System.err.println("Batch of " + chunk.size + " rows failed (" + e.getMessage() + "), retry "
+                            + (attempt + 1) + " of " + maxRetries);
+                    closeConnection(true);
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << attempt);
+                }
+            }
+            if (table == Table.USER_RATINGS && ratingListener != null) {
+                // Rows are grouped by user, so each user of the batch is reported once
+                for (int i = 0; i < chunk.size; i++) {
+                    if (i == 0 || chunk.item1[i] != chunk.item1[i - 1]) {
+                        ratingListener.ratingsChanged(chunk.item1[i]);
+                    }
+                }
+            }
+            rows.addAndGet(chunk.size);
+            chunk.size = 0;
+        }
+
+        // A connection that saw an error is discarded rather than returned, so a retry starts clean
+        private void closeConnection(boolean broken) {
+            if (conn == null) {
+                return;
+            }
+            try {
+                if (broken) {
+                    conn.rollback();
+                }
+                pstmt.close();
+            } catch (SQLException e) {
+                broken = true;
+            }
+            if (broken) {
+                pool.discard(conn);
+            } else {
+                pool.release(conn);
+            }
+            conn = null;
+            pstmt = null;
+        }
+    }
+
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    // Parses a split and writes its rows as "a\tb\tvalue\n" lines to the pipe read by the driver
+    private class TsvWriter implements Runnable {
+        private final Table table;
+        private final Split split;
+        private final OutputStream out;
+        // Read by the worker after join()
+        long rows;
+        long malformedLines;
+        Exception error;
+        // Users written to the pipe, for the RatingListener once the statement is committed
+        int[] users;
+        int userCount;
+
+        TsvWriter(Table table, Split split, OutputStream out) {
+            this.table = table;
+            this.split = split;
+            this.out = out;
+            if (table == Table.USER_RATINGS && ratingListener != null) {
+                users = new int[64];
+            }
+        }
+
+        @Override
+        public void run() {
+            LineParser parser = newParser(table);
+            StreamingSimilarityLoader.Chunk chunk = new StreamingSimilarityLoader.Chunk(batchSize + 1);
+            StringBuilder tsv = new StringBuilder();
+            try (OutputStream o = new BufferedOutputStream(out, 64 * 1024)) {
+                forEachLine(split, (buffer, start, length, offset) -> {
+                    if (!parser.parseLine(buffer, start, length, offset, split.end, chunk)) {
+                        return false;
+                    }
+                    if (chunk.size >= batchSize) {
+                        write(chunk, tsv, o);
+                    }
+                    return true;
+                });
+                write(chunk, tsv, o);
+                malformedLines = parser.getMalformedLines();
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        private void write(StreamingSimilarityLoader.Chunk chunk, StringBuilder tsv, OutputStream o) throws IOException {
+            tsv.setLength(0);
+            for (int i = 0; i < chunk.size; i++) {
+                tsv.append(chunk.item1[i]).append('\t').append(chunk.item2[i]).append('\t');
+                if (table == Table.USER_RATINGS) {
+                    tsv.append((int) chunk.score[i]);
+                } else {
+                    tsv.append(chunk.score[i]);
+                }
+                tsv.append('\n');
+            }
+            if (users != null) {
+                for (int i = 0; i < chunk.size; i++) {
+                    int user = chunk.item1[i];
+                    if (userCount == 0 || users[userCount - 1] != user) {
+                        if (userCount == users.length) {
+                            users = Arrays.copyOf(users, userCount * 2);
+                        }
+                        users[userCount++] = user;
+                    }
+                }
+            }
+            o.write(tsv.toString().getBytes(StandardCharsets.US_ASCII));
+            rows += chunk.size;
+            chunk.size = 0;
+        }
+    }
+
+    private LineParser newParser(Table table) {
+        switch (table) {
+            case ITEM_SIMILARITY:
+                return new SimilarityParser(false);
+            case ITEM_SIMILARITY_SYMMETRIC:
+                return new SimilarityParser(true);
+            case USER_RATINGS:
+                return new RatingParser();
+            default:
+                return new RecommendationParser();
+        }
+    }
+
+    interface LineHandler {
+        // Returns false to stop reading
+        boolean line(byte[] buffer, int start, int length, long offset)
+                throws IOException, SQLException, InterruptedException;
+    }
+
+    /**
+     * Calls the handler for every line that starts at or after split.start, with its offset in the file.
+     * Reading continues past split.end until the handler returns false or the file ends.
+     */
+    static void forEachLine(Split split, LineHandler handler) throws IOException, SQLException, InterruptedException {
+        try (FileInputStream in = new FileInputStream(split.file)) {
+            // Start one byte early: if that byte is a newline, the first line starts exactly at split.start
+            boolean skipFirst = split.start > 0;
+            long bufferOffset = skipFirst ? split.start - 1 : 0;
+            in.getChannel().position(bufferOffset);
+
+            byte[] buffer = new byte[64 * 1024];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer[i] == '\n') {
+                        if (skipFirst) {
+                            skipFirst = false;
+                        } else if (!handler.line(buffer, lineStart, i - lineStart, bufferOffset + lineStart)) {
+                            return;
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                bufferOffset += lineStart;
+                length -= lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, length);
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            if (length > 0 && !skipFirst) {
+                handler.line(buffer, 0, length, bufferOffset);
+            }
+        }
+    }
+
+    // Turns the lines of one split into rows; one instance per split
+    interface LineParser {
+        // Returns false once the split has no more rows
+        boolean parseLine(byte[] buffer, int start, int length, long offset, long splitEnd,
+                          StreamingSimilarityLoader.Chunk chunk);
+
+        long getMalformedLines();
+    }
+
+    private static boolean isBlank(byte[] buffer, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t' && buffer[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(StreamingSimilarityLoader.Chunk chunk, int a, int b, double value) {
+        if (chunk.isFull()) {
+            chunk.grow();
+        }
+        chunk.item1[chunk.size] = a;
+        chunk.item2[chunk.size] = b;
+        chunk.score[chunk.size] = value;
+        chunk.size++;
+    }
+
+    // A split owns every line that starts before its end
+    static class SimilarityParser implements LineParser {
+        private final SimilarityLineParser parser = new SimilarityLineParser();
+        private final boolean symmetric;
+
+        SimilarityParser(boolean symmetric) {
+            this.symmetric = symmetric;
+        }
+
+        @Override
+        public boolean parseLine(byte[] buffer, int start, int length, long offset, long splitEnd,
+                                 StreamingSimilarityLoader.Chunk chunk) {
+            if (offset >= splitEnd) {
+                return false;
+            }
+            if (!isBlank(buffer, start, length) && parser.parse(buffer, start, length)) {
+                add(chunk, parser.getItemA(), parser.getItemB(), parser.getSimilarity());
+                if (symmetric && parser.getItemA() != parser.getItemB()) {
+                    add(chunk, parser.getItemB(), parser.getItemA(), parser.getSimilarity());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public long getMalformedLines() {
+            return parser.getMalformedLines();
+        }
+    }
+
+    // Parses numbers directly from the bytes of the current line
+    abstract static class ByteLineParser implements LineParser {
+        protected long malformedLines;
+
+        // Parse position within the current line
+        protected byte[] bytes;
+        protected int pos;
+        protected int end;
+
+        @Override
+        public long getMalformedLines() {
+            return malformedLines;
+        }
+
+        protected int indexOf(char c) {
+            for (int i = pos; i < end; i++) {
+                if (bytes[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        protected void skipWhitespace() {
+            while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\r')) {
+                pos++;
+            }
+        }
+
+        protected int parseInt() {
+            skipWhitespace();
+            int start = pos;
+            long value = 0;
+            while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                value = value * 10 + (bytes[pos++] - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new NumberFormatException("int overflow");
+                }
+            }
+            if (pos == start) {
+                throw new NumberFormatException("missing digits");
+            }
+            return (int) value;
+        }
+    }
+
+    // A split owns every user block whose "UserID|count" header starts before its end.
+    // Rating lines before the first header belong to the previous split's last user.
+    static class RatingParser extends ByteLineParser {
+        private int userId = -1;
+        private int remaining;
+
+        @Override
+        public boolean parseLine(byte[] buffer, int start, int length, long offset, long splitEnd,
+                                 StreamingSimilarityLoader.Chunk chunk) {
+            if (isBlank(buffer, start, length)) {
+                return true;
+            }
+            bytes = buffer;
+            pos = start;
+            end = start + length;
+            boolean header = indexOf('|') >= 0;
+            try {
+                if (header) {
+                    if (offset >= splitEnd) {
+                        return false;
+                    }
+                    userId = -1;
+                    int user = parseInt();
+                    skipWhitespace();
+                    if (pos == end || bytes[pos++] != '|') {
+                        throw new NumberFormatException("missing '|'");
+                    }
+                    remaining = parseInt();
+                    userId = user;
+                } else if (userId >= 0 && remaining > 0) {
+                    int itemId = parseInt();
+                    int score = parseInt();
+                    add(chunk, userId, itemId, score);
+                    remaining--;
+                }
+            } catch (NumberFormatException e) {
+                // Ratings of a user whose header cannot be read are skipped (userId stays -1)
+                malformedLines++;
+                if (!header) {
+                    remaining--;
+                }
+            } finally {
+                bytes = null;
+            }
+            return true;
+        }
+    }
+
+    // One user per line: "UserID\tItem1:Score1,Item2:Score2,...". A split owns every line that starts before
+    // its end; a line that cannot be parsed completely is skipped as a whole.
+    static class RecommendationParser extends ByteLineParser {
+
+        @Override
+        public boolean parseLine(byte[] buffer, int start, int length, long offset, long splitEnd,
+                                 StreamingSimilarityLoader.Chunk chunk) {
+            if (offset >= splitEnd) {
+                return false;
+            }
+            if (isBlank(buffer, start, length)) {
+                return true;
+            }
+            bytes = buffer;
+            pos = start;
+            end = start + length;
+            int rowsBefore = chunk.size;
+            try {
+                int userId = parseInt();
+                do {
+                    int itemId = parseInt();
+                    if (pos == end || bytes[pos++] != ':') {
+                        throw new NumberFormatException("missing ':'");
+                    }
+                    int comma = indexOf(',');
+                    int scoreEnd = comma < 0 ? end : comma;
+                    skipWhitespace();
+                    while (scoreEnd > pos && (bytes[scoreEnd - 1] == ' ' || bytes[scoreEnd - 1] == '\t'
+                            || bytes[scoreEnd - 1] == '\r')) {
+                        scoreEnd--;
+                    }
+                    double score = SimilarityLineParser.parseDouble(bytes, pos, scoreEnd);
+                    add(chunk, userId, itemId, score);
+                    pos = comma < 0 ? end : comma + 1;
+                } while (pos < end);
+            } catch (NumberFormatException e) {
+                chunk.size = rowsBefore;
+                malformedLines++;
+            } finally {
+                bytes = null;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Compares the RecommendationSystem query modes on the database in db.properties (read-only).
+ *
+ * For users with about 10, 100 and 1000 ratings it prints each mode's EXPLAIN plan (access type, key and
+ * estimated rows per table), whether it returns the same items as the OR query, and p50/p99 latency.
+ * Index range scans show up as type "ref"/"range" on the covering index; the OR query shows "ALL" on
+ * item_similarity.
+ *
+ * SYMMETRIC reads item_similarity_symmetric rather than item_similarity. It is skipped when that table does not
+ * exist, and its results are only compared with OR when its row count shows it holds both orientations of the
+ * item_similarity rows.
+ *
+ * Usage: QueryBenchmark [threshold] [limit] [runs] [modes, e.g. or,union,symmetric]
+ */
+public class QueryBenchmark {
+
+    private static final int[] TARGET_RATING_COUNTS = {10, 100, 1000};
+    // MySQL's ER_NO_SUCH_TABLE
+    private static final int NO_SUCH_TABLE = 1146;
+
+    public static void main(String[] args) throws SQLException {
+        Properties props = new Properties();
+        try (InputStream input = QueryBenchmark.class.getClassLoader().getResourceAsStream("db.properties")) {
+            if (input == null) {
+                System.out.println("Can't find db.properties file");
+                return;
+            }
+            props.load(input);
+        } catch (IOException e) {
+            System.err.println("Error loading db.properties: " + e.getMessage());
+            return;
+        }
+        double threshold = args.length > 0 ? Double.parseDouble(args[0]) : 0.5;
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        List<RecommendationSystem.QueryMode> modes = new ArrayList<>();
+        for (String mode : (args.length > 3 ? args[3] : "or,union,symmetric").split(",")) {
+            modes.add(RecommendationSystem.QueryMode.valueOf(mode.trim().toUpperCase()));
+        }
+
+        try (Connection conn = DriverManager.getConnection(props.getProperty("db.url"),
+                props.getProperty("db.user"), props.getProperty("db.password"))) {
+            boolean compareSymmetric = false;
+            if (modes.contains(RecommendationSystem.QueryMode.SYMMETRIC)) {
+                try {
+                    compareSymmetric = symmetricTableMatches(conn);
+                    if (!compareSymmetric) {
+                        System.out.println("item_similarity_symmetric does not hold both orientations of item_similarity;"
+                                + " SYMMETRIC results are not compared with OR");
+                    }
+                } catch (SQLException e) {
+                    if (e.getErrorCode() != NO_SUCH_TABLE) {
+                        throw e;
+                    }
+                    System.out.println("item_similarity_symmetric does not exist (load.symmetric=true loads it);"
+                            + " skipping SYMMETRIC");
+                    modes.remove(RecommendationSystem.QueryMode.SYMMETRIC);
+                }
+            }
+            int[][] users = pickUsers(conn);
+            for (int[] user : users) {
+                System.out.printf("%nUser %d (%d ratings), threshold %.2f, limit %d%n", user[0], user[1], threshold, limit);
+                List<Map.Entry<Integer, Double>> expected =
+                        RecommendationSystem.getRecommendations(conn, RecommendationSystem.QueryMode.OR, user[0], threshold, limit);
+                for (RecommendationSystem.QueryMode mode : modes) {
+                    explain(conn, mode, user[0], threshold, limit);
+                    long[] latencies = new long[runs];
+                    List<Map.Entry<Integer, Double>> result = null;
+                    RecommendationSystem.getRecommendations(conn, mode, user[0], threshold, limit);  // warm-up
+                    for (int i = 0; i < runs; i++) {
+                        long start = System.nanoTime();
+                        result = RecommendationSystem.getRecommendations(conn, mode, user[0], threshold, limit);
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    Arrays.sort(latencies);
+                    String comparison;
+                    if (mode == RecommendationSystem.QueryMode.SYMMETRIC && !compareSymmetric) {
+                        comparison = "not compared";
+                    } else {
+                        comparison = sameItems(expected, result, limit) ? "same result as OR" : "DIFFERENT result from OR";
+                    }
+                    System.out.printf("  %-9s p50 %8.2f ms  p99 %8.2f ms  %s%n", mode, latencies[runs / 2] / 1e6,
+                            latencies[Math.min(runs - 1, (int) (runs * 0.99))] / 1e6, comparison);
+                }
+            }
+        }
+    }
+
+    // Each item_similarity row appears twice in item_similarity_symmetric, a pair of an item with itself once
+    private static boolean symmetricTableMatches(Connection conn) throws SQLException {
+        return count(conn, "SELECT COUNT(*) FROM item_similarity_symmetric")
+                == count(conn, "SELECT 2 * COUNT(*) - COALESCE(SUM(item1 = item2), 0) FROM item_similarity");
+    }
+
+    private static long count(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // {user_id, rating count} of the users whose rating counts are closest to the targets
+    private static int[][] pickUsers(Connection conn) throws SQLException {
+        int[][] best = new int[TARGET_RATING_COUNTS.length][];
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery("SELECT user_id, COUNT(*) FROM user_ratings GROUP BY user_id")) {
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    int count = rs.getInt(2);
+                    for (int i = 0; i < TARGET_RATING_COUNTS.length; i++) {
+                        int target = TARGET_RATING_COUNTS[i];
+                        if (best[i] == null || Math.abs(count - target) < Math.abs(best[i][1] - target)) {
+                            best[i] = new int[]{userId, count};
+                        }
+                    }
+                }
+            }
+        }
+        List<int[]> users = new ArrayList<>();
+        for (int[] user : best) {
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users.toArray(new int[0][]);
+    }
+
+    private static void explain(Connection conn, RecommendationSystem.QueryMode mode, int userId, double threshold,
+                                int limit) throws SQLException {
+        System.out.println("  EXPLAIN " + mode + ":");
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + mode.getQuery())) {
+            mode.bind(stmt, userId, threshold, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    System.out.printf("    %-18s %-7s %-16s rows=%-10s %s%n", column(rs, meta, "table"),
+                            column(rs, meta, "type"), column(rs, meta, "key"), column(rs, meta, "rows"),
+                            column(rs, meta, "Extra"));
+                }
+            }
+        }
+    }
+
+    private static String column(ResultSet rs, ResultSetMetaData meta, String name) throws SQLException {
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (meta.getColumnLabel(i).equalsIgnoreCase(name)) {
+                String value = rs.getString(i);
+                return value == null ? "-" : value;
+            }
+        }
+        return "-";
+    }
+
+    // The same (item, score) pairs in the same order, except that items with tied scores may come back in any
+    // order. A tie cut off by the limit may also keep different items.
+    static boolean sameItems(List<Map.Entry<Integer, Double>> expected, List<Map.Entry<Integer, Double>> actual,
+                             int limit) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        int start = 0;
+        while (start < expected.size()) {
+            double score = expected.get(start).getValue();
+            int end = start + 1;
+            while (end < expected.size() && sameScore(score, expected.get(end).getValue())) {
+                end++;
+            }
+            Set<Integer> expectedItems = new HashSet<>();
+            Set<Integer> actualItems = new HashSet<>();
+            for (int i = start; i < end; i++) {
+                if (!sameScore(score, actual.get(i).getValue())) {
+                    return false;
+                }
+                expectedItems.add(expected.get(i).getKey());
+                actualItems.add(actual.get(i).getKey());
+            }
+            boolean cutOff = end == expected.size() && expected.size() == limit;
+            if (!cutOff && !expectedItems.equals(actualItems)) {
+                return false;
+            }
+            start = end;
+        }
+        return true;
+    }
+
+    // The modes add up the same products in different orders
+    private static boolean sameScore(double a, double b) {
+        return Math.abs(a - b) <= 1e-9 * Math.max(1.0, Math.abs(a));
+    }
+}
@@ -2,6 +2,8 @@ package org.example;
 
 import java.io.*;
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Properties;
 
 public class RatingDataParser {
@@ -17,11 +19,29 @@ public class RatingDataParser {
 
     String inputFile = "/Users/lin99nn/Downloads/dataset/ydata-ymusic-kddcup-2011-track1/testIdx1.txt";
 
+    // With load.parallelism > 1 the file is split into ranges and loaded over that many connections;
+    // load.localInfile=true sends each range with LOAD DATA LOCAL INFILE instead of INSERT batches
+    int parallelism = Integer.parseInt(props.getProperty("load.parallelism", "1"));
+    boolean localInfile = Boolean.parseBoolean(props.getProperty("load.localInfile", "false"));
+    // With recommender.cache.invalidateUrl set, a running RecommendationServer drops the cached results
+    // of every user whose ratings were committed
+    CacheInvalidator invalidator = CacheInvalidator.fromProperties(props);
+    if (parallelism > 1 || localInfile) {
+      parseAndInsertRatingsParallel(inputFile, DB_URL, USER, PASS, parallelism, localInfile, invalidator);
+      if (invalidator != null) {
+        invalidator.flush();
+      }
+      return;
+    }
+
     try (Connection conn = DriverManager.getConnection(DB_URL, USER, PASS)) {
       System.out.println("Database connected.");
 
       // Parse and insert ratings data
-      parseAndInsertRatings(inputFile, conn);
+      parseAndInsertRatings(inputFile, conn, invalidator);
+      if (invalidator != null) {
+        invalidator.flush();
+      }
 
       System.out.println("Data successfully inserted into the database!");
     } catch (SQLException e) {
@@ -55,8 +75,9 @@ public class RatingDataParser {
    *
    * @param inputFile The file containing user ratings data.
    * @param conn The database connection.
+   * @param listener Told about every user in the file once the ratings are committed, or null.
    */
-  private static void parseAndInsertRatings(String inputFile, Connection conn) {
+  static void parseAndInsertRatings(String inputFile, Connection conn, ParallelBulkLoader.RatingListener listener) {
     try (
         BufferedReader reader = new BufferedReader(new FileReader(inputFile));
         PreparedStatement ratingStmt = conn.prepareStatement(
@@ -68,6 +89,8 @@ public class RatingDataParser {
       String line;
       int currentUserId = -1;
       int remainingRatings = 0;
+      int[] users = new int[listener != null ? 64 : 0];
+      int userCount = 0;
 
       while ((line = reader.readLine()) != null) {
         line = line.trim();
@@ -78,6 +101,12 @@ public class RatingDataParser {
           String[] userParts = line.split("\\|");
           currentUserId = Integer.parseInt(userParts[0].trim());
           remainingRatings = Integer.parseInt(userParts[1].trim());
+          if (listener != null) {
+            if (userCount == users.length) {
+              users = Arrays.copyOf(users, userCount * 2);
+            }
+            users[userCount++] = currentUserId;
+          }
         } else if (remainingRatings > 0) {
           handleRatingLine(line, ratingStmt, currentUserId);
           remainingRatings--;
@@ -87,6 +116,40 @@ public class RatingDataParser {
       // Execute batched queries
       ratingStmt.executeBatch();
       conn.commit(); // Commit transaction
+
+      // Only now can readers see the new ratings
+      for (int i = 0; i < userCount; i++) {
+        listener.ratingsChanged(users[i]);
+      }
+    } catch (IOException e) {
+      System.err.println("File reading error: " + e.getMessage());
+    } catch (SQLException e) {
+      System.err.println("Database error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Loads the ratings file over several connections at once, each inserting its own byte range.
+   *
+   * @param inputFile The file containing user ratings data.
+   * @param url The JDBC URL.
+   * @param user The database user.
+   * @param password The database password.
+   * @param parallelism The number of concurrent connections.
+   * @param localInfile Whether to use LOAD DATA LOCAL INFILE, falling back to batches if it is refused.
+   * @param listener Told about the users of every committed batch, or null.
+   */
+  static void parseAndInsertRatingsParallel(String inputFile, String url, String user, String password,
+                                            int parallelism, boolean localInfile,
+                                            ParallelBulkLoader.RatingListener listener) {
+    String jdbcUrl = localInfile ? ParallelBulkLoader.enableLocalInfile(url) : url;
+    ParallelBulkLoader loader = new ParallelBulkLoader(() -> DriverManager.getConnection(jdbcUrl, user, password), parallelism)
+        .setLoadDataLocal(localInfile)
+        .setRatingListener(listener);
+    try {
+      StreamingSimilarityLoader.LoadStats stats =
+          loader.load(ParallelBulkLoader.Table.USER_RATINGS, Collections.singletonList(inputFile));
+      System.out.println("Data successfully inserted into the database: " + stats);
     } catch (IOException e) {
       System.err.println("File reading error: " + e.getMessage());
     } catch (SQLException e) {
@@ -0,0 +1,343 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of recommendation lists in front of a Loader (SQL or InMemoryRecommender).
+ *
+ * Results are kept per (userId, threshold) and each entry remembers the limit it was computed with. A request
+ * is answered from an entry whose limit is at least the requested one (the first limit rows of a top-N list
+ * are the top-limit list), or from a shorter list that already holds every candidate. Otherwise the loader
+ * runs and the larger result replaces the entry. By default the exact threshold is the key, so a cached
+ * answer is always the answer the loader would give. With thresholdBucket &gt; 0 the threshold is rounded up
+ * to a multiple of it before it is passed to the loader, so nearby thresholds share one entry; the result is
+ * then conservative: it only uses neighbours at least as similar as requested, but may miss those between
+ * the requested threshold and the rounded one.
+ *
+ * Entries expire ttlMillis after they were loaded. When more than maxEntries are cached, the least recently
+ * used users are dropped. invalidateUser() must be called after a user's ratings change and invalidateAll()
+ * after item_similarity or user_recommendations was reloaded. RecommendationServer exposes both as
+ * POST /invalidate; RatingDataParser and DatabaseManager call it through a CacheInvalidator once their rows
+ * are committed, when recommender.cache.invalidateUrl is set.
+ *
+ * The cache is split into segments by user, each with its own lock; loads run outside the lock. A load that
+ * overlaps an invalidation in its segment is returned but not cached, so it cannot bring back stale rows.
+ */
+public class RecommendationCache {
+
+    /**
+     * Computes recommendations, e.g. {@code (user, threshold, limit) -> recommender.getRecommendations(...)}.
+     */
+    public interface Loader {
+        List<Map.Entry<Integer, Double>> load(int userId, double similarityThreshold, int limit) throws SQLException;
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final double DEFAULT_THRESHOLD_BUCKET = 0;
+
+    private static final int SEGMENTS = 16;
+
+    private final Loader loader;
+    private final long ttlNanos;
+    private final double thresholdBucket;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param loader Computes the results that are not cached.
+     * @param maxEntries The most (user, threshold bucket) entries to keep.
+     * @param ttlMillis How long an entry may be served after it was loaded.
+     * @param thresholdBucket Thresholds are rounded up to a multiple of this; 0 keys on the exact threshold.
+     */
+    public RecommendationCache(Loader loader, int maxEntries, long ttlMillis, double thresholdBucket) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+        }
+        if (thresholdBucket < 0) {
+            throw new IllegalArgumentException("thresholdBucket must not be negative: " + thresholdBucket);
+        }
+        this.loader = loader;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.thresholdBucket = thresholdBucket;
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Reads recommender.cache.maxEntries, recommender.cache.ttlSeconds and recommender.cache.thresholdBucket.
+     */
+    public static RecommendationCache fromProperties(Properties props, Loader loader) {
+        int maxEntries = Integer.parseInt(props.getProperty("recommender.cache.maxEntries",
+                String.valueOf(DEFAULT_MAX_ENTRIES)));
+        long ttlSeconds = Long.parseLong(props.getProperty("recommender.cache.ttlSeconds",
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(DEFAULT_TTL_MILLIS))));
+        double thresholdBucket = Double.parseDouble(props.getProperty("recommender.cache.thresholdBucket",
+                String.valueOf(DEFAULT_THRESHOLD_BUCKET)));
+        return new RecommendationCache(loader, maxEntries, TimeUnit.SECONDS.toMillis(ttlSeconds), thresholdBucket);
+    }
+
+    /**
+     * Returns up to limit recommendations, from the cache if possible. The returned list is read-only.
+     *
+     * @throws SQLException If the loader fails; nothing is cached then.
+     */
+    public List<Map.Entry<Integer, Double>> getRecommendations(int userId, double similarityThreshold, int limit)
+            throws SQLException {
+        double threshold = bucket(similarityThreshold);
+        Segment segment = segmentFor(userId);
+        long generation;
+        synchronized (segment) {
+            List<Map.Entry<Integer, Double>> cached = segment.lookup(userId, threshold, limit, System.nanoTime());
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            generation = segment.generation;
+        }
+        misses.increment();
+
+        List<Map.Entry<Integer, Double>> loaded = loader.load(userId, threshold, limit);
+        List<Map.Entry<Integer, Double>> result = new ArrayList<>(loaded.size());
+        for (Map.Entry<Integer, Double> entry : loaded) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+        }
+        result = Collections.unmodifiableList(result);
+
+        synchronized (segment) {
+            if (segment.generation == generation) {
+                segment.store(userId, new Entry(threshold, limit, result, System.nanoTime()));
+            }
+        }
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Drops every cached result of the user. Call it after the user's ratings changed and were committed.
+     */
+    public void invalidateUser(int userId) {
+        Segment segment = segmentFor(userId);
+        synchronized (segment) {
+            segment.generation++;
+            UserEntries removed = segment.users.remove(userId);
+            if (removed != null) {
+                segment.size -= removed.entries.size();
+                invalidations.add(removed.entries.size());
+            }
+        }
+    }
+
+    /**
+     * Drops everything, e.g. after item_similarity was refreshed.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.generation++;
+                invalidations.add(segment.size);
+                segment.users.clear();
+                segment.size = 0;
+            }
+        }
+    }
+
+    public Stats getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(), size);
+    }
+
+    double bucket(double threshold) {
+        if (thresholdBucket == 0) {
+            return threshold;
+        }
+        // Rounding up never lets in a neighbour below the requested threshold; the small epsilon keeps
+        // thresholds such as 0.07 in bucket 7 despite 0.07 / 0.01 = 7.000000000000001
+        return Math.min(1.0, Math.ceil(threshold / thresholdBucket - 1e-9) * thresholdBucket);
+    }
+
+    private Segment segmentFor(int userId) {
+        int h = userId * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static class Entry {
+        final double threshold;
+        final int limit;
+        final List<Map.Entry<Integer, Double>> result;
+        final long loadedAtNanos;
+
+        Entry(double threshold, int limit, List<Map.Entry<Integer, Double>> result, long loadedAtNanos) {
+            this.threshold = threshold;
+            this.limit = limit;
+            this.result = result;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+
+        // Fewer rows than the limit means there were no more candidates, so any limit is answered
+        boolean answers(int requestedLimit) {
+            return requestedLimit <= limit || result.size() < limit;
+        }
+    }
+
+    // The entries of one user, one per threshold bucket; users rarely use more than a few thresholds
+    private static class UserEntries {
+        final List<Entry> entries = new ArrayList<>(2);
+
+        int indexOf(double threshold) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).threshold == threshold) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // Guarded by its own monitor
+    private class Segment {
+        // Access order, so iteration starts at the least recently used user
+        final LinkedHashMap<Integer, UserEntries> users = new LinkedHashMap<>(16, 0.75f, true);
+        final int capacity;
+        int size;
+        // Bumped by every invalidation, so loads that overlapped one are not stored
+        long generation;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        List<Map.Entry<Integer, Double>> lookup(int userId, double threshold, int limit, long now) {
+            UserEntries user = users.get(userId);
+            if (user == null) {
+                return null;
+            }
+            int index = user.indexOf(threshold);
+            if (index < 0) {
+                return null;
+            }
+            Entry entry = user.entries.get(index);
+            if (now - entry.loadedAtNanos > ttlNanos) {
+                remove(userId, user, index);
+                expirations.increment();
+                return null;
+            }
+            if (!entry.answers(limit)) {
+                return null;
+            }
+            return entry.result.size() > limit ? entry.result.subList(0, limit) : entry.result;
+        }
+
+        void store(int userId, Entry entry) {
+            UserEntries user = users.get(userId);
+            if (user == null) {
+                user = new UserEntries();
+                users.put(userId, user);
+            }
+            int index = user.indexOf(entry.threshold);
+            if (index < 0) {
+                user.entries.add(entry);
+                size++;
+            } else {
+                Entry existing = user.entries.get(index);
+                // A concurrent load may have stored a larger list in the meantime
+                if (existing.limit <= entry.limit || entry.loadedAtNanos - existing.loadedAtNanos > ttlNanos) {
+                    user.entries.set(index, entry);
+                }
+            }
+
+            Iterator<Map.Entry<Integer, UserEntries>> eldest = users.entrySet().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                UserEntries evicted = eldest.next().getValue();
+                eldest.remove();
+                size -= evicted.entries.size();
+                evictions.add(evicted.entries.size());
+            }
+        }
+
+        private void remove(int userId, UserEntries user, int index) {
+            user.entries.remove(index);
+            size--;
+            if (user.entries.isEmpty()) {
+                users.remove(userId);
+            }
+        }
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+        private final long size;
+
+        Stats(long hits, long misses, long evictions, long expirations, long invalidations, long size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evicted, %d expired, %d invalidated, %d cached",
+                    hits, misses, getHitRate() * 100, evictions, expirations, invalidations, size);
+        }
+    }
+}
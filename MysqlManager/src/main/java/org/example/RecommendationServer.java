@@ -0,0 +1,740 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves recommendations over HTTP with the JDK's built-in HttpServer.
+ *
+ * Endpoints (all responses are JSON):
+ *   GET  /recommend?user=123&threshold=0.5&limit=10
+ *   POST /recommend/batch with a body like [{"user": 123, "threshold": 0.5, "limit": 10}, ...];
+ *        the answers come back in the same order, a failed entry as {"user": 123, "error": "..."}
+ *   GET  /stats
+ *   POST /invalidate?user=123 drops the user's cached results, POST /invalidate with a body like [123, 456]
+ *        drops those users', and POST /invalidate without either drops everything (see CacheInvalidator)
+ *
+ * The HttpServer's dispatcher thread accepts connections and parses requests; every request is then handled
+ * on its own virtual thread when the JVM has them (Java 21+), so thousands of requests waiting on the
+ * database cost no more than their stacks. The executor is looked up by reflection because the module is
+ * compiled for Java 8; older JVMs fall back to a fixed pool of server.threads platform threads.
+ *
+ * Requests go to the engine selected the same way as in RecommendationSystem: recommender.precomputed reads
+ * user_recommendations, recommender.inMemory loads an InMemoryRecommender at start-up, otherwise the
+ * recommender.query SQL runs. Database work borrows from a ConnectionPool of server.poolSize connections,
+ * which also caps how many requests are in MySQL at once; a request that waits longer than
+ * server.poolTimeoutMillis gets 503. With recommender.cache=true a RecommendationCache sits in front of the
+ * engine. The in-memory engine is a snapshot taken at start-up: /invalidate only clears cached results, so
+ * the server must be restarted to see new ratings or similarities.
+ *
+ * Connector/J 8.0 blocks inside synchronized methods, which pins a virtual thread to its carrier; keeping
+ * server.poolSize near the number of cores keeps the carriers free for in-memory and cached requests.
+ */
+public class RecommendationServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final double DEFAULT_THRESHOLD = 0.5;
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 1000;
+    public static final int MAX_BATCH = 1000;
+
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConnectionPool pool;
+    private final RecommendationCache.Loader engine;
+    private final RecommendationCache cache;
+    private final long poolTimeoutMillis;
+    private final boolean virtualThreads;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private RecommendationServer(Properties props) throws IOException, SQLException {
+        String url = props.getProperty("db.url");
+        String user = props.getProperty("db.user");
+        String password = props.getProperty("db.password");
+        // Every setting is read before anything is opened, so a bad value leaks nothing
+        int poolSize = Integer.parseInt(props.getProperty("server.poolSize",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        poolTimeoutMillis = Long.parseLong(props.getProperty("server.poolTimeoutMillis", "2000"));
+        int port = Integer.parseInt(props.getProperty("server.port", String.valueOf(DEFAULT_PORT)));
+        // Connections the kernel queues while the dispatcher is busy; bursts of thousands need more than the default
+        int backlog = Integer.parseInt(props.getProperty("server.backlog", "1024"));
+        int threads = Integer.parseInt(props.getProperty("server.threads", String.valueOf(4 * poolSize)));
+        boolean precomputed = Boolean.parseBoolean(props.getProperty("recommender.precomputed", "false"));
+        boolean inMemory = Boolean.parseBoolean(props.getProperty("recommender.inMemory", "false"));
+        RecommendationSystem.QueryMode mode = precomputed || inMemory ? null : queryMode(props);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("server.threads must be positive: " + threads);
+        }
+
+        pool = new ConnectionPool(() -> DriverManager.getConnection(url, user, password), poolSize);
+        ExecutorService handlers = null;
+        try {
+            if (precomputed) {
+                engine = (userId, threshold, limit) -> withConnection(conn ->
+                        RecommendationSystem.queryPrecomputedRecommendations(conn, userId, limit));
+            } else if (inMemory) {
+                InMemoryRecommender recommender;
+                try (Connection conn = DriverManager.getConnection(url, user, password)) {
+                    recommender = InMemoryRecommender.load(conn);
+                }
+                System.out.printf("Loaded %d items, %d similarity edges, %d users, %d ratings%n",
+                        recommender.getItemCount(), recommender.getEdgeCount(), recommender.getUserCount(),
+                        recommender.getRatingCount());
+                engine = recommender::getRecommendations;
+            } else {
+                engine = (userId, threshold, limit) -> withConnection(conn ->
+                        RecommendationSystem.queryRecommendations(conn, mode, userId, threshold, limit));
+            }
+            cache = Boolean.parseBoolean(props.getProperty("recommender.cache", "false"))
+                    ? RecommendationCache.fromProperties(props, engine) : null;
+
+            ExecutorService virtual = newVirtualThreadExecutor();
+            virtualThreads = virtual != null;
+            handlers = virtualThreads ? virtual : Executors.newFixedThreadPool(threads);
+            server = HttpServer.create(new InetSocketAddress(port), backlog);
+        } catch (IOException | SQLException | RuntimeException e) {
+            if (handlers != null) {
+                handlers.shutdownNow();
+            }
+            pool.close();
+            throw e;
+        }
+        executor = handlers;
+        server.createContext("/recommend", this::handleRecommend);
+        server.createContext("/recommend/batch", this::handleBatch);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/invalidate", this::handleInvalidate);
+        server.setExecutor(executor);
+    }
+
+    // recommender.query as a QueryMode; the message names the setting and the accepted values
+    private static RecommendationSystem.QueryMode queryMode(Properties props) {
+        String name = props.getProperty("recommender.query", "or");
+        try {
+            return RecommendationSystem.QueryMode.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown recommender.query '" + name
+                    + "', expected one of " + Arrays.toString(RecommendationSystem.QueryMode.values()).toLowerCase());
+        }
+    }
+
+    /**
+     * Creates and starts a server configured from db.properties-style properties.
+     *
+     * @throws IllegalArgumentException If a setting is invalid, e.g. an unknown recommender.query.
+     */
+    public static RecommendationServer start(Properties props) throws IOException, SQLException {
+        RecommendationServer server = new RecommendationServer(props);
+        server.server.start();
+        System.out.println("Recommendation server listening on port " + server.getPort() + " using "
+                + (server.virtualThreads ? "virtual threads" : "a fixed thread pool")
+                + (server.cache != null ? ", with result cache" : ""));
+        return server;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.close();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on Java 21+, null before (or on 19/20 without --enable-preview)
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private interface Query {
+        List<Map.Entry<Integer, Double>> run(Connection conn) throws SQLException;
+    }
+
+    // A connection whose query failed is discarded, so the next request does not inherit a broken one
+    private List<Map.Entry<Integer, Double>> withConnection(Query query) throws SQLException {
+        Connection conn = pool.borrow(poolTimeoutMillis, TimeUnit.MILLISECONDS);
+        boolean ok = false;
+        try {
+            List<Map.Entry<Integer, Double>> result = query.run(conn);
+            ok = true;
+            return result;
+        } finally {
+            if (ok) {
+                pool.release(conn);
+            } else {
+                pool.discard(conn);
+            }
+        }
+    }
+
+    private List<Map.Entry<Integer, Double>> recommend(int userId, double threshold, int limit) throws SQLException {
+        requests.increment();
+        try {
+            return cache != null ? cache.getRecommendations(userId, threshold, limit)
+                    : engine.load(userId, threshold, limit);
+        } catch (SQLException | RuntimeException e) {
+            failures.increment();
+            throw e;
+        }
+    }
+
+    private void handleRecommend(HttpExchange exchange) throws IOException {
+        try {
+            if (!"/recommend".equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use GET");
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Request request;
+            try {
+                request = Request.of(params.get("user"), params.get("threshold"), params.get("limit"));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            StringBuilder json = new StringBuilder();
+            try {
+                appendResult(json, request, recommend(request.userId, request.threshold, request.limit));
+            } catch (SQLException e) {
+                sendError(exchange, 503, "Database unavailable: " + e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, "Internal error: " + e);
+                return;
+            }
+            send(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!"/recommend/batch".equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use POST");
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                sendError(exchange, 413, "Request body larger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            List<Object> entries;
+            try {
+                Object parsed = new JsonParser(body).parse();
+                if (!(parsed instanceof List)) {
+                    throw new IllegalArgumentException("Expected a JSON array of requests");
+                }
+                @SuppressWarnings("unchecked")
+                List<Object> list = (List<Object>) parsed;
+                entries = list;
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            if (entries.size() > MAX_BATCH) {
+                sendError(exchange, 413, "At most " + MAX_BATCH + " requests per batch");
+                return;
+            }
+
+            // Answered one after another on this request's thread: the connection pool and the cache already
+            // bound the work, and fanning out on a fixed fallback pool could deadlock it
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < entries.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                Object entry = entries.get(i);
+                Request request;
+                try {
+                    if (!(entry instanceof Map)) {
+                        throw new IllegalArgumentException("Expected an object");
+                    }
+                    Map<?, ?> fields = (Map<?, ?>) entry;
+                    request = Request.of(jsonValue(fields.get("user")), jsonValue(fields.get("threshold")),
+                            jsonValue(fields.get("limit")));
+                } catch (IllegalArgumentException e) {
+                    json.append("{\"error\":");
+                    appendString(json, e.getMessage());
+                    json.append('}');
+                    continue;
+                }
+                try {
+                    appendResult(json, request, recommend(request.userId, request.threshold, request.limit));
+                } catch (SQLException | RuntimeException e) {
+                    json.append("{\"user\":").append(request.userId).append(",\"error\":");
+                    appendString(json, e instanceof SQLException ? "Database unavailable: " + e.getMessage()
+                            : "Internal error: " + e);
+                    json.append('}');
+                }
+            }
+            json.append(']');
+            send(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"requests\":").append(requests.sum())
+                    .append(",\"failures\":").append(failures.sum())
+                    .append(",\"virtualThreads\":").append(virtualThreads);
+            if (cache != null) {
+                RecommendationCache.Stats stats = cache.getStats();
+                json.append(",\"cache\":{\"hits\":").append(stats.getHits())
+                        .append(",\"misses\":").append(stats.getMisses())
+                        .append(",\"hitRate\":").append(stats.getHitRate())
+                        .append(",\"evictions\":").append(stats.getEvictions())
+                        .append(",\"expirations\":").append(stats.getExpirations())
+                        .append(",\"invalidations\":").append(stats.getInvalidations())
+                        .append(",\"size\":").append(stats.getSize()).append('}');
+            }
+            json.append('}');
+            send(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleInvalidate(HttpExchange exchange) throws IOException {
+        try {
+            if (!"/invalidate".equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use POST");
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                sendError(exchange, 413, "Request body larger than " + MAX_BODY_BYTES + " bytes");
+                return;
+            }
+            List<Integer> users = new ArrayList<>();
+            try {
+                String user = parseQuery(exchange.getRequestURI().getRawQuery()).get("user");
+                if (user != null) {
+                    users.add(Integer.parseInt(user));
+                }
+                if (!body.trim().isEmpty()) {
+                    Object parsed = new JsonParser(body).parse();
+                    if (!(parsed instanceof List)) {
+                        throw new IllegalArgumentException("Expected a JSON array of user ids");
+                    }
+                    for (Object id : (List<?>) parsed) {
+                        users.add(Integer.parseInt(jsonValue(id)));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "Invalid user: " + e.getMessage());
+                return;
+            }
+
+            StringBuilder json = new StringBuilder("{\"cache\":").append(cache != null);
+            if (users.isEmpty()) {
+                if (cache != null) {
+                    cache.invalidateAll();
+                }
+                json.append(",\"all\":true}");
+            } else {
+                if (cache != null) {
+                    for (int user : users) {
+                        cache.invalidateUser(user);
+                    }
+                }
+                json.append(",\"users\":").append(users.size()).append('}');
+            }
+            send(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // One validated request; the same rules as the interactive prompts in RecommendationSystem
+    static class Request {
+        final int userId;
+        final double threshold;
+        final int limit;
+
+        private Request(int userId, double threshold, int limit) {
+            this.userId = userId;
+            this.threshold = threshold;
+            this.limit = limit;
+        }
+
+        static Request of(String user, String threshold, String limit) {
+            if (user == null) {
+                throw new IllegalArgumentException("Missing user");
+            }
+            int userId;
+            double t;
+            int l;
+            try {
+                userId = Integer.parseInt(user);
+                t = threshold == null ? DEFAULT_THRESHOLD : Double.parseDouble(threshold);
+                l = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+            }
+            if (userId < 0) {
+                throw new IllegalArgumentException("user must not be negative");
+            }
+            if (!(t > 0 && t <= 1)) {
+                throw new IllegalArgumentException("threshold must be in (0, 1]");
+            }
+            if (l <= 0 || l > MAX_LIMIT) {
+                throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+            }
+            return new Request(userId, t, l);
+        }
+    }
+
+    // JSON numbers arrive as Double; whole numbers are passed on without a ".0" so integer fields parse
+    private static String jsonValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                return String.valueOf((long) d);
+            }
+        }
+        return value.toString();
+    }
+
+    private static void appendResult(StringBuilder json, Request request, List<Map.Entry<Integer, Double>> items) {
+        json.append("{\"user\":").append(request.userId)
+                .append(",\"threshold\":").append(request.threshold)
+                .append(",\"limit\":").append(request.limit)
+                .append(",\"recommendations\":[");
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"item\":").append(items.get(i).getKey())
+                    .append(",\"score\":").append(items.get(i).getValue()).append('}');
+        }
+        json.append("]}");
+    }
+
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        json.append('}');
+        send(exchange, status, json);
+    }
+
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // null if the body is larger than MAX_BODY_BYTES
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    /**
+     * A minimal JSON reader for request bodies: objects become Maps, arrays Lists, numbers Doubles, and
+     * strings, booleans and null their Java counterparts. Objects and arrays may be nested at most MAX_DEPTH
+     * deep; request bodies need two levels, and the limit keeps a body like [[[[... from overflowing the stack.
+     */
+    static class JsonParser {
+        static final int MAX_DEPTH = 16;
+
+        private final String text;
+        private int pos;
+        private int depth;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            Object value = value();
+            skipWhitespace();
+            if (pos != text.length()) {
+                throw error("Unexpected data after the JSON value");
+            }
+            return value;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if (pos == text.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            char c = text.charAt(pos);
+            if ((c == '{' || c == '[') && depth == MAX_DEPTH) {
+                throw error("JSON nested deeper than " + MAX_DEPTH + " levels");
+            }
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new HashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek('}')) {
+                pos++;
+                return object;
+            }
+            depth++;
+            while (true) {
+                skipWhitespace();
+                if (!peek('"')) {
+                    throw error("Expected a field name");
+                }
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                object.put(name, value());
+                skipWhitespace();
+                if (peek(',')) {
+                    pos++;
+                } else {
+                    expect('}');
+                    depth--;
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek(']')) {
+                pos++;
+                return array;
+            }
+            depth++;
+            while (true) {
+                array.add(value());
+                skipWhitespace();
+                if (peek(',')) {
+                    pos++;
+                } else {
+                    expect(']');
+                    depth--;
+                    return array;
+                }
+            }
+        }
+
+        private String string() {
+            StringBuilder s = new StringBuilder();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return s.toString();
+                }
+                if (c != '\\') {
+                    s.append(c);
+                    continue;
+                }
+                if (pos == text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'b': s.append('\b'); break;
+                    case 'f': s.append('\f'); break;
+                    case 'n': s.append('\n'); break;
+                    case 'r': s.append('\r'); break;
+                    case 't': s.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Invalid \\u escape");
+                        }
+                        try {
+                            s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid \\u escape");
+                        }
+                        pos += 4;
+                        break;
+                    default: s.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Double number() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Unexpected character '" + text.charAt(pos) + "'");
+            }
+            try {
+                return Double.valueOf(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number");
+            }
+        }
+
+        private Object literal(String word, Object value) {
+            if (!text.startsWith(word, pos)) {
+                throw error("Unexpected character '" + text.charAt(pos) + "'");
+            }
+            pos += word.length();
+            return value;
+        }
+
+        private boolean peek(char c) {
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Properties props = new Properties();
+        try (InputStream input = RecommendationServer.class.getClassLoader().getResourceAsStream("db.properties")) {
+            if (input == null) {
+                System.out.println("Can't find db.properties file");
+                return;
+            }
+            props.load(input);
+        } catch (IOException e) {
+            System.err.println("Error loading db.properties: " + e.getMessage());
+            return;
+        }
+        serve(props);
+    }
+
+    // Starts the server and stops it cleanly on Ctrl-C; the HttpServer's dispatcher thread keeps the JVM running
+    static void serve(Properties props) throws SQLException {
+        try {
+            RecommendationServer server = start(props);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "recommendation-server-stop"));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not start the server: " + e.getMessage());
+        }
+    }
+}
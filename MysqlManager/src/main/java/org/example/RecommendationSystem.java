@@ -8,42 +8,157 @@ import java.util.Scanner;
 
 public class RecommendationSystem {
 
+  /**
+   * The SQL used to compute recommendations.
+   * OR joins item_similarity on "item1 = item_id OR item2 = item_id", which MySQL cannot answer from an index;
+   * UNION runs one indexed join per orientation of the same table (src/sql/addSimilarityCoveringIndexes.sql).
+   * Both expect one row per pair. SYMMETRIC reads item_similarity_symmetric instead, which holds both
+   * orientations of every pair (load.symmetric=true, src/sql/createSymmetricSimilarityTable.sql), with a single
+   * equality join on its (item1, similarity_score, item2) index. The three return the same rows when the two
+   * tables were loaded from the same ItemSimilarity output.
+   */
+  public enum QueryMode {
+    OR("SELECT similar_item, SUM(similarity_score * user_score) AS recommendation_score " +
+        "FROM ( " +
+        "    SELECT " +
+        "        CASE " +
+        "            WHEN sim.item1 = ur.item_id THEN sim.item2 " +
+        "            WHEN sim.item2 = ur.item_id THEN sim.item1 " +
+        "        END AS similar_item, " +
+        "        sim.similarity_score, " +
+        "        ur.score AS user_score " +
+        "    FROM item_similarity sim " +
+        "    JOIN user_ratings ur " +
+        "        ON sim.item1 = ur.item_id OR sim.item2 = ur.item_id " +
+        "    WHERE ur.user_id = ? AND sim.similarity_score >= ? " +
+        ") AS candidate_items " +
+        "GROUP BY similar_item " +
+        "ORDER BY recommendation_score DESC " +
+        "LIMIT ?;", 1),
+    // The second branch skips pairs of an item with itself, which the OR join also matches only once
+    UNION("SELECT similar_item, SUM(weighted_score) AS recommendation_score " +
+        "FROM ( " +
+        "    SELECT sim.item2 AS similar_item, sim.similarity_score * ur.score AS weighted_score " +
+        "    FROM user_ratings ur " +
+        "    JOIN item_similarity sim ON sim.item1 = ur.item_id AND sim.similarity_score >= ? " +
+        "    WHERE ur.user_id = ? " +
+        "    UNION ALL " +
+        "    SELECT sim.item1 AS similar_item, sim.similarity_score * ur.score AS weighted_score " +
+        "    FROM user_ratings ur " +
+        "    JOIN item_similarity sim ON sim.item2 = ur.item_id AND sim.similarity_score >= ? " +
+        "        AND sim.item1 <> sim.item2 " +
+        "    WHERE ur.user_id = ? " +
+        ") AS candidate_items " +
+        "GROUP BY similar_item " +
+        "ORDER BY recommendation_score DESC " +
+        "LIMIT ?;", 2),
+    SYMMETRIC("SELECT sim.item2 AS similar_item, SUM(sim.similarity_score * ur.score) AS recommendation_score " +
+        "FROM user_ratings ur " +
+        "JOIN item_similarity_symmetric sim ON sim.item1 = ur.item_id AND sim.similarity_score >= ? " +
+        "WHERE ur.user_id = ? " +
+        "GROUP BY sim.item2 " +
+        "ORDER BY recommendation_score DESC " +
+        "LIMIT ?;", 1);
+
+    private final String query;
+    // How many times the (threshold, user) parameters appear
+    private final int branches;
+
+    QueryMode(String query, int branches) {
+      this.query = query;
+      this.branches = branches;
+    }
+
+    public String getQuery() {
+      return query;
+    }
+
+    // Binds the parameters in the order this mode's query uses them
+    void bind(PreparedStatement stmt, int userId, double similarityThreshold, int limit) throws SQLException {
+      int index = 1;
+      for (int i = 0; i < branches; i++) {
+        if (this == OR) {
+          stmt.setInt(index++, userId);
+          stmt.setDouble(index++, similarityThreshold);
+        } else {
+          stmt.setDouble(index++, similarityThreshold);
+          stmt.setInt(index++, userId);
+        }
+      }
+      stmt.setInt(index, limit);
+    }
+  }
+
   public static List<Map.Entry<Integer, Double>> getRecommendations(Connection conn, int userId, double similarityThreshold, int limit) {
-    List<Map.Entry<Integer, Double>> recommendations = new ArrayList<>();
+    return getRecommendations(conn, QueryMode.OR, userId, similarityThreshold, limit);
+  }
 
-    // SQL query to calculate recommendation scores
-    String query =
-        "SELECT similar_item, SUM(similarity_score * user_score) AS recommendation_score " +
-            "FROM ( " +
-            "    SELECT " +
-            "        CASE " +
-            "            WHEN sim.item1 = ur.item_id THEN sim.item2 " +
-            "            WHEN sim.item2 = ur.item_id THEN sim.item1 " +
-            "        END AS similar_item, " +
-            "        sim.similarity_score, " +
-            "        ur.score AS user_score " +
-            "    FROM item_similarity sim " +
-            "    JOIN user_ratings ur " +
-            "        ON sim.item1 = ur.item_id OR sim.item2 = ur.item_id " +
-            "    WHERE ur.user_id = ? AND sim.similarity_score >= ? " +
-            ") AS candidate_items " +
-            "GROUP BY similar_item " +
-            "ORDER BY recommendation_score DESC " +
-            "LIMIT ?;";
+  public static List<Map.Entry<Integer, Double>> getRecommendations(Connection conn, QueryMode mode, int userId,
+                                                                    double similarityThreshold, int limit) {
+    try {
+      return queryRecommendations(conn, mode, userId, similarityThreshold, limit);
+    } catch (SQLException e) {
+      System.err.println("Database query error: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
 
-    try (PreparedStatement stmt = conn.prepareStatement(query)) {
-      stmt.setInt(1, userId);
-      stmt.setDouble(2, similarityThreshold);
-      stmt.setInt(3, limit);
+  /**
+   * Same as getRecommendations but reports errors, so callers such as RecommendationCache do not mistake a
+   * failed query for an empty result.
+   *
+   * @throws SQLException If the query fails.
+   */
+  static List<Map.Entry<Integer, Double>> queryRecommendations(Connection conn, QueryMode mode, int userId,
+                                                               double similarityThreshold, int limit) throws SQLException {
+    List<Map.Entry<Integer, Double>> recommendations = new ArrayList<>();
+
+    try (PreparedStatement stmt = conn.prepareStatement(mode.getQuery())) {
+      mode.bind(stmt, userId, similarityThreshold, limit);
       ResultSet rs = stmt.executeQuery();
       while (rs.next()) {
         int itemId = rs.getInt("similar_item");
         double score = rs.getDouble("recommendation_score");
         recommendations.add(new AbstractMap.SimpleEntry<>(itemId, score));
       }
+    }
+
+    return recommendations;
+  }
 
+  /**
+   * Reads the user's precomputed top-N list from user_recommendations (see DatabaseManager.refreshUserRecommendations).
+   * The similarity threshold was applied when the list was computed; items the user rated are not included.
+   *
+   * @param conn The database connection.
+   * @param userId The user to recommend items to.
+   * @param limit The maximum number of items; at most the N the job was run with.
+   * @return Item IDs and scores, best first.
+   */
+  public static List<Map.Entry<Integer, Double>> getPrecomputedRecommendations(Connection conn, int userId, int limit) {
+    try {
+      return queryPrecomputedRecommendations(conn, userId, limit);
     } catch (SQLException e) {
       System.err.println("Database query error: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  // Same as getPrecomputedRecommendations but reports errors, like queryRecommendations
+  static List<Map.Entry<Integer, Double>> queryPrecomputedRecommendations(Connection conn, int userId, int limit)
+      throws SQLException {
+    List<Map.Entry<Integer, Double>> recommendations = new ArrayList<>();
+
+    // A range read on the (user_id, item_id) primary key; only the user's N rows are sorted
+    String query = "SELECT item_id, score FROM user_recommendations WHERE user_id = ? ORDER BY score DESC LIMIT ?";
+    try (PreparedStatement stmt = conn.prepareStatement(query)) {
+      stmt.setInt(1, userId);
+      stmt.setInt(2, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          recommendations.add(new AbstractMap.SimpleEntry<>(rs.getInt("item_id"), rs.getDouble("score")));
+        }
+      }
     }
 
     return recommendations;
@@ -63,6 +178,16 @@ public class RecommendationSystem {
       return;
     }
 
+    // --serve keeps running and answers HTTP requests instead of prompting once (see RecommendationServer)
+    if (args.length > 0 && "--serve".equals(args[0])) {
+      try {
+        RecommendationServer.serve(props);
+      } catch (SQLException e) {
+        System.err.println("Failed to connect to database: " + e.getMessage());
+      }
+      return;
+    }
+
     String DB_URL = props.getProperty("db.url");
     String USER = props.getProperty("db.user");
     String PASS = props.getProperty("db.password");
@@ -78,8 +203,19 @@ public class RecommendationSystem {
       double similarityThreshold = getSimilarityThreshold(scanner);
       int limit = getRecommendationLimit(scanner);
 
-      // Generate recommendations
-      List<Map.Entry<Integer, Double>> recommendations = getRecommendations(conn, userId, similarityThreshold, limit);
+      // Generate recommendations; recommender.inMemory=true loads both tables once and answers from memory
+      List<Map.Entry<Integer, Double>> recommendations;
+      if (Boolean.parseBoolean(props.getProperty("recommender.precomputed", "false"))) {
+        // recommender.precomputed=true reads the nightly top-N list; the threshold was fixed when it was computed
+        recommendations = getPrecomputedRecommendations(conn, userId, limit);
+      } else if (Boolean.parseBoolean(props.getProperty("recommender.inMemory", "false"))) {
+        InMemoryRecommender recommender = InMemoryRecommender.load(conn);
+        recommendations = recommender.getRecommendations(userId, similarityThreshold, limit);
+      } else {
+        // recommender.query selects the SQL: or (default), union or symmetric
+        QueryMode mode = QueryMode.valueOf(props.getProperty("recommender.query", "or").toUpperCase());
+        recommendations = getRecommendations(conn, mode, userId, similarityThreshold, limit);
+      }
 
       System.out.println("\n✨ Hang tight! We're fetching your recommendations...");
       // Print recommendations
@@ -0,0 +1,215 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses one "(itemA, itemB)\tsimilarity" line of the ItemSimilarity output in place, without creating Strings.
+ * The Hadoop jobs in As1 carry the same parser (org.apache.hadoop.examples.SimilarityLineParser); the two modules
+ * do not share a dependency, so the SimilarityLineParserTest of both modules reads the same
+ * testdata/similarity-lines.txt and fails if the copies stop agreeing.
+ * A parser instance is reusable and counts the lines it accepted and rejected.
+ */
+public class SimilarityLineParser {
+
+    // 10^0 .. 10^22 are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private int itemA;
+    private int itemB;
+    private double similarity;
+
+    private long parsedLines;
+    private long malformedLines;
+
+    private byte[] bytes;
+    private int pos;
+    private int end;
+
+    public int getItemA() {
+        return itemA;
+    }
+
+    public int getItemB() {
+        return itemB;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public long getParsedLines() {
+        return parsedLines;
+    }
+
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    /**
+     * Parses bytes[start, start + length) and updates the line counters.
+     *
+     * @return true if the line is well formed; the values are then available from the getters.
+     */
+    public boolean parse(byte[] bytes, int start, int length) {
+        if (parseLine(bytes, start, length)) {
+            parsedLines++;
+            return true;
+        }
+        malformedLines++;
+        return false;
+    }
+
+    private boolean parseLine(byte[] bytes, int start, int length) {
+        this.bytes = bytes;
+        this.pos = start;
+        this.end = start + length;
+        try {
+            skipWhitespace();
+            if (!expect('(')) return false;
+            skipWhitespace();
+            itemA = parseInt();
+            skipWhitespace();
+            if (!expect(',')) return false;
+            skipWhitespace();
+            itemB = parseInt();
+            skipWhitespace();
+            if (!expect(')')) return false;
+            int beforeSeparator = pos;
+            skipWhitespace();
+            if (pos == beforeSeparator) return false;  // at least one blank before the similarity
+            similarity = parseDouble();
+            skipWhitespace();
+            return pos == end;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            this.bytes = null;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\r' || bytes[pos] == '\n')) {
+            pos++;
+        }
+    }
+
+    private boolean expect(char c) {
+        if (pos < end && bytes[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private int parseInt() {
+        boolean negative = expect('-');
+        int start = pos;
+        long value = 0;
+        while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+            value = value * 10 + (bytes[pos++] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("int overflow");
+            }
+        }
+        if (pos == start) {
+            throw new NumberFormatException("missing digits");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("int overflow");
+        }
+        return (int) value;
+    }
+
+    // The similarity runs up to the next blank
+    private double parseDouble() {
+        int start = pos;
+        while (pos < end && bytes[pos] != ' ' && bytes[pos] != '\t' && bytes[pos] != '\r' && bytes[pos] != '\n') {
+            pos++;
+        }
+        return parseDouble(bytes, start, pos);
+    }
+
+    /**
+     * Parses bytes[start, end) as a decimal number [-|+]digits[.digits][(e|E)[+-]digits] without creating a String.
+     * With at most 2^53 as the digit value and a decimal exponent of at most 22, a single multiplication or
+     * division is correctly rounded (the same result as Double.parseDouble); anything else, e.g. 17 significant
+     * digits, falls back to Double.parseDouble. ParallelBulkLoader parses the recommendation scores with it too.
+     *
+     * @throws NumberFormatException If the range is not exactly one such number.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        int pos = start;
+        boolean negative = pos < end && bytes[pos] == '-';
+        if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean overflow = false;
+        int intStart = pos;
+        while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+            if (mantissa < 100000000000000000L) {
+                mantissa = mantissa * 10 + (bytes[pos] - '0');
+            } else {
+                overflow = true;
+                exponent++;
+            }
+            pos++;
+        }
+        digits += pos - intStart;
+        if (pos < end && bytes[pos] == '.') {
+            pos++;
+            int fractionStart = pos;
+            while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                if (mantissa < 100000000000000000L) {
+                    mantissa = mantissa * 10 + (bytes[pos] - '0');
+                    exponent--;
+                } else {
+                    overflow = true;
+                }
+                pos++;
+            }
+            digits += pos - fractionStart;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("missing digits");
+        }
+        if (pos < end && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = pos < end && bytes[pos] == '-';
+            if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+                pos++;
+            }
+            int expStart = pos;
+            int value = 0;
+            while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                if (value < 10000) {
+                    value = value * 10 + (bytes[pos] - '0');
+                }
+                pos++;
+            }
+            if (pos == expStart) {
+                throw new NumberFormatException("missing exponent");
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (pos != end) {
+            throw new NumberFormatException("unexpected character after the number");
+        }
+
+        if (!overflow && mantissa <= (1L << 53) && Math.abs(exponent) <= 22) {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,214 @@
+package org.example;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Loads an ItemSimilarity output file into item_similarity without holding the whole file in memory.
+ *
+ * A reader thread parses the file into fixed-size chunks and hands them to the inserting thread through
+ * a bounded queue. Chunks are recycled through a second queue, so memory use is queueCapacity * flushSize
+ * rows no matter how large the file is. Each chunk is sent as one JDBC batch and the transaction is
+ * committed every commitInterval rows, so no single transaction holds its locks for long.
+ *
+ * With MySQL, add rewriteBatchedStatements=true to db.url so each batch is sent as multi-row INSERTs.
+ */
+public class StreamingSimilarityLoader {
+
+    public static final int DEFAULT_FLUSH_SIZE = 5000;
+    public static final int DEFAULT_COMMIT_INTERVAL = 50000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    static final String INSERT_SQL = "INSERT INTO item_similarity (item1, item2, similarity_score) VALUES (?, ?, ?)";
+
+    // Print progress at most this often
+    private static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final int flushSize;
+    private final int commitInterval;
+    private final int queueCapacity;
+
+    public StreamingSimilarityLoader() {
+        this(DEFAULT_FLUSH_SIZE, DEFAULT_COMMIT_INTERVAL, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public StreamingSimilarityLoader(int flushSize, int commitInterval, int queueCapacity) {
+        if (flushSize <= 0 || commitInterval <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("flushSize, commitInterval and queueCapacity must be positive");
+        }
+        this.flushSize = flushSize;
+        this.commitInterval = commitInterval;
+        this.queueCapacity = queueCapacity;
+    }
+
+    // A block of parsed rows in primitive arrays
+    static class Chunk {
+        int[] item1;
+        int[] item2;
+        double[] score;
+        int size;
+
+        Chunk(int capacity) {
+            item1 = new int[capacity];
+            item2 = new int[capacity];
+            score = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == item1.length;
+        }
+
+        // For inputs where one line holds a variable number of rows, e.g. a user's recommendation list
+        void grow() {
+            int capacity = Math.max(16, item1.length * 2);
+            item1 = Arrays.copyOf(item1, capacity);
+            item2 = Arrays.copyOf(item2, capacity);
+            score = Arrays.copyOf(score, capacity);
+        }
+    }
+
+    // Marks the end of the file on the filled queue
+    private static final Chunk END = new Chunk(0);
+
+    public static class LoadStats {
+        private final long rows;
+        private final long malformedLines;
+        private final long elapsedMillis;
+
+        LoadStats(long rows, long malformedLines, long elapsedMillis) {
+            this.rows = rows;
+            this.malformedLines = malformedLines;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getMalformedLines() {
+            return malformedLines;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows in %.1f s (%.0f rows/s), %d malformed lines",
+                    rows, elapsedMillis / 1000.0, getRowsPerSecond(), malformedLines);
+        }
+    }
+
+    /**
+     * Streams the file into item_similarity using the given connection.
+     *
+     * @param filePath The ItemSimilarity output file.
+     * @param conn The database connection; auto-commit is turned off while loading and restored afterwards.
+     * @return The number of rows inserted, malformed lines skipped and the throughput.
+     * @throws IOException If the file cannot be read.
+     * @throws SQLException If an insert or commit fails; rows committed before the failure stay in the table.
+     */
+    public LoadStats load(String filePath, Connection conn) throws IOException, SQLException {
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(queueCapacity + 1);
+        BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(queueCapacity + 1);
+        for (int i = 0; i < queueCapacity; i++) {
+            free.add(new Chunk(flushSize));
+        }
+
+        SimilarityLineParser parser = new SimilarityLineParser();
+        Throwable[] readError = new Throwable[1];
+        Thread reader = new Thread(() -> {
+            try {
+                Chunk[] current = {free.take()};
+                DatabaseManager.forEachRecord(filePath, parser, (itemA, itemB, similarity) -> {
+                    Chunk chunk = current[0];
+                    chunk.item1[chunk.size] = itemA;
+                    chunk.item2[chunk.size] = itemB;
+                    chunk.score[chunk.size] = similarity;
+                    chunk.size++;
+                    if (chunk.isFull()) {
+                        filled.put(chunk);
+                        current[0] = free.take();
+                    }
+                });
+                if (current[0].size > 0) {
+                    filled.put(current[0]);
+                }
+            } catch (InterruptedException e) {
+                // The inserting thread gave up; nobody is waiting for more chunks
+                return;
+            } catch (Throwable t) {
+                readError[0] = t;
+            }
+            filled.offer(END);
+        }, "similarity-reader");
+        reader.setDaemon(true);
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        long rows = 0;
+        long uncommitted = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        reader.start();
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+            while (true) {
+                Chunk chunk = filled.take();
+                if (chunk == END) {
+                    break;
+                }
+                for (int i = 0; i < chunk.size; i++) {
+                    pstmt.setInt(1, chunk.item1[i]);
+                    pstmt.setInt(2, chunk.item2[i]);
+                    pstmt.setDouble(3, chunk.score[i]);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                rows += chunk.size;
+                uncommitted += chunk.size;
+                chunk.size = 0;
+                free.put(chunk);
+
+                if (uncommitted >= commitInterval) {
+                    conn.commit();
+                    uncommitted = 0;
+                }
+                long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+                    System.out.printf("Loaded %d rows (%.0f rows/s)%n", rows, rows * 1e9 / (now - start));
+                    lastReport = now;
+                }
+            }
+            if (readError[0] != null) {
+                conn.rollback();
+                if (readError[0] instanceof IOException) {
+                    throw (IOException) readError[0];
+                }
+                throw new IOException("Error reading " + filePath, readError[0]);
+            }
+            conn.commit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading " + filePath, e);
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            reader.interrupt();
+            conn.setAutoCommit(autoCommit);
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new LoadStats(rows, parser.getMalformedLines(), elapsedMillis);
+    }
+}
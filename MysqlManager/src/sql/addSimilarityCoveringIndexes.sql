@@ -0,0 +1,6 @@
+-- Covering indexes for RecommendationSystem's "union" mode on the original layout,
+-- where every pair is stored once: one index per orientation of the UNION ALL.
+DROP INDEX idx_item_id ON item_similarity;
+
+CREATE INDEX idx_item1_score ON item_similarity (item1, similarity_score, item2);
+CREATE INDEX idx_item2_score ON item_similarity (item2, similarity_score, item1);
@@ -0,0 +1,15 @@
+-- Every similarity pair in both orientations, (item1, item2) and (item2, item1); a pair of an item with itself
+-- once. Loaded with load.symmetric=true and read only by RecommendationSystem's "symmetric" mode.
+-- It is a separate table: item_similarity keeps one row per pair for the "or" and "union" modes and
+-- InMemoryRecommender, which would count every pair twice if both orientations were stored there.
+DROP TABLE IF EXISTS item_similarity_symmetric;
+
+CREATE TABLE item_similarity_symmetric (
+                                 item1 INT NOT NULL,
+                                 item2 INT NOT NULL,
+                                 similarity_score DOUBLE NOT NULL,
+                                 PRIMARY KEY (item1, item2)
+);
+
+-- Covers "item1 = ? AND similarity_score >= ?" and returns item2 without touching the table rows
+CREATE INDEX idx_item_score ON item_similarity_symmetric (item1, similarity_score, item2);
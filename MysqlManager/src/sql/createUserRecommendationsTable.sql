@@ -0,0 +1,10 @@
+-- Per-user top-N recommendations precomputed by As1's UserRecommendations job and loaded with
+-- load.recommendations. Reading a user's list is a range read on the primary key prefix.
+DROP TABLE IF EXISTS user_recommendations;
+
+CREATE TABLE user_recommendations (
+                                      user_id INT NOT NULL,        -- The user the item is recommended to
+                                      item_id INT NOT NULL,        -- A recommended item the user has not rated
+                                      score DOUBLE NOT NULL,       -- Sum of similarity * rating over the user's rated items
+                                      PRIMARY KEY (user_id, item_id)
+);
@@ -0,0 +1,202 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares InMemoryRecommender with a row-by-row evaluation of the QueryMode.OR query: the join on
+ * "item1 = item_id OR item2 = item_id", the CASE picking the other item, the threshold, GROUP BY and
+ * ORDER BY score. Ties, which MySQL leaves in no particular order, are broken by item id as the recommender does.
+ * Similarities are multiples of 1/64 so that storing them as floats changes nothing.
+ */
+public class InMemoryRecommenderTest {
+
+    private static class Similarity {
+        final int item1;
+        final int item2;
+        final double score;
+
+        Similarity(int item1, int item2, double score) {
+            this.item1 = item1;
+            this.item2 = item2;
+            this.score = score;
+        }
+    }
+
+    private final List<Similarity> similarities = new ArrayList<>();
+    // user -> (item -> score), users in ascending order
+    private final Map<Integer, Map<Integer, Integer>> ratings = new TreeMap<>();
+
+    private void similarity(int item1, int item2, double score) {
+        similarities.add(new Similarity(item1, item2, score));
+    }
+
+    private void rating(int user, int item, int score) {
+        ratings.computeIfAbsent(user, u -> new TreeMap<>()).put(item, score);
+    }
+
+    private InMemoryRecommender build() {
+        InMemoryRecommender.Builder builder = new InMemoryRecommender.Builder();
+        for (Similarity s : similarities) {
+            builder.addSimilarity(s.item1, s.item2, s.score);
+        }
+        for (Map.Entry<Integer, Map<Integer, Integer>> user : ratings.entrySet()) {
+            for (Map.Entry<Integer, Integer> rating : user.getValue().entrySet()) {
+                builder.addRating(user.getKey(), rating.getKey(), rating.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private List<String> orQuery(int userId, double threshold, int limit) {
+        Map<Integer, Double> sums = new HashMap<>();
+        Map<Integer, Integer> rated = ratings.getOrDefault(userId, new HashMap<>());
+        for (Map.Entry<Integer, Integer> rating : rated.entrySet()) {
+            int itemId = rating.getKey();
+            for (Similarity sim : similarities) {
+                if ((sim.item1 != itemId && sim.item2 != itemId) || sim.score < threshold) {
+                    continue;
+                }
+                int similarItem = sim.item1 == itemId ? sim.item2 : sim.item1;
+                sums.merge(similarItem, sim.score * rating.getValue(), Double::sum);
+            }
+        }
+        List<Map.Entry<Integer, Double>> rows = new ArrayList<>(sums.entrySet());
+        // Numeric comparison as in SQL: -0.0 and 0.0 are the same score
+        rows.sort((a, b) -> (double) a.getValue() == b.getValue()
+                ? Integer.compare(a.getKey(), b.getKey()) : a.getValue() < b.getValue() ? 1 : -1);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, rows.size()); i++) {
+            result.add(rows.get(i).getKey() + "=" + rows.get(i).getValue());
+        }
+        return result;
+    }
+
+    private static List<String> format(List<Map.Entry<Integer, Double>> recommendations) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<Integer, Double> entry : recommendations) {
+            result.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return result;
+    }
+
+    private void checkAll(InMemoryRecommender recommender, double[] thresholds, int[] limits) {
+        for (int userId : ratings.keySet()) {
+            for (double threshold : thresholds) {
+                for (int limit : limits) {
+                    assertEquals("user " + userId + ", threshold " + threshold + ", limit " + limit,
+                            orQuery(userId, threshold, limit),
+                            format(recommender.getRecommendations(userId, threshold, limit)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesOrQueryOnRandomData() {
+        Random random = new Random(21);
+        for (int i = 0; i < 2000; i++) {
+            // Both orientations and repeated pairs occur; the OR query counts every row whichever way round it is
+            similarity(random.nextInt(150), random.nextInt(150), (random.nextInt(129) - 64) / 64.0);
+        }
+        for (int user = 0; user < 60; user++) {
+            int count = 1 + random.nextInt(15);
+            for (int i = 0; i < count; i++) {
+                // Items up to 180 include some without any similarity
+                rating(user * 3, random.nextInt(180), random.nextInt(101));
+            }
+        }
+        checkAll(build(), new double[] {-1.0, 0.0, 0.25, 0.5, 0.984375}, new int[] {1, 5, 10, 1000});
+    }
+
+    @Test
+    public void selfPairsCountOnce() {
+        // The OR join matches (5, 5) once per rating of item 5: the CASE yields item 5 itself
+        similarity(5, 5, 0.5);
+        similarity(5, 6, 0.25);
+        similarity(6, 5, 0.25);
+        rating(1, 5, 10);
+        rating(1, 6, 4);
+        InMemoryRecommender recommender = build();
+        checkAll(recommender, new double[] {0.0, 0.5}, new int[] {10});
+        // 5: 0.5 * 10 + 0.25 * 4 twice; 6: 0.25 * 10 twice
+        assertEquals("[5=7.0, 6=5.0]", format(recommender.getRecommendations(1, 0.0, 10)).toString());
+    }
+
+    @Test
+    public void ratedItemsAreNotExcluded() {
+        similarity(1, 2, 0.5);
+        rating(7, 1, 10);
+        rating(7, 2, 10);
+        assertEquals("[1=5.0, 2=5.0]", format(build().getRecommendations(7, 0.5, 10)).toString());
+    }
+
+    @Test
+    public void tiesBrokenByItemIdAtTheLimit() {
+        for (int item = 20; item > 10; item--) {
+            similarity(1, item, 0.5);
+        }
+        rating(3, 1, 2);
+        InMemoryRecommender recommender = build();
+        checkAll(recommender, new double[] {0.5}, new int[] {1, 3, 10});
+        assertEquals("[11=1.0, 12=1.0, 13=1.0]", format(recommender.getRecommendations(3, 0.5, 3)).toString());
+    }
+
+    @Test
+    public void thresholdIsInclusive() {
+        similarity(1, 2, 0.75);
+        similarity(1, 3, 0.734375);
+        rating(1, 1, 1);
+        InMemoryRecommender recommender = build();
+        assertEquals("[2=0.75]", format(recommender.getRecommendations(1, 0.75, 10)).toString());
+        checkAll(recommender, new double[] {0.734375, 0.75, 0.76}, new int[] {10});
+    }
+
+    @Test
+    public void unknownUserAndEmptyLimit() {
+        similarity(1, 2, 0.5);
+        rating(1, 1, 10);
+        InMemoryRecommender recommender = build();
+        assertTrue(recommender.getRecommendations(2, 0.0, 10).isEmpty());
+        assertTrue(recommender.getRecommendations(1, 0.0, 0).isEmpty());
+        assertTrue(recommender.getRecommendations(1, 0.75, 10).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ratingsMustBeGroupedByUser() {
+        InMemoryRecommender.Builder builder = new InMemoryRecommender.Builder();
+        builder.addRating(2, 1, 10);
+        builder.addRating(1, 1, 10);
+    }
+
+    @Test
+    public void scoresFromZeroToHundred() {
+        similarity(1, 2, 0.5);
+        similarity(3, 4, 0.5);
+        rating(1, 1, 100);
+        rating(1, 3, 0);
+        assertEquals("[2=50.0, 4=0.0]", format(build().getRecommendations(1, 0.0, 10)).toString());
+    }
+
+    @Test
+    public void scoresOutsideTheRangeAreRejected() {
+        for (int score : new int[] {-1, 101, 255, 256}) {
+            try {
+                new InMemoryRecommender.Builder().addRating(1, 1, score);
+                fail("accepted score " + score);
+            } catch (IllegalArgumentException expected) {
+                // Would otherwise wrap around in the byte it is stored in
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.example;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Split ownership in ParallelBulkLoader: whatever the split size, reading every split of a file must see each line
+ * (or user block) exactly once, as reading the whole file in one split does. An interrupted load must not return
+ * before its workers have stopped.
+ */
+public class ParallelBulkLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static List<ParallelBulkLoader.Split> splits(File file, long splitSize) throws IOException {
+        return ParallelBulkLoader.planSplits(Arrays.asList(file.getPath()), splitSize);
+    }
+
+    /** The lines a split owns under the "starts before the split's end" rule, as "offset:text". */
+    private static List<String> ownedLines(ParallelBulkLoader.Split split)
+            throws IOException, SQLException, InterruptedException {
+        List<String> lines = new ArrayList<>();
+        ParallelBulkLoader.forEachLine(split, (buffer, start, length, offset) -> {
+            if (offset >= split.end) {
+                return false;
+            }
+            lines.add(offset + ":" + new String(buffer, start, length, StandardCharsets.US_ASCII));
+            return true;
+        });
+        return lines;
+    }
+
+    private static List<String> expectedLines(String content) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= content.length(); i++) {
+            if (i == content.length() ? i > start : content.charAt(i) == '\n') {
+                lines.add(start + ":" + content.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private void checkEverySplitSize(String content) throws Exception {
+        File file = write("lines" + content.hashCode() + ".txt", content);
+        List<String> expected = expectedLines(content);
+        for (long splitSize = 1; splitSize <= content.length() + 1; splitSize++) {
+            List<String> lines = new ArrayList<>();
+            for (ParallelBulkLoader.Split split : splits(file, splitSize)) {
+                lines.addAll(ownedLines(split));
+            }
+            assertEquals("split size " + splitSize, expected, lines);
+        }
+    }
+
+    @Test
+    public void everyLineOnceForEverySplitSize() throws Exception {
+        checkEverySplitSize("(1, 2)\t0.5\n(3, 4)\t0.25\n\n(5, 6)\t-0.125\n");
+        // No trailing newline, blank lines at the start, CRLF endings
+        checkEverySplitSize("\n\nab\r\ncd\r\n\r\nefg");
+        checkEverySplitSize("x");
+    }
+
+    @Test
+    public void randomLinesForEverySplitSize() throws Exception {
+        Random random = new Random(18);
+        for (int trial = 0; trial < 5; trial++) {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                int length = random.nextInt(6);
+                for (int j = 0; j < length; j++) {
+                    content.append((char) ('a' + random.nextInt(26)));
+                }
+                content.append('\n');
+            }
+            if (random.nextBoolean()) {
+                content.setLength(content.length() - 1);
+            }
+            checkEverySplitSize(content.toString());
+        }
+    }
+
+    @Test
+    public void linesLongerThanTheReadBuffer() throws Exception {
+        // Longer than forEachLine's 64 KB buffer, with split boundaries inside them
+        char[] longLine = new char[150 * 1024];
+        Arrays.fill(longLine, 'z');
+        String content = "a\n" + new String(longLine) + "\nb\n" + new String(longLine, 0, 70 * 1024);
+        File file = write("long.txt", content);
+        List<String> expected = expectedLines(content);
+        for (long splitSize : new long[] {1000, 64 * 1024, 100 * 1024, content.length()}) {
+            List<String> lines = new ArrayList<>();
+            for (ParallelBulkLoader.Split split : splits(file, splitSize)) {
+                lines.addAll(ownedLines(split));
+            }
+            assertEquals("split size " + splitSize, expected, lines);
+        }
+    }
+
+    /** Runs a parser over every split and returns the rows it produced, as "item1,item2,score". */
+    private static List<String> parseAll(File file, long splitSize, Supplier<ParallelBulkLoader.LineParser> parsers,
+                                         long[] malformed) throws Exception {
+        List<String> rows = new ArrayList<>();
+        malformed[0] = 0;
+        for (ParallelBulkLoader.Split split : splits(file, splitSize)) {
+            ParallelBulkLoader.LineParser parser = parsers.get();
+            StreamingSimilarityLoader.Chunk chunk = new StreamingSimilarityLoader.Chunk(4);
+            ParallelBulkLoader.forEachLine(split, (buffer, start, length, offset) ->
+                    parser.parseLine(buffer, start, length, offset, split.end, chunk));
+            for (int i = 0; i < chunk.size; i++) {
+                rows.add(chunk.item1[i] + "," + chunk.item2[i] + "," + chunk.score[i]);
+            }
+            malformed[0] += parser.getMalformedLines();
+        }
+        return rows;
+    }
+
+    private void checkParser(String content, Supplier<ParallelBulkLoader.LineParser> parsers, List<String> expected,
+                             long expectedMalformed) throws Exception {
+        File file = write("input" + content.hashCode() + ".txt", content);
+        long[] malformed = new long[1];
+        for (long splitSize = 1; splitSize <= content.length(); splitSize++) {
+            assertEquals("split size " + splitSize, expected, parseAll(file, splitSize, parsers, malformed));
+            assertEquals("split size " + splitSize, expectedMalformed, malformed[0]);
+        }
+    }
+
+    @Test
+    public void similarityRowsOnceForEverySplitSize() throws Exception {
+        checkParser("(1, 2)\t0.5\n(3, 4)\t0.25\nbroken\n\n(5, 6)\t-0.125",
+                () -> new ParallelBulkLoader.SimilarityParser(true),
+                Arrays.asList("1,2,0.5", "2,1,0.5", "3,4,0.25", "4,3,0.25", "5,6,-0.125", "6,5,-0.125"), 1);
+    }
+
+    @Test
+    public void ratingBlocksOnceForEverySplitSize() throws Exception {
+        // A block belongs to the split its header starts in, even when its rating lines are in the next split
+        checkParser("7|2\n10\t90\n11\t80\n8|0\n9|3\n12\t70\n\nx\t1\n13\t60\n",
+                ParallelBulkLoader.RatingParser::new,
+                Arrays.asList("7,10,90.0", "7,11,80.0", "9,12,70.0", "9,13,60.0"), 1);
+    }
+
+    @Test
+    public void recommendationLinesOnceForEverySplitSize() throws Exception {
+        checkParser("1\t10:0.5,11:0.25\n2\t12:oops\n3\t13:1.0\n4\t14: 1.5E-3 ,15:0.30000000000000004\r\n"
+                        + "5\t16:0.5x\n6\t17:-2\n",
+                ParallelBulkLoader.RecommendationParser::new,
+                Arrays.asList("1,10,0.5", "1,11,0.25", "3,13,1.0", "4,14,0.0015", "4,15,0.30000000000000004",
+                        "6,17,-2.0"), 2);
+    }
+
+    @Test
+    public void planSplitsReadsPartFilesInOrder() throws IOException {
+        File dir = folder.newFolder("output");
+        Files.write(new File(dir, "part-r-00001").toPath(), new byte[10]);
+        Files.write(new File(dir, "part-r-00000").toPath(), new byte[25]);
+        Files.write(new File(dir, "_SUCCESS").toPath(), new byte[0]);
+        List<ParallelBulkLoader.Split> splits = ParallelBulkLoader.planSplits(Arrays.asList(dir.getPath()), 10);
+        List<String> described = new ArrayList<>();
+        for (ParallelBulkLoader.Split split : splits) {
+            described.add(split.file.getName() + ":" + split.start + "-" + split.end);
+        }
+        assertEquals(Arrays.asList("part-r-00000:0-10", "part-r-00000:10-20", "part-r-00000:20-25",
+                "part-r-00001:0-10"), described);
+        try {
+            ParallelBulkLoader.planSplits(Arrays.asList(new File(dir, "missing").getPath()), 10);
+            fail("missing input accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Input not found"));
+        }
+    }
+
+    @Test
+    public void interruptedLoadWaitsForItsWorkers() throws Exception {
+        File file = write("similarity.txt", "(1, 2)\t0.5\n(1, 3)\t0.25\n(2, 3)\t0.75\n");
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        CountDownLatch finishBatch = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        // A driver that, like most, ignores interrupts while a statement runs
+        InvocationHandler statement = (proxy, method, args) -> {
+            if (method.getName().equals("executeBatch")) {
+                batches.incrementAndGet();
+                batchStarted.countDown();
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        finishBatch.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return new int[0];
+            }
+            return null;
+        };
+        InvocationHandler connection = (proxy, method, args) -> method.getName().equals("prepareStatement")
+                ? Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, statement)
+                : null;
+        ParallelBulkLoader loader = new ParallelBulkLoader(() -> (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{Connection.class}, connection), 1).setBatchSize(1);
+
+        AtomicReference<Exception> error = new AtomicReference<>();
+        AtomicBoolean interruptKept = new AtomicBoolean();
+        Thread caller = new Thread(() -> {
+            try {
+                loader.load(ParallelBulkLoader.Table.ITEM_SIMILARITY, Arrays.asList(file.getPath()));
+            } catch (Exception e) {
+                error.set(e);
+            }
+            interruptKept.set(Thread.currentThread().isInterrupted());
+        });
+        caller.start();
+        batchStarted.await();
+        caller.interrupt();
+        caller.join(200);
+        assertTrue("load returned while a worker was still inserting", caller.isAlive());
+        finishBatch.countDown();
+        caller.join();
+        assertTrue(error.get() instanceof SQLException);
+        assertTrue(interruptKept.get());
+        assertEquals("no batch after the interrupt", 1, batches.get());
+    }
+}
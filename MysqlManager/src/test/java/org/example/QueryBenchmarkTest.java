@@ -0,0 +1,50 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryBenchmarkTest {
+
+    /** {item, score, item, score, ...} */
+    private static List<Map.Entry<Integer, Double>> rows(double... itemsAndScores) {
+        List<Map.Entry<Integer, Double>> rows = new ArrayList<>();
+        for (int i = 0; i < itemsAndScores.length; i += 2) {
+            rows.add(new AbstractMap.SimpleEntry<>((int) itemsAndScores[i], itemsAndScores[i + 1]));
+        }
+        return rows;
+    }
+
+    @Test
+    public void comparesItemsNotJustScores() {
+        assertTrue(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 1.0), rows(1, 3.0, 2, 2.0, 3, 1.0), 10));
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 1.0), rows(1, 3.0, 4, 2.0, 3, 1.0), 10));
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0), rows(2, 3.0, 1, 2.0), 10));
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0), rows(1, 3.0, 2, 2.5), 10));
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0), rows(1, 3.0), 10));
+    }
+
+    @Test
+    public void tiedScoresMayComeBackInAnyOrder() {
+        assertTrue(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 2.0, 4, 1.0),
+                rows(1, 3.0, 3, 2.0, 2, 2.0, 4, 1.0), 10));
+        // Summing in a different order may change the last bits
+        assertTrue(QueryBenchmark.sameItems(rows(1, 0.3), rows(1, 0.1 + 0.2), 10));
+        // Only within the tie
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 2.0, 4, 1.0),
+                rows(2, 3.0, 1, 2.0, 3, 2.0, 4, 1.0), 10));
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 2.0), rows(1, 3.0, 2, 2.0, 5, 2.0), 10));
+    }
+
+    @Test
+    public void tieCutOffByTheLimitMayKeepOtherItems() {
+        assertTrue(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 2.0), rows(1, 3.0, 2, 2.0, 5, 2.0), 3));
+        assertFalse(QueryBenchmark.sameItems(rows(1, 3.0, 2, 2.0, 3, 2.0), rows(5, 3.0, 2, 2.0, 3, 2.0), 3));
+    }
+}
@@ -0,0 +1,214 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecommendationCacheTest {
+
+    /** Returns items 1..min(limit, available) with descending scores and records every call. */
+    private static class CountingLoader implements RecommendationCache.Loader {
+        int available = 100;
+        int calls;
+        double lastThreshold;
+        int lastLimit;
+        Runnable during;
+
+        @Override
+        public List<Map.Entry<Integer, Double>> load(int userId, double similarityThreshold, int limit) {
+            calls++;
+            lastThreshold = similarityThreshold;
+            lastLimit = limit;
+            if (during != null) {
+                during.run();
+            }
+            List<Map.Entry<Integer, Double>> result = new ArrayList<>();
+            for (int i = 1; i <= Math.min(limit, available); i++) {
+                result.add(new AbstractMap.SimpleEntry<>(i, 1000.0 * userId - i));
+            }
+            return result;
+        }
+    }
+
+    private final CountingLoader loader = new CountingLoader();
+
+    private RecommendationCache cache(double thresholdBucket) {
+        return new RecommendationCache(loader, 1000, 60_000, thresholdBucket);
+    }
+
+    @Test
+    public void smallerLimitIsServedFromLargerEntry() throws SQLException {
+        RecommendationCache cache = cache(0);
+        assertEquals(10, cache.getRecommendations(1, 0.5, 10).size());
+        List<Map.Entry<Integer, Double>> five = cache.getRecommendations(1, 0.5, 5);
+        assertEquals(1, loader.calls);
+        assertEquals(5, five.size());
+        assertEquals(Integer.valueOf(5), five.get(4).getKey());
+
+        // A larger limit reloads and replaces the entry, after which both limits hit
+        assertEquals(20, cache.getRecommendations(1, 0.5, 20).size());
+        assertEquals(2, loader.calls);
+        assertEquals(20, loader.lastLimit);
+        cache.getRecommendations(1, 0.5, 10);
+        cache.getRecommendations(1, 0.5, 20);
+        assertEquals(2, loader.calls);
+        assertEquals(3, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getMisses());
+        assertEquals(1, cache.getStats().getSize());
+    }
+
+    @Test
+    public void shortListAnswersAnyLimit() throws SQLException {
+        loader.available = 3;
+        RecommendationCache cache = cache(0);
+        assertEquals(3, cache.getRecommendations(1, 0.5, 10).size());
+        // Fewer rows than asked for means there are no more candidates
+        assertEquals(3, cache.getRecommendations(1, 0.5, 1000).size());
+        assertEquals(1, loader.calls);
+    }
+
+    @Test
+    public void exactThresholdIsTheKeyByDefault() throws SQLException {
+        RecommendationCache cache = cache(0);
+        cache.getRecommendations(1, 0.5, 10);
+        cache.getRecommendations(1, 0.51, 10);
+        assertEquals(0.51, loader.lastThreshold, 0.0);
+        cache.getRecommendations(1, 0.5, 10);
+        cache.getRecommendations(1, 0.51, 10);
+        assertEquals(2, loader.calls);
+        assertEquals(2, cache.getStats().getSize());
+    }
+
+    @Test
+    public void bucketedThresholdsRoundUp() throws SQLException {
+        RecommendationCache cache = cache(0.1);
+        cache.getRecommendations(1, 0.51, 10);
+        // The loader sees the rounded threshold, so no neighbour below the requested one is used
+        assertEquals(0.6, loader.lastThreshold, 1e-12);
+        cache.getRecommendations(1, 0.55, 10);
+        cache.getRecommendations(1, 0.6, 10);
+        assertEquals(1, loader.calls);
+        cache.getRecommendations(1, 0.61, 10);
+        assertEquals(2, loader.calls);
+        assertEquals(0.7, loader.lastThreshold, 1e-12);
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        RecommendationCache hundredths = cache(0.01);
+        assertEquals(0.07, hundredths.bucket(0.07), 1e-12);
+        assertEquals(0.08, hundredths.bucket(0.0701), 1e-12);
+        assertEquals(-0.5, hundredths.bucket(-0.5), 1e-12);
+        assertEquals(1.0, cache(0.3).bucket(0.95), 0.0);
+        assertEquals(0.123456, cache(0).bucket(0.123456), 0.0);
+        RecommendationCache twentieths = cache(0.05);
+        for (int i = -100; i <= 100; i++) {
+            double threshold = i / 100.0;
+            double bucketed = twentieths.bucket(threshold);
+            assertTrue(threshold + " -> " + bucketed, bucketed >= threshold - 1e-12 && bucketed < threshold + 0.05);
+        }
+    }
+
+    @Test
+    public void invalidateUserDropsOnlyThatUser() throws SQLException {
+        RecommendationCache cache = cache(0);
+        cache.getRecommendations(1, 0.5, 10);
+        cache.getRecommendations(1, 0.7, 10);
+        cache.getRecommendations(2, 0.5, 10);
+        cache.invalidateUser(1);
+        assertEquals(2, cache.getStats().getInvalidations());
+        cache.getRecommendations(2, 0.5, 10);
+        assertEquals(3, loader.calls);
+        cache.getRecommendations(1, 0.5, 10);
+        assertEquals(4, loader.calls);
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getStats().getSize());
+        cache.getRecommendations(2, 0.5, 10);
+        assertEquals(5, loader.calls);
+    }
+
+    @Test
+    public void loadOverlappingAnInvalidationIsNotCached() throws SQLException {
+        RecommendationCache cache = cache(0);
+        // The user's ratings change while the old ones are being read
+        loader.during = () -> cache.invalidateUser(1);
+        assertEquals(10, cache.getRecommendations(1, 0.5, 10).size());
+        loader.during = null;
+        cache.getRecommendations(1, 0.5, 10);
+        assertEquals(2, loader.calls);
+        cache.getRecommendations(1, 0.5, 10);
+        assertEquals(2, loader.calls);
+    }
+
+    @Test
+    public void entriesExpire() throws Exception {
+        RecommendationCache cache = new RecommendationCache(loader, 1000, 1, 0);
+        cache.getRecommendations(1, 0.5, 10);
+        Thread.sleep(20);
+        cache.getRecommendations(1, 0.5, 10);
+        assertEquals(2, loader.calls);
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    public void leastRecentlyUsedUsersAreEvicted() throws SQLException {
+        RecommendationCache cache = new RecommendationCache(loader, 32, 60_000, 0);
+        for (int user = 0; user < 1000; user++) {
+            cache.getRecommendations(user, 0.5, 10);
+        }
+        RecommendationCache.Stats stats = cache.getStats();
+        assertTrue(stats.getSize() <= 32);
+        assertEquals(1000, stats.getSize() + stats.getEvictions());
+        // The most recent user is still cached
+        cache.getRecommendations(999, 0.5, 10);
+        assertEquals(1000, loader.calls);
+    }
+
+    @Test
+    public void failedLoadIsNotCached() throws SQLException {
+        RecommendationCache cache = new RecommendationCache((user, threshold, limit) -> {
+            throw new SQLException("down");
+        }, 1000, 60_000, 0);
+        try {
+            cache.getRecommendations(1, 0.5, 10);
+            fail("loader failure swallowed");
+        } catch (SQLException expected) {
+            assertEquals("down", expected.getMessage());
+        }
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void resultsAreReadOnly() throws SQLException {
+        RecommendationCache cache = cache(0);
+        List<Map.Entry<Integer, Double>> first = cache.getRecommendations(1, 0.5, 10);
+        try {
+            first.clear();
+            fail("cached list is modifiable");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+        try {
+            first.get(0).setValue(0.0);
+            fail("cached entry is modifiable");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+        assertSame(first, cache.getRecommendations(1, 0.5, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeBucket() {
+        cache(-0.1);
+    }
+}
@@ -0,0 +1,175 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The request parsing of RecommendationServer, and the /invalidate endpoint of a server whose database is never
+ * reached: the connection pool opens connections lazily and /invalidate only touches the cache.
+ */
+public class RecommendationServerTest {
+
+    private static Object parse(String json) {
+        return new RecommendationServer.JsonParser(json).parse();
+    }
+
+    private static void assertRejected(String json) {
+        try {
+            parse(json);
+            fail("accepted " + json);
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("at position"));
+        }
+    }
+
+    @Test
+    public void jsonValues() {
+        Map<String, Object> object = new HashMap<>();
+        object.put("user", 123.0);
+        object.put("threshold", 0.5);
+        object.put("name", "a \"b\"\n\u00e9");
+        object.put("flags", Arrays.asList(true, false, null));
+        object.put("empty", Collections.emptyMap());
+        assertEquals(object, parse(" {\"user\": 123, \"threshold\": 5e-1, \"name\": \"a \\\"b\\\"\\n\\u00e9\","
+                + " \"flags\": [true, false, null], \"empty\": {}} "));
+        assertEquals(Arrays.asList(-1.5, Collections.emptyList()), parse("[-1.5,[]]"));
+    }
+
+    @Test
+    public void malformedJsonIsRejected() {
+        for (String json : new String[] {"", "[", "[1,]", "{\"a\" 1}", "{1: 2}", "[1] 2", "\"open", "tru",
+                "\"\\u12\"", "1.2.3", "@"}) {
+            assertRejected(json);
+        }
+    }
+
+    @Test
+    public void nestingIsLimited() {
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < RecommendationServer.JsonParser.MAX_DEPTH; i++) {
+            deep.append('[');
+        }
+        for (int i = 0; i < RecommendationServer.JsonParser.MAX_DEPTH; i++) {
+            deep.append(']');
+        }
+        assertTrue(parse(deep.toString()) instanceof List);
+        assertRejected("[" + deep + "]");
+    }
+
+    @Test
+    public void requestDefaultsAndLimits() {
+        RecommendationServer.Request request = RecommendationServer.Request.of("7", null, null);
+        assertEquals(7, request.userId);
+        assertEquals(RecommendationServer.DEFAULT_THRESHOLD, request.threshold, 0.0);
+        assertEquals(RecommendationServer.DEFAULT_LIMIT, request.limit);
+
+        request = RecommendationServer.Request.of("0", "1", String.valueOf(RecommendationServer.MAX_LIMIT));
+        assertEquals(0, request.userId);
+        assertEquals(1.0, request.threshold, 0.0);
+        assertEquals(RecommendationServer.MAX_LIMIT, request.limit);
+
+        String[][] invalid = {
+                {null, "0.5", "10"}, {"x", "0.5", "10"}, {"-1", "0.5", "10"}, {"1", "0", "10"}, {"1", "1.5", "10"},
+                {"1", "NaN", "10"}, {"1", "0.5", "0"}, {"1", "0.5", String.valueOf(RecommendationServer.MAX_LIMIT + 1)},
+                {"1", "0.5", "ten"}, {"99999999999", "0.5", "10"},
+        };
+        for (String[] args : invalid) {
+            try {
+                RecommendationServer.Request.of(args[0], args[1], args[2]);
+                fail("accepted " + Arrays.toString(args));
+            } catch (IllegalArgumentException expected) {
+                // The message becomes the 400 response
+            }
+        }
+    }
+
+    private static Properties properties() {
+        Properties props = new Properties();
+        // Never connected to
+        props.setProperty("db.url", "jdbc:mysql://127.0.0.1:1/none");
+        props.setProperty("server.port", "0");
+        props.setProperty("server.poolSize", "1");
+        props.setProperty("recommender.precomputed", "true");
+        props.setProperty("recommender.cache", "true");
+        return props;
+    }
+
+    private static String[] call(RecommendationServer server, String method, String pathAndQuery, String body)
+            throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + pathAndQuery)
+                .openConnection();
+        conn.setRequestMethod(method);
+        if (body != null) {
+            conn.setDoOutput(true);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = conn.getResponseCode();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                response.write(buffer, 0, read);
+            }
+        }
+        return new String[] {String.valueOf(status), new String(response.toByteArray(), StandardCharsets.UTF_8)};
+    }
+
+    @Test
+    public void invalidateEndpoint() throws Exception {
+        RecommendationServer server = RecommendationServer.start(properties());
+        try {
+            assertEquals(Arrays.asList("200", "{\"cache\":true,\"all\":true}"),
+                    Arrays.asList(call(server, "POST", "/invalidate", null)));
+            assertEquals(Arrays.asList("200", "{\"cache\":true,\"users\":1}"),
+                    Arrays.asList(call(server, "POST", "/invalidate?user=12", null)));
+            assertEquals(Arrays.asList("200", "{\"cache\":true,\"users\":3}"),
+                    Arrays.asList(call(server, "POST", "/invalidate?user=12", "[13, 14]")));
+            assertEquals("405", call(server, "GET", "/invalidate", null)[0]);
+            assertEquals("404", call(server, "POST", "/invalidate/all", null)[0]);
+            for (String body : new String[] {"{\"user\": 1}", "[\"x\"]", "[1.5]", "[1"}) {
+                String[] response = call(server, "POST", "/invalidate", body);
+                assertEquals(body, "400", response[0]);
+                assertTrue(response[1], response[1].startsWith("{\"error\":\"Invalid user: "));
+            }
+            assertEquals("400", call(server, "POST", "/invalidate?user=abc", null)[0]);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void unknownQueryModeIsRejectedWithTheSettingName() throws Exception {
+        Properties props = properties();
+        props.remove("recommender.precomputed");
+        props.setProperty("recommender.query", "unoin");
+        try {
+            RecommendationServer.start(props);
+            fail("started with recommender.query=unoin");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Unknown recommender.query 'unoin', expected one of [or, union, symmetric]",
+                    expected.getMessage());
+        }
+        props.setProperty("recommender.query", " Symmetric ");
+        RecommendationServer.start(props).stop();
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pins SimilarityLineParser to testdata/similarity-lines.txt at the repository root. As1's
+ * SimilarityLineParserTest reads the same file, so a change to either copy that the other does not get fails here.
+ */
+public class SimilarityLineParserTest {
+
+    // Copied from testdata/ onto the test classpath by the pom, so the working directory does not matter
+    static final String GOLDEN = "/similarity-lines.txt";
+
+    /** One golden case: the raw input bytes and the expected result, or null when the line is malformed. */
+    static class Case {
+        final String source;
+        final byte[] input;
+        final String[] expected;
+
+        Case(String source, byte[] input, String[] expected) {
+            this.source = source;
+            this.input = input;
+            this.expected = expected;
+        }
+    }
+
+    static List<Case> readCases() throws IOException {
+        List<Case> cases = new ArrayList<>();
+        InputStream in = SimilarityLineParserTest.class.getResourceAsStream(GOLDEN);
+        if (in == null) {
+            throw new FileNotFoundException(GOLDEN + " is not on the test classpath; see testResources in pom.xml");
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        for (String line : lines) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int arrow = line.lastIndexOf(" => ");
+            String expected = line.substring(arrow + 4).trim();
+            cases.add(new Case(line, unescape(line.substring(0, arrow)).getBytes(StandardCharsets.US_ASCII),
+                    expected.equals("malformed") ? null : expected.split(" ")));
+        }
+        return cases;
+    }
+
+    static String unescape(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char next = s.charAt(++i);
+            out.append(next == 't' ? '\t' : next == 'r' ? '\r' : next == 'n' ? '\n' : next);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void parsesGoldenLines() throws IOException {
+        List<Case> cases = readCases();
+        assertTrue("no cases in " + GOLDEN, cases.size() > 20);
+        SimilarityLineParser parser = new SimilarityLineParser();
+        long wellFormed = 0;
+        for (Case c : cases) {
+            // Surround the line with other bytes so only [start, start + length) may be read
+            byte[] buffer = new byte[c.input.length + 8];
+            buffer[0] = '9';
+            buffer[1] = '(';
+            buffer[2] = '\t';
+            System.arraycopy(c.input, 0, buffer, 3, c.input.length);
+            for (int i = 3 + c.input.length; i < buffer.length; i++) {
+                buffer[i] = '7';
+            }
+            boolean parsed = parser.parse(buffer, 3, c.input.length);
+            if (c.expected == null) {
+                assertFalse(c.source, parsed);
+                continue;
+            }
+            wellFormed++;
+            assertTrue(c.source, parsed);
+            assertEquals(c.source, Integer.parseInt(c.expected[0]), parser.getItemA());
+            assertEquals(c.source, Integer.parseInt(c.expected[1]), parser.getItemB());
+            // Exact: same bits as Double.parseDouble, including the sign of zero
+            assertEquals(c.source, Double.doubleToLongBits(Double.parseDouble(c.expected[2])),
+                    Double.doubleToLongBits(parser.getSimilarity()));
+        }
+        assertEquals(wellFormed, parser.getParsedLines());
+        assertEquals(cases.size() - wellFormed, parser.getMalformedLines());
+    }
+}